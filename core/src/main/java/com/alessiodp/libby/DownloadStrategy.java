@@ -0,0 +1,20 @@
+package com.alessiodp.libby;
+
+/**
+ * Enum representing the strategy used to download a library from its candidate URLs.
+ *
+ * @see LibraryManager#setDownloadStrategy(DownloadStrategy)
+ */
+public enum DownloadStrategy {
+	/**
+	 * The default strategy tries the candidate URLs one at a time, in order, moving to the next one only after the previous one failed.
+	 */
+	SEQUENTIAL,
+	/**
+	 * With RACE, the first candidate URL is tried and, after every hedge delay, a request to the next candidate is started as well.
+	 * The first download that passes the checksum verification wins and the other ones are cancelled.
+	 *
+	 * @see LibraryManager#setHedgeDelay(java.time.Duration)
+	 */
+	RACE
+}
@@ -1,5 +1,6 @@
 package com.alessiodp.libby;
 
+import com.alessiodp.libby.cache.UpdatePolicy;
 import com.alessiodp.libby.transitive.ExcludedDependency;
 import com.alessiodp.libby.relocation.Relocation;
 import org.jetbrains.annotations.NotNull;
@@ -116,6 +117,28 @@ public class Library {
     @NotNull
     private final Collection<ExcludedDependency> excludedTransitiveDependencies;
 
+    /**
+     * Packages of this library which trigger its loading on first access, empty if not lazy
+     */
+    @NotNull
+    private final Collection<String> lazyPackages;
+
+    /**
+     * Download priority of this library, libraries with higher priority are downloaded first
+     */
+    private final int priority;
+
+    /**
+     * Should this library be loaded in the background after the other libraries?
+     */
+    private final boolean deferred;
+
+    /**
+     * Update policy of the cached snapshot metadata of this library, null to use the repository one
+     */
+    @Nullable
+    private final UpdatePolicy updatePolicy;
+
     /**
      * Creates a new library.
      *
@@ -131,6 +154,10 @@ public class Library {
      * @param loaderId     the loader ID for this library
      * @param resolveTransitiveDependencies transitive dependencies resolution for this library
      * @param excludedTransitiveDependencies excluded transitive dependencies or null
+     * @param lazyPackages packages which trigger the loading of this library or null
+     * @param priority     loading priority for this library
+     * @param deferred     deferred load for this library
+     * @param updatePolicy update policy of the snapshot metadata or null
      */
     private Library(@Nullable Collection<String> urls,
                     @Nullable Collection<String> repositories,
@@ -144,7 +171,11 @@ public class Library {
                     boolean isolatedLoad,
                     @Nullable String loaderId,
                     boolean resolveTransitiveDependencies,
-                    @Nullable Collection<ExcludedDependency> excludedTransitiveDependencies) {
+                    @Nullable Collection<ExcludedDependency> excludedTransitiveDependencies,
+                    @Nullable Collection<String> lazyPackages,
+                    int priority,
+                    boolean deferred,
+                    @Nullable UpdatePolicy updatePolicy) {
 
         this.urls = urls != null ? Collections.unmodifiableList(new LinkedList<>(urls)) : Collections.emptyList();
         this.groupId = replaceWithDots(requireNonNull(groupId, "groupId"));
@@ -159,11 +190,15 @@ public class Library {
 
         this.repositories = repositories != null ? Collections.unmodifiableList(new LinkedList<>(repositories)) : Collections.emptyList();
         this.fallbackRepositories = fallbackRepositories != null ? Collections.unmodifiableList(new LinkedList<>(fallbackRepositories)) : Collections.emptyList();
-        relocatedPath = hasRelocations() ? path + "-relocated-" + Math.abs(this.relocations.hashCode()) + ".jar" : null;
+        relocatedPath = hasRelocations() ? path + "-relocated-" + Relocation.hash(this.relocations) + ".jar" : null;
         this.isolatedLoad = isolatedLoad;
         this.loaderId = loaderId;
         this.resolveTransitiveDependencies = resolveTransitiveDependencies;
         this.excludedTransitiveDependencies = excludedTransitiveDependencies != null ? Collections.unmodifiableList(new LinkedList<>(excludedTransitiveDependencies)) : Collections.emptyList();
+        this.lazyPackages = lazyPackages != null ? Collections.unmodifiableList(new LinkedList<>(lazyPackages)) : Collections.emptyList();
+        this.priority = priority;
+        this.deferred = deferred;
+        this.updatePolicy = updatePolicy;
     }
 
     /**
@@ -359,6 +394,60 @@ public class Library {
         return excludedTransitiveDependencies;
     }
 
+    /**
+     * Gets the packages which trigger the loading of this library on first access.
+     *
+     * @return the lazy packages, empty if the library isn't lazy
+     */
+    @NotNull
+    public Collection<String> getLazyPackages() {
+        return lazyPackages;
+    }
+
+    /**
+     * Is the library loaded lazily? Lazy libraries are downloaded and added to their
+     * isolated class loader when one of their {@link #getLazyPackages() packages} is first accessed.
+     *
+     * @return true if the library is loaded lazily
+     */
+    public boolean isLazyLoad() {
+        return !lazyPackages.isEmpty();
+    }
+
+    /**
+     * Gets the download priority of this library. When loading multiple libraries concurrently,
+     * libraries with higher priority are downloaded first. The classpath order isn't affected.
+     *
+     * @return the download priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Is the library deferred? Deferred libraries are loaded in the background,
+     * one at a time, after the other libraries have been loaded. Their downloads
+     * are throttled while other libraries are being loaded, unless another load
+     * is waiting for the same artifact.
+     *
+     * @return true if the library is deferred
+     * @see LibraryManager#loadLibraries(Library...)
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Gets the update policy of the cached snapshot metadata of this library.
+     *
+     * @return the update policy or null to use the repository one
+     * @see LibraryManager#getUpdatePolicy(String, Library)
+     */
+    @Nullable
+    public UpdatePolicy getUpdatePolicy() {
+        return updatePolicy;
+    }
+
     /**
      * Gets a concise, human-readable string representation of this library.
      *
@@ -454,6 +543,26 @@ public class Library {
          */
         private final Collection<ExcludedDependency> excludedTransitiveDependencies = new LinkedList<>();
 
+        /**
+         * Lazy packages
+         */
+        private final Collection<String> lazyPackages = new LinkedList<>();
+
+        /**
+         * Loading priority
+         */
+        private int priority;
+
+        /**
+         * Deferred load
+         */
+        private boolean deferred;
+
+        /**
+         * Snapshot metadata update policy
+         */
+        private UpdatePolicy updatePolicy;
+
         /**
          * Adds a direct download URL for this library.
          *
@@ -670,6 +779,63 @@ public class Library {
             return excludeTransitiveDependency(new ExcludedDependency(groupId, artifactId));
         }
 
+        /**
+         * Adds a package which triggers the loading of this library on first access, making the library lazy.
+         * <p>
+         * Lazy loading is only supported by {@link #isolatedLoad(boolean) isolated} libraries. If the library
+         * is relocated, the relocated package name must be provided.
+         *
+         * @param packageName the package name, any {@code "{}"} is replaced with a {@code "."}
+         * @return this builder
+         * @see LibraryManager#loadLibrary(Library)
+         */
+        @NotNull
+        public Builder lazyPackage(@NotNull String packageName) {
+            lazyPackages.add(replaceWithDots(requireNonNull(packageName, "packageName")));
+            return this;
+        }
+
+        /**
+         * Sets the download priority for this library. When loading multiple libraries concurrently,
+         * libraries with higher priority are downloaded first, the default priority is 0.
+         *
+         * @param priority the download priority
+         * @return this builder
+         */
+        @NotNull
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Sets the deferred load for this library. Deferred libraries are loaded in the
+         * background after the other libraries, so that they don't delay the startup.
+         *
+         * @param deferred the deferred load boolean
+         * @return this builder
+         * @see LibraryManager#getDeferredLoading()
+         */
+        @NotNull
+        public Builder deferred(boolean deferred) {
+            this.deferred = deferred;
+            return this;
+        }
+
+        /**
+         * Sets the update policy of the cached snapshot metadata of this library,
+         * overriding the one of the repositories.
+         *
+         * @param updatePolicy the update policy or null to use the repository one
+         * @return this builder
+         * @see LibraryManager#setSnapshotUpdatePolicy(UpdatePolicy)
+         */
+        @NotNull
+        public Builder updatePolicy(@Nullable UpdatePolicy updatePolicy) {
+            this.updatePolicy = updatePolicy;
+            return this;
+        }
+
         /**
          * Creates a new library using this builder's configuration.
          *
@@ -677,7 +843,7 @@ public class Library {
          */
         @NotNull
         public Library build() {
-            return new Library(urls, repositories, fallbackRepositories, groupId, artifactId, version, classifier, checksum, relocations, isolatedLoad, loaderId, resolveTransitiveDependencies, excludedTransitiveDependencies);
+            return new Library(urls, repositories, fallbackRepositories, groupId, artifactId, version, classifier, checksum, relocations, isolatedLoad, loaderId, resolveTransitiveDependencies, excludedTransitiveDependencies, lazyPackages, priority, deferred, updatePolicy);
         }
     }
 }
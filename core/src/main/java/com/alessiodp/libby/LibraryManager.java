@@ -1,10 +1,26 @@
 package com.alessiodp.libby;
 
+import com.alessiodp.libby.cache.Lockfile;
+import com.alessiodp.libby.cache.MetadataCache;
+import com.alessiodp.libby.cache.NegativeCache;
+import com.alessiodp.libby.cache.RepositoryAffinity;
+import com.alessiodp.libby.cache.SharedArtifactStore;
+import com.alessiodp.libby.cache.UpdatePolicy;
 import com.alessiodp.libby.classloader.IsolatedClassLoader;
 import com.alessiodp.libby.configuration.Configuration;
 import com.alessiodp.libby.configuration.ConfigurationException;
 import com.alessiodp.libby.configuration.ConfigurationFetcher;
 import com.alessiodp.libby.configuration.MalformedConfigurationException;
+import com.alessiodp.libby.download.ArtifactLock;
+import com.alessiodp.libby.download.ArtifactMetadata;
+import com.alessiodp.libby.download.DownloadLimiter;
+import com.alessiodp.libby.download.DownloadPolicy;
+import com.alessiodp.libby.download.DownloadStalledException;
+import com.alessiodp.libby.download.InFlightDownloads;
+import com.alessiodp.libby.download.MavenMetadataReader;
+import com.alessiodp.libby.download.RepositoryHealth;
+import com.alessiodp.libby.download.RepositoryUnavailableException;
+import com.alessiodp.libby.download.Transport;
 import com.alessiodp.libby.logging.LogLevel;
 import com.alessiodp.libby.logging.Logger;
 import com.alessiodp.libby.relocation.Relocation;
@@ -13,42 +29,66 @@ import com.alessiodp.libby.transitive.TransitiveDependencyHelper;
 import com.alessiodp.libby.logging.adapters.LogAdapter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipFile;
 
 import static java.util.Objects.requireNonNull;
 
@@ -69,6 +109,26 @@ import static java.util.Objects.requireNonNull;
  * @see Library
  */
 public abstract class LibraryManager {
+    /**
+     * Maximum time to wait for other processes to finish writing a cached jar
+     */
+    private static final Duration LOCK_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * Timestamp and build number of a unique snapshot version
+     */
+    private static final Pattern SNAPSHOT_BUILD = Pattern.compile("(\\d{8}\\.\\d{6})-(\\d{1,9})");
+
+    /**
+     * Orders libraries by descending priority. Since sorting is stable, libraries with the same priority keep their order
+     */
+    private static final Comparator<Library> BY_PRIORITY = Comparator.comparingInt(Library::getPriority).reversed();
+
+    /**
+     * Artifacts that foreground loads of this JVM are waiting for, by absolute path, with the number of waiting loads
+     */
+    private static final Map<Path, Integer> AWAITED_ARTIFACTS = new ConcurrentHashMap<>();
+
     /**
      * Wrapped logger
      */
@@ -85,8 +145,7 @@ public abstract class LibraryManager {
     protected final Set<String> repositories = new LinkedHashSet<>();
 
     /**
-     * Lazily-initialized relocation helper that uses reflection to call into
-     * Luck's Jar Relocator
+     * Lazily-initialized relocation helper
      */
     protected RelocationHelper relocator;
 
@@ -108,13 +167,125 @@ public abstract class LibraryManager {
     /**
      * Map of isolated class loaders and theirs id
      */
-    protected final Map<String, IsolatedClassLoader> isolatedLibraries = new HashMap<>();
+    protected final Map<String, IsolatedClassLoader> isolatedLibraries = new ConcurrentHashMap<>();
     
     /**
      * Repository resolution mode for libraries
      */
     protected RepositoryResolutionMode repositoryResolutionMode = RepositoryResolutionMode.DEFAULT;
 
+    /**
+     * Size in bytes of the buffer used to stream downloads to disk
+     */
+    protected int downloadBufferSize = 8192;
+
+    /**
+     * Number of libraries downloaded and relocated concurrently when loading multiple libraries
+     */
+    protected int loadingParallelism = 1;
+
+    /**
+     * Strategy used to download libraries from their candidate URLs
+     */
+    protected DownloadStrategy downloadStrategy = DownloadStrategy.SEQUENTIAL;
+
+    /**
+     * Delay after which the next candidate URL is raced when using {@link DownloadStrategy#RACE},
+     * and for which slower repositories are waited for when resolving snapshots
+     */
+    protected Duration hedgeDelay = Duration.ofSeconds(1);
+
+    /**
+     * Transport used for all the repository traffic
+     */
+    protected Transport transport = Transport.createDefault();
+
+    /**
+     * Timeouts, retries and throughput floor of the downloads
+     */
+    protected DownloadPolicy downloadPolicy = DownloadPolicy.builder().build();
+
+    /**
+     * Per-host concurrency and bandwidth limits of the downloads, null if unlimited
+     */
+    @Nullable
+    protected DownloadLimiter downloadLimiter;
+
+    /**
+     * Health of the contacted repositories, used to skip unreachable ones
+     */
+    protected RepositoryHealth repositoryHealth = new RepositoryHealth(3, Duration.ofMinutes(10));
+
+    /**
+     * Cache of the URLs that repositories reported as not found, null if disabled
+     */
+    @Nullable
+    protected NegativeCache negativeCache = new NegativeCache(Duration.ofMinutes(10));
+
+    /**
+     * Index of the repository that last served each library, null if disabled
+     */
+    @Nullable
+    protected RepositoryAffinity repositoryAffinity;
+
+    /**
+     * Lockfile pinning the resolved artifacts of the loaded libraries, null if disabled
+     */
+    @Nullable
+    protected Lockfile lockfile;
+
+    /**
+     * Content-addressable store of artifacts shared with the other library managers, null if disabled
+     */
+    @Nullable
+    protected SharedArtifactStore sharedStore = SharedArtifactStore.fromEnvironment();
+
+    /**
+     * Cache of the snapshot metadata of the remote repositories, null if disabled
+     */
+    @Nullable
+    protected MetadataCache metadataCache;
+
+    /**
+     * Default update policy of the cached snapshot metadata
+     */
+    protected UpdatePolicy snapshotUpdatePolicy = UpdatePolicy.ALWAYS;
+
+    /**
+     * Update policies of the cached snapshot metadata by repository URL
+     */
+    protected final Map<String, UpdatePolicy> repositoryUpdatePolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Reader of the snapshot metadata, shared by all the resolutions
+     */
+    private final MavenMetadataReader metadataReader = new MavenMetadataReader();
+
+    /**
+     * Executor used by the asynchronous methods, lazily created if not set
+     */
+    protected Executor asyncExecutor;
+
+    /**
+     * Loading of the deferred libraries, which are loaded one at a time in the background
+     */
+    private CompletableFuture<Void> deferredLoading = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of libraries being loaded in the foreground, which deferred libraries leave the bandwidth to
+     */
+    private final AtomicInteger foregroundLoads = new AtomicInteger();
+
+    /**
+     * Whether the current thread is loading deferred libraries
+     */
+    private final ThreadLocal<Boolean> loadingDeferred = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Artifact being downloaded by the current thread while loading deferred libraries
+     */
+    private final ThreadLocal<DeferredDownload> deferredDownload = new ThreadLocal<>();
+
     /**
      * Creates a new library manager.
      *
@@ -126,6 +297,8 @@ public abstract class LibraryManager {
     protected LibraryManager(@NotNull LogAdapter logAdapter, @NotNull Path dataDirectory) {
         logger = new Logger(requireNonNull(logAdapter, "logAdapter"));
         saveDirectory = requireNonNull(dataDirectory, "dataDirectory").toAbsolutePath().resolve("lib");
+        repositoryAffinity = new RepositoryAffinity(saveDirectory.resolve(".libby").resolve("repository-affinity.properties"));
+        metadataCache = new MetadataCache(saveDirectory.resolve(".libby").resolve("metadata"));
     }
 
     /**
@@ -138,6 +311,8 @@ public abstract class LibraryManager {
     protected LibraryManager(@NotNull LogAdapter logAdapter, @NotNull Path dataDirectory, @NotNull String directoryName) {
         logger = new Logger(requireNonNull(logAdapter, "logAdapter"));
         saveDirectory = requireNonNull(dataDirectory, "dataDirectory").toAbsolutePath().resolve(requireNonNull(directoryName, "directoryName"));
+        repositoryAffinity = new RepositoryAffinity(saveDirectory.resolve(".libby").resolve("repository-affinity.properties"));
+        metadataCache = new MetadataCache(saveDirectory.resolve(".libby").resolve("metadata"));
     }
 
     /**
@@ -154,14 +329,22 @@ public abstract class LibraryManager {
      * @param file    the file to add
      */
     protected void addToIsolatedClasspath(@NotNull Library library, @NotNull Path file) {
-        IsolatedClassLoader classLoader;
+        getIsolatedClassLoader(library).addPath(file);
+    }
+
+    /**
+     * Gets the isolated class loader of a library, creating it if needed.
+     *
+     * @param library the library
+     * @return the isolated class loader of the library
+     */
+    @NotNull
+    private IsolatedClassLoader getIsolatedClassLoader(@NotNull Library library) {
         String loaderId = library.getLoaderId();
         if (loaderId != null) {
-            classLoader = isolatedLibraries.computeIfAbsent(loaderId, s -> new IsolatedClassLoader());
-        } else {
-            classLoader = globalIsolatedClassLoader;
+            return isolatedLibraries.computeIfAbsent(loaderId, s -> new IsolatedClassLoader());
         }
-        classLoader.addPath(file);
+        return globalIsolatedClassLoader;
     }
     
     /**
@@ -308,435 +491,2921 @@ public abstract class LibraryManager {
     }
     
     /**
-     * Gets all the possible download URLs for this library. Entries are
-     * ordered by direct download URLs first and then repository download URLs.
-     * <br>This method also resolves SNAPSHOT artifacts URLs.
+     * Gets the size of the buffer used to stream downloads to disk.
      *
-     * @param library the library to resolve
-     * @return download URLs
+     * @return the download buffer size in bytes
      */
-    @NotNull
-    public Collection<String> resolveLibrary(@NotNull Library library) {
-        Set<String> urls = new LinkedHashSet<>(requireNonNull(library, "library").getUrls());
-        boolean snapshot = library.isSnapshot();
-        Collection<String> repos = resolveRepositories(library);
-
-        for (String repository : repos) {
-            if (snapshot) {
-                String url = resolveSnapshot(repository, library);
-                if (url != null)
-                    urls.add(repository + url);
-            } else {
-                urls.add(repository + library.getPath());
-            }
-        }
-
-        return Collections.unmodifiableSet(urls);
+    public int getDownloadBufferSize() {
+        return downloadBufferSize;
     }
-    
+
     /**
-     * Resolves the repository URLs for this library.
+     * Sets the size of the buffer used to stream downloads to disk.
+     * <p>
+     * Downloaded artifacts are never fully held in memory, they are written to disk
+     * as they arrive using a buffer of this size. This makes the memory used by a
+     * download a known constant regardless of the artifact size.
      *
-     * @param library the library to resolve repositories for
-     * @return the resolved repositories
+     * @param downloadBufferSize the download buffer size in bytes
      */
-    public Collection<String> resolveRepositories(@NotNull Library library) {
-        switch (getRepositoryResolutionMode()) {
-            case GLOBAL_FIRST:
-                return Stream.of(
-                        getRepositories(),
-                        library.getRepositories(),
-                        library.getFallbackRepositories()
-                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
-            case LIBRARY_FIRST:
-                return Stream.of(
-                        library.getRepositories(),
-                        library.getFallbackRepositories(),
-                        getRepositories()
-                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
-            case DEFAULT:
-            default:
-                return Stream.of(
-                        library.getRepositories(),
-                        getRepositories(),
-                        library.getFallbackRepositories()
-                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+    public void setDownloadBufferSize(int downloadBufferSize) {
+        if (downloadBufferSize <= 0) {
+            throw new IllegalArgumentException("downloadBufferSize must be positive");
         }
+        this.downloadBufferSize = downloadBufferSize;
     }
 
     /**
-     * Resolves the URL of the artifact of a snapshot library.
+     * Gets the number of libraries downloaded and relocated concurrently by
+     * {@link #loadLibraries(Library...)} and {@link #configureFromJSON()}.
      *
-     * @param repository The repository to query for snapshot information
-     * @param library    The library
-     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
-     * provided repository
+     * @return the loading parallelism
      */
-    @Nullable
-    protected String resolveSnapshot(@NotNull String repository, @NotNull Library library) {
-        String mavenMetadata = repository.startsWith("file") ? "maven-metadata-local.xml" : "maven-metadata.xml";
-        String url = requireNonNull(repository, "repository") + requireNonNull(library, "library").getPartialPath() + mavenMetadata;
-        try {
-            URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
-
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
-
-            try (InputStream in = connection.getInputStream()) {
-                return getURLFromMetadata(in, library);
-            }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            if (e instanceof FileNotFoundException) {
-                logger.debug("File not found: " + url);
-            } else if (e instanceof SocketTimeoutException) {
-                logger.debug("Connect timed out: " + url);
-            } else if (e instanceof UnknownHostException) {
-                logger.debug("Unknown host: " + url);
-            } else {
-                logger.debug("Unexpected IOException", e);
-            }
+    public int getLoadingParallelism() {
+        return loadingParallelism;
+    }
 
-            return null;
+    /**
+     * Sets the number of libraries downloaded and relocated concurrently by
+     * {@link #loadLibraries(Library...)} and {@link #configureFromJSON()}.
+     * <p>
+     * When greater than 1, the requested libraries (and their transitive dependencies)
+     * are resolved, downloaded and relocated on a pool of this many worker threads, then
+     * they are added to the classpath in the declared order once all of them are ready.
+     * The default value of 1 loads libraries one at a time.
+     *
+     * @param loadingParallelism the loading parallelism
+     */
+    public void setLoadingParallelism(int loadingParallelism) {
+        if (loadingParallelism <= 0) {
+            throw new IllegalArgumentException("loadingParallelism must be positive");
         }
+        this.loadingParallelism = loadingParallelism;
     }
 
     /**
-     * Gets the URL of the artifact of a snapshot library from the provided InputStream, which should be opened to the
-     * library's maven-metadata.xml.
+     * Gets the strategy used to download libraries from their candidate URLs.
      *
-     * @param inputStream The InputStream opened to the library's maven-metadata.xml
-     * @param library     The library
-     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
-     * provided inputStream
-     * @throws IOException If any IO errors occur
+     * @return the download strategy
      */
-    @Nullable
-    protected String getURLFromMetadata(@NotNull InputStream inputStream, @NotNull Library library) throws IOException {
-        requireNonNull(inputStream, "inputStream");
-        requireNonNull(library, "library");
+    @NotNull
+    public DownloadStrategy getDownloadStrategy() {
+        return downloadStrategy;
+    }
 
-        String version = library.getVersion();
-        try {
-            // This reads the maven-metadata.xml file and gets the snapshot info from the <snapshot> tag.
-            // Example tag:
-            // <snapshot>
-            //     <timestamp>20220617.013635</timestamp>
-            //     <buildNumber>12</buildNumber>
-            // </snapshot>
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(inputStream);
-            doc.getDocumentElement().normalize();
-
-            NodeList nodes = doc.getElementsByTagName("snapshot");
-            if (nodes.getLength() == 0) {
-                return null;
-            }
-            Node snapshot = nodes.item(0);
-            if (snapshot.getNodeType() != Node.ELEMENT_NODE) {
-                return null;
-            }
-            Node localCopyNode = ((Element) snapshot).getElementsByTagName("localCopy").item(0);
-            if (localCopyNode == null || localCopyNode.getNodeType() != Node.ELEMENT_NODE) {
-                // Resolve with snapshot number instead of base name
-                Node timestampNode = ((Element) snapshot).getElementsByTagName("timestamp").item(0);
-                if (timestampNode == null || timestampNode.getNodeType() != Node.ELEMENT_NODE) {
-                    return null;
-                }
-                Node buildNumberNode = ((Element) snapshot).getElementsByTagName("buildNumber").item(0);
-                if (buildNumberNode == null || buildNumberNode.getNodeType() != Node.ELEMENT_NODE) {
-                    return null;
-                }
-                Node timestampChild = timestampNode.getFirstChild();
-                if (timestampChild == null || timestampChild.getNodeType() != Node.TEXT_NODE) {
-                    return null;
-                }
-                Node buildNumberChild = buildNumberNode.getFirstChild();
-                if (buildNumberChild == null || buildNumberChild.getNodeType() != Node.TEXT_NODE) {
-                    return null;
-                }
-                String timestamp = timestampChild.getNodeValue();
-                String buildNumber = buildNumberChild.getNodeValue();
+    /**
+     * Sets the strategy used to download libraries from their candidate URLs.
+     *
+     * @param downloadStrategy the download strategy
+     * @see #setHedgeDelay(Duration)
+     */
+    public void setDownloadStrategy(@NotNull DownloadStrategy downloadStrategy) {
+        this.downloadStrategy = requireNonNull(downloadStrategy, "downloadStrategy");
+    }
 
-                version = library.getVersion();
-                // Call .substring(...) only on versions ending in "-SNAPSHOT".
-                // It should never happen that a snapshot version doesn't end in "-SNAPSHOT", but better be sure
-                if (version.endsWith("-SNAPSHOT")) {
-                    version = version.substring(0, version.length() - "-SNAPSHOT".length());
-                }
+    /**
+     * Gets the delay after which the next candidate URL of a library is raced
+     * when using {@link DownloadStrategy#RACE}.
+     *
+     * @return the hedge delay
+     */
+    @NotNull
+    public Duration getHedgeDelay() {
+        return hedgeDelay;
+    }
 
-                version = version + '-' + timestamp + '-' + buildNumber;
-            }
-        } catch (ParserConfigurationException | SAXException e) {
-            logger.debug("Invalid maven-metadata.xml", e);
-            return null;
+    /**
+     * Sets the delay after which the next candidate URL of a library is raced
+     * when using {@link DownloadStrategy#RACE}.
+     * <p>
+     * When a candidate fails before the delay expires, the next one is started immediately.
+     * The delay is also how long the repositories of a snapshot library are waited for
+     * after the first one answered, in case they publish a newer build.
+     *
+     * @param hedgeDelay the hedge delay
+     */
+    public void setHedgeDelay(@NotNull Duration hedgeDelay) {
+        if (requireNonNull(hedgeDelay, "hedgeDelay").isNegative()) {
+            throw new IllegalArgumentException("hedgeDelay cannot be negative");
         }
-        return Util.craftPath(library.getPartialPath(), library.getArtifactId(), version, library.getClassifier());
+        this.hedgeDelay = hedgeDelay;
     }
 
     /**
-     * Downloads a library jar and returns the contents as a byte array.
+     * Gets the transport used to download artifacts and metadata from repositories.
      *
-     * @param url the URL to the library jar
-     * @return downloaded jar as byte array or null if nothing was downloaded
+     * @return the transport
      */
-    protected byte[] downloadLibrary(@NotNull String url) {
-        try {
-            URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
-
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
+    @NotNull
+    public Transport getTransport() {
+        return transport;
+    }
 
-            try (InputStream in = connection.getInputStream()) {
-                int len;
-                byte[] buf = new byte[8192];
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /**
+     * Sets the transport used to download artifacts and metadata from repositories.
+     * <p>
+     * By default, a connection-pooled HTTP/2 capable transport is used on Java 11+
+     * and a {@link java.net.URLConnection URLConnection} based one on older versions.
+     *
+     * @param transport the transport
+     * @see Transport#createDefault()
+     */
+    public void setTransport(@NotNull Transport transport) {
+        this.transport = requireNonNull(transport, "transport");
+    }
 
-                try {
-                    while ((len = in.read(buf)) != -1) {
-                        out.write(buf, 0, len);
-                    }
-                } catch (SocketTimeoutException e) {
-                    logger.warn("Download timed out: " + connection.getURL());
-                    return null;
-                }
+    /**
+     * Gets the policy controlling timeouts, retries and the throughput floor of the downloads.
+     *
+     * @return the download policy
+     */
+    @NotNull
+    public DownloadPolicy getDownloadPolicy() {
+        return downloadPolicy;
+    }
 
-                logger.info("Downloaded library " + connection.getURL());
-                return out.toByteArray();
-            }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            if (e instanceof FileNotFoundException) {
-                logger.debug("File not found: " + url);
-            } else if (e instanceof SocketTimeoutException) {
-                logger.debug("Connect timed out: " + url);
-            } else if (e instanceof UnknownHostException) {
-                logger.debug("Unknown host: " + url);
-            } else {
-                logger.debug("Unexpected IOException", e);
-            }
+    /**
+     * Sets the policy controlling timeouts, retries and the throughput floor of the downloads.
+     *
+     * @param downloadPolicy the download policy
+     */
+    public void setDownloadPolicy(@NotNull DownloadPolicy downloadPolicy) {
+        this.downloadPolicy = requireNonNull(downloadPolicy, "downloadPolicy");
+    }
 
-            return null;
-        }
+    /**
+     * Gets the limiter of the concurrent requests to the same host and of the total download bandwidth.
+     *
+     * @return the download limiter or null if downloads aren't limited
+     */
+    @Nullable
+    public DownloadLimiter getDownloadLimiter() {
+        return downloadLimiter;
     }
 
     /**
-     * Downloads a library jar to the save directory if it doesn't already
-     * exist (snapshot libraries are always re-downloaded) and returns
-     * the local file path.
-     * <p>
-     * If the library has a checksum, it will be compared against the
-     * downloaded jar's checksum to verify the integrity of the download. If
-     * the checksums don't match, a warning is generated and the next download
-     * URL is attempted.
-     * <p>
-     * Checksum comparison is ignored if the library doesn't have a checksum
-     * or if the library jar already exists in the save directory.
+     * Sets the limiter of the concurrent requests to the same host and of the total download bandwidth.
      * <p>
-     * Most of the time it is advised to use {@link #loadLibrary(Library)}
-     * instead of this method because this one is only concerned with
-     * downloading the jar and returning the local path. It's usually more
-     * desirable to download the jar and add it to the classloader's classpath in
-     * one operation.
-     * <p>
-     * Once the library is downloaded, relocations are applied automatically and
-     * its returned the path to the relocated jar.
+     * The same limiter can be set on multiple library managers to enforce the limits across all of them.
+     *
+     * @param downloadLimiter the download limiter or null to not limit downloads
+     */
+    public void setDownloadLimiter(@Nullable DownloadLimiter downloadLimiter) {
+        this.downloadLimiter = downloadLimiter;
+    }
+
+    /**
+     * Gets the health tracker of the contacted repositories, which can be used to
+     * inspect the repositories that were skipped because unreachable.
+     *
+     * @return the repository health tracker
+     */
+    @NotNull
+    public RepositoryHealth getRepositoryHealth() {
+        return repositoryHealth;
+    }
+
+    /**
+     * Sets the health tracker of the contacted repositories.
+     * <p>
+     * By default, a repository is skipped for 10 minutes after 3 consecutive connection failures.
+     *
+     * @param repositoryHealth the repository health tracker
+     */
+    public void setRepositoryHealth(@NotNull RepositoryHealth repositoryHealth) {
+        this.repositoryHealth = requireNonNull(repositoryHealth, "repositoryHealth");
+    }
+
+    /**
+     * Gets the cache of the URLs that repositories reported as not found.
+     *
+     * @return the negative cache or null if disabled
+     */
+    @Nullable
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Sets the cache of the URLs that repositories reported as not found, which
+     * aren't requested again until the cached miss expires.
+     * <p>
+     * By default, misses are kept in memory for 10 minutes. Provide a cache with a
+     * file to keep misses across restarts.
+     *
+     * @param negativeCache the negative cache or null to disable it
+     */
+    public void setNegativeCache(@Nullable NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    /**
+     * Gets the index of the repository that last served each library.
+     *
+     * @return the repository affinity index or null if disabled
+     */
+    @Nullable
+    public RepositoryAffinity getRepositoryAffinity() {
+        return repositoryAffinity;
+    }
+
+    /**
+     * Sets the index of the repository that last served each library, which is
+     * tried first the next time the library is resolved.
+     * <p>
+     * By default, the index is stored in the {@code .libby} folder of the save directory.
+     *
+     * @param repositoryAffinity the repository affinity index or null to disable it
+     */
+    public void setRepositoryAffinity(@Nullable RepositoryAffinity repositoryAffinity) {
+        this.repositoryAffinity = repositoryAffinity;
+    }
+
+    /**
+     * Gets the lockfile pinning the resolved artifacts of the loaded libraries.
+     *
+     * @return the lockfile or null if disabled
+     */
+    @Nullable
+    public Lockfile getLockfile() {
+        return lockfile;
+    }
+
+    /**
+     * Sets the lockfile pinning the resolved artifacts of the loaded libraries.
+     * <p>
+     * When a lockfile is set, loaded libraries are recorded in it together with their
+     * transitive dependencies. Later loads of the same libraries use the recorded jars
+     * directly, without resolving transitive dependencies or contacting repositories.
+     * Locked libraries are resolved again when their definition or the repositories change,
+     * or when a recorded jar is missing.
+     * <p>
+     * The lockfile is disabled by default, {@link #enableLockfile()} enables it in the save directory.
+     *
+     * @param lockfile the lockfile or null to disable it
+     */
+    public void setLockfile(@Nullable Lockfile lockfile) {
+        this.lockfile = lockfile;
+    }
+
+    /**
+     * Gets the cache of the snapshot metadata of the remote repositories.
+     *
+     * @return the metadata cache or null if disabled
+     */
+    @Nullable
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Sets the cache of the snapshot metadata of the remote repositories. Cached metadata
+     * is used to resolve snapshots until its {@link #getUpdatePolicy(String, Library) update policy}
+     * requires to check the repository again.
+     * <p>
+     * By default, metadata is cached in the {@code .libby} folder of the save directory.
+     *
+     * @param metadataCache the metadata cache or null to disable it
+     */
+    public void setMetadataCache(@Nullable MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Gets the default update policy of the cached snapshot metadata.
+     *
+     * @return the default update policy
+     */
+    @NotNull
+    public UpdatePolicy getSnapshotUpdatePolicy() {
+        return snapshotUpdatePolicy;
+    }
+
+    /**
+     * Sets the default update policy of the cached snapshot metadata, used for the
+     * libraries and the repositories without an update policy.
+     * <p>
+     * Defaults to {@link UpdatePolicy#ALWAYS always}, so that a new snapshot build is picked up on
+     * the next load. Cached metadata is revalidated with conditional requests, which are cheap when
+     * it didn't change. Less frequent policies such as {@link UpdatePolicy#DAILY daily} avoid the
+     * requests entirely, but new snapshot builds may not be seen until the next update.
+     *
+     * @param snapshotUpdatePolicy the default update policy
+     */
+    public void setSnapshotUpdatePolicy(@NotNull UpdatePolicy snapshotUpdatePolicy) {
+        this.snapshotUpdatePolicy = requireNonNull(snapshotUpdatePolicy, "snapshotUpdatePolicy");
+    }
+
+    /**
+     * Sets the update policy of the cached snapshot metadata of a repository,
+     * overriding the {@link #getSnapshotUpdatePolicy() default one}.
+     *
+     * @param url    the repository URL
+     * @param policy the update policy or null to use the default one
+     */
+    public void setRepositoryUpdatePolicy(@NotNull String url, @Nullable UpdatePolicy policy) {
+        String repo = requireNonNull(url, "url").endsWith("/") ? url : url + '/';
+        if (policy != null) {
+            repositoryUpdatePolicies.put(repo, policy);
+        } else {
+            repositoryUpdatePolicies.remove(repo);
+        }
+    }
+
+    /**
+     * Gets the update policy of the cached snapshot metadata of a library in a repository,
+     * which is the policy of the library, if any, otherwise the one of the repository or the default one.
+     *
+     * @param repository the repository URL
+     * @param library    the library
+     * @return the update policy
+     */
+    @NotNull
+    public UpdatePolicy getUpdatePolicy(@NotNull String repository, @NotNull Library library) {
+        UpdatePolicy policy = requireNonNull(library, "library").getUpdatePolicy();
+        if (policy == null) {
+            policy = repositoryUpdatePolicies.get(requireNonNull(repository, "repository"));
+        }
+        return policy != null ? policy : snapshotUpdatePolicy;
+    }
+
+    /**
+     * Enables the lockfile, storing it in the {@code .libby} folder of the save directory.
+     *
+     * @see #setLockfile(Lockfile)
+     */
+    public void enableLockfile() {
+        setLockfile(new Lockfile(saveDirectory.resolve(".libby").resolve("libby.lock")));
+    }
+
+    /**
+     * Gets the content-addressable store of artifacts shared with the other library managers.
+     *
+     * @return the shared store or null if disabled
+     */
+    @Nullable
+    public SharedArtifactStore getSharedStore() {
+        return sharedStore;
+    }
+
+    /**
+     * Sets the content-addressable store of artifacts shared with the other library managers.
+     * <p>
+     * Downloaded libraries are added to the store and libraries found in the store are
+     * linked into the save directory instead of being downloaded. By default, the store
+     * is disabled unless configured server-wide with the {@link SharedArtifactStore#SYSTEM_PROPERTY_DIRECTORY}
+     * system property or the {@link SharedArtifactStore#ENV_VAR_DIRECTORY} environment variable.
+     *
+     * @param sharedStore the shared store or null to disable it
+     */
+    public void setSharedStore(@Nullable SharedArtifactStore sharedStore) {
+        this.sharedStore = sharedStore;
+    }
+
+    /**
+     * Gets the executor used by the asynchronous methods of this library manager.
+     * <p>
+     * Unless {@link #setAsyncExecutor(Executor) set}, the executor is created on first use:
+     * on Java 21+ it starts a virtual thread per task, otherwise it uses a cached pool of daemon threads.
+     *
+     * @return the executor used by the asynchronous methods
+     */
+    @NotNull
+    public Executor getAsyncExecutor() {
+        synchronized (this) {
+            if (asyncExecutor == null) {
+                asyncExecutor = createAsyncExecutor();
+            }
+            return asyncExecutor;
+        }
+    }
+
+    /**
+     * Sets the executor used by the asynchronous methods of this library manager.
+     *
+     * @param asyncExecutor the executor to use
+     * @see #loadLibraryAsync(Library)
+     */
+    public void setAsyncExecutor(@NotNull Executor asyncExecutor) {
+        requireNonNull(asyncExecutor, "asyncExecutor");
+        synchronized (this) {
+            this.asyncExecutor = asyncExecutor;
+        }
+    }
+
+    /**
+     * Creates the default executor of the asynchronous methods.
+     *
+     * @return a virtual thread per task executor on Java 21+, a cached pool of daemon threads otherwise
+     */
+    @NotNull
+    private static Executor createAsyncExecutor() {
+        try {
+            // Built against Java 8, so virtual threads must be looked up reflectively
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ignored) {
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "libby-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Performs a GET request using the {@link #getTransport() transport}, skipping
+     * repositories that are currently unreachable and URLs known to be missing, and
+     * recording the outcome in the {@link #getRepositoryHealth() repository health tracker}
+     * and in the {@link #getNegativeCache() negative cache}.
+     *
+     * @param url     the URL to request
+     * @param headers additional request headers
+     * @return the response
+     * @throws RepositoryUnavailableException if the repository is currently skipped
+     * @throws FileNotFoundException          if the URL is missing
+     * @throws IOException                    if the request failed
+     */
+    @NotNull
+    private Transport.Response request(@NotNull String url, @NotNull Map<String, String> headers) throws IOException {
+        // Local repositories are cheap to query and may change at any time
+        NegativeCache misses = RepositoryHealth.getOrigin(url) != null ? negativeCache : null;
+        if (misses != null && misses.isMissing(url)) {
+            throw new FileNotFoundException(url);
+        }
+
+        RepositoryHealth health = repositoryHealth;
+        if (!health.tryAcquire(url)) {
+            throw new RepositoryUnavailableException(url);
+        }
+
+        DownloadPolicy policy = downloadPolicy;
+        int connectTimeout = (int) Math.min(Integer.MAX_VALUE, policy.getConnectTimeout(url).toMillis());
+        int readTimeout = (int) Math.min(Integer.MAX_VALUE, policy.getReadTimeout(url).toMillis());
+
+        boolean recorded = false;
+        try {
+            DownloadLimiter limiter = downloadLimiter;
+            Transport.Response response = (limiter != null ? limiter.limit(transport) : transport).get(url, headers, connectTimeout, readTimeout);
+            health.recordSuccess(url);
+            recorded = true;
+            return response;
+        } catch (IOException e) {
+            // Cancelled requests don't say anything about the repository
+            if (!Thread.currentThread().isInterrupted()) {
+                recorded = true;
+                if (health.recordFailure(url, e)) {
+                    logger.warn("Repository " + RepositoryHealth.getOrigin(url) + " is unreachable, skipping it for " + health.getCoolDown().getSeconds() + " seconds");
+                }
+            }
+            if (misses != null && e instanceof FileNotFoundException) {
+                try {
+                    misses.recordMiss(url);
+                } catch (IOException ex) {
+                    logger.debug("Couldn't save the negative cache", ex);
+                }
+            }
+            throw e;
+        } finally {
+            // Don't leave a half-open circuit waiting for an outcome that will never be recorded
+            if (!recorded) {
+                health.release(url);
+            }
+        }
+    }
+
+    /**
+     * Executes a request, retrying it with a jittered exponential backoff as long as it fails
+     * with {@link DownloadPolicy#isRetryable(IOException) transient errors}, up to the
+     * maximum number of retries of the {@link #getDownloadPolicy() download policy}.
+     *
+     * @param url     the requested URL
+     * @param request the request to execute
+     * @param <T>     the result type
+     * @return the result of the request
+     * @throws IOException the exception thrown by the last attempt
+     */
+    private <T> T withRetries(@NotNull String url, @NotNull RetryableRequest<T> request) throws IOException {
+        DownloadPolicy policy = downloadPolicy;
+        for (int retry = 1; ; retry++) {
+            try {
+                return request.execute();
+            } catch (IOException e) {
+                if (retry > policy.getMaxRetries() || !DownloadPolicy.isRetryable(e) || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+
+                long delay = policy.getRetryDelay(retry).toMillis();
+                logger.debug("Request to " + url + " failed (" + e.getMessage() + "), retrying in " + delay + " ms");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * A request which can be retried.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    private interface RetryableRequest<T> {
+        T execute() throws IOException;
+    }
+
+    /**
+     * Copies a response body to the provided output stream, aborting the transfer if it
+     * times out or if it's slower than the throughput floor of the {@link #getDownloadPolicy() download policy}.
+     *
+     * @param in           the response body
+     * @param out          the output stream
+     * @param url          the requested URL
+     * @param cancellation the cancellation of the transfer or null
+     * @return true if the body has been copied, false if the current thread has been interrupted or the transfer was cancelled
+     * @throws DownloadStalledException if the transfer timed out or was too slow
+     * @throws IOException              if the transfer failed
+     */
+    private boolean transfer(@NotNull InputStream in, @NotNull OutputStream out, @NotNull String url, @Nullable Cancellation cancellation) throws IOException {
+        DownloadPolicy policy = downloadPolicy;
+        long minThroughput = policy.getMinThroughput();
+        long window = policy.getThroughputWindow().toNanos();
+        long windowStart = System.nanoTime();
+        long windowBytes = 0;
+        long deferredBandwidth = policy.getDeferredBandwidth();
+        DeferredDownload deferred = deferredBandwidth > 0 ? deferredDownload.get() : null;
+
+        int len;
+        byte[] buf = new byte[downloadBufferSize];
+        try {
+            while ((len = in.read(buf)) != -1) {
+                if (Thread.currentThread().isInterrupted() || cancellation != null && cancellation.isCancelled()) {
+                    logger.debug("Download cancelled: " + url);
+                    return false;
+                }
+                out.write(buf, 0, len);
+
+                if (deferred != null && foregroundLoads.get() > 0 && !deferred.isAwaited()) {
+                    // Leave the bandwidth to the libraries being loaded in the foreground
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(len * 1_000_000_000L / deferredBandwidth);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        logger.debug("Download cancelled: " + url);
+                        return false;
+                    }
+                    // The throttled time doesn't count towards the throughput floor
+                    windowStart = System.nanoTime();
+                    windowBytes = 0;
+                    continue;
+                }
+
+                if (minThroughput > 0) {
+                    windowBytes += len;
+                    long elapsed = System.nanoTime() - windowStart;
+                    if (elapsed >= window) {
+                        long throughput = (long) (windowBytes / (elapsed / 1e9));
+                        if (throughput < minThroughput) {
+                            throw new DownloadStalledException("Download too slow (" + throughput + " B/s): " + url);
+                        }
+                        windowStart += elapsed;
+                        windowBytes = 0;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                // The response was aborted
+                logger.debug("Download cancelled: " + url);
+                return false;
+            }
+            if (!(e instanceof SocketTimeoutException)) {
+                throw e;
+            }
+            DownloadStalledException stalled = new DownloadStalledException("Download timed out: " + url);
+            stalled.initCause(e);
+            throw stalled;
+        }
+        return true;
+    }
+
+    /**
+     * Gets all the possible download URLs for this library. Entries are
+     * ordered by direct download URLs first and then repository download URLs.
+     * <br>This method also resolves SNAPSHOT artifacts URLs, querying all the repositories
+     * concurrently. Snapshot URLs are ordered by newest build first, repositories which
+     * didn't answer within the {@link #getHedgeDelay() hedge delay} from the first one are left out.
+     *
+     * @param library the library to resolve
+     * @return download URLs
+     */
+    @NotNull
+    public Collection<String> resolveLibrary(@NotNull Library library) {
+        Set<String> urls = new LinkedHashSet<>(requireNonNull(library, "library").getUrls());
+        if (library.isSnapshot()) {
+            urls.addAll(resolveSnapshots(library));
+        } else {
+            for (String repository : resolveRepositories(library)) {
+                urls.add(repository + library.getPath());
+            }
+        }
+
+        return Collections.unmodifiableSet(urls);
+    }
+
+    /**
+     * Resolves the URLs of the artifact of a snapshot library in all its repositories.
+     * <p>
+     * Remote repositories are queried concurrently using the {@link #getAsyncExecutor() async executor}.
+     * Once a repository has answered, the others are given the {@link #getHedgeDelay() hedge delay} to
+     * answer with a newer build, then they are cancelled.
+     *
+     * @param library the snapshot library
+     * @return the resolved URLs, ordered by newest build first
+     */
+    @NotNull
+    private List<String> resolveSnapshots(@NotNull Library library) {
+        SnapshotResolution resolution = new SnapshotResolution(library);
+        if (resolution.queries.size() > 1) {
+            resolution.start();
+        }
+        return resolution.await();
+    }
+
+    /**
+     * The resolution of a snapshot library in all its repositories.
+     * <p>
+     * Queries not started yet by the executor are run by the thread waiting for the
+     * resolution, so that a busy executor can't delay the resolution.
+     */
+    private final class SnapshotResolution {
+        private final Library library;
+        private final List<Query> queries = new ArrayList<>();
+        private final BlockingQueue<Query> answered = new LinkedBlockingQueue<>();
+
+        private SnapshotResolution(@NotNull Library library) {
+            this.library = library;
+            for (String repository : resolveRepositories(library)) {
+                queries.add(new Query(repository));
+            }
+        }
+
+        /**
+         * Starts querying the remote repositories in background.
+         */
+        private void start() {
+            Executor executor = getAsyncExecutor();
+            for (Query query : queries) {
+                // Local repositories are cheap to query
+                if (RepositoryHealth.getOrigin(query.repository) != null) {
+                    try {
+                        executor.execute(query);
+                    } catch (RejectedExecutionException ignored) {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the repositories to answer and cancels the ones still being queried
+         * after the {@link #getHedgeDelay() hedge delay} from the first usable answer.
+         *
+         * @return the resolved URLs, ordered by newest build first
+         */
+        @NotNull
+        private List<String> await() {
+            long grace = hedgeDelay.toNanos();
+            String[] resolved = new String[queries.size()];
+            long deadline = 0;
+            boolean found = false;
+            try {
+                for (Query query : queries) {
+                    if (RepositoryHealth.getOrigin(query.repository) == null) {
+                        query.run();
+                    }
+                }
+
+                for (int remaining = queries.size(); remaining > 0; remaining--) {
+                    Query query;
+                    if (found) {
+                        query = answered.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (query == null) {
+                            logger.debug("Not waiting any longer for the snapshot metadata of " + library);
+                            break;
+                        }
+                    } else {
+                        query = answered.poll(grace, TimeUnit.NANOSECONDS);
+                        while (query == null) {
+                            // Run a query the executor hasn't started yet, it may be saturated
+                            query = runNext() ? answered.poll(grace, TimeUnit.NANOSECONDS) : answered.take();
+                        }
+                    }
+
+                    String url = query.get();
+                    if (url != null) {
+                        resolved[queries.indexOf(query)] = url;
+                        if (!found) {
+                            found = true;
+                            deadline = System.nanoTime() + grace;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while resolving snapshot '" + library + "'", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            } finally {
+                cancel();
+            }
+
+            List<String> urls = new ArrayList<>(resolved.length);
+            for (String url : resolved) {
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+            // Stable sort, builds published by multiple repositories keep the repository order
+            urls.sort(newestSnapshotFirst(library));
+            return urls;
+        }
+
+        /**
+         * Runs in the current thread the first query which hasn't been started yet.
+         *
+         * @return false if every query has already been started
+         */
+        private boolean runNext() {
+            for (Query query : queries) {
+                if (query.claimed.compareAndSet(false, true)) {
+                    query.runClaimed();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Cancels the queries still running or not started yet.
+         */
+        private void cancel() {
+            for (Query query : queries) {
+                query.cancel(true);
+            }
+        }
+
+        /**
+         * The query of a repository for the snapshot metadata.
+         */
+        private final class Query extends FutureTask<String> {
+            private final String repository;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            private Query(@NotNull String repository) {
+                super(() -> {
+                    String path = resolveSnapshot(repository, library);
+                    return path != null ? repository + path : null;
+                });
+                this.repository = repository;
+            }
+
+            @Override
+            public void run() {
+                if (claimed.compareAndSet(false, true)) {
+                    runClaimed();
+                }
+            }
+
+            private void runClaimed() {
+                super.run();
+            }
+
+            @Override
+            protected void done() {
+                answered.add(this);
+            }
+        }
+    }
+
+    /**
+     * Creates a comparator ordering the resolved URLs of a snapshot library by newest build first,
+     * comparing the timestamp and then the build number of the artifacts. URLs without them,
+     * like the ones of non-unique snapshots, are ordered last.
+     *
+     * @param library the snapshot library
+     * @return the comparator
+     */
+    @NotNull
+    private static Comparator<String> newestSnapshotFirst(@NotNull Library library) {
+        String version = library.getVersion();
+        if (version.endsWith("-SNAPSHOT")) {
+            version = version.substring(0, version.length() - "-SNAPSHOT".length());
+        }
+        String prefix = library.getArtifactId() + '-' + version + '-';
+
+        Function<String, String> build = url -> {
+            String name = url.substring(url.lastIndexOf('/') + 1);
+            if (!name.startsWith(prefix)) {
+                return null;
+            }
+            Matcher matcher = SNAPSHOT_BUILD.matcher(name).region(prefix.length(), name.length());
+            // Pad the build number, so that builds are ordered as strings
+            return matcher.lookingAt() ? matcher.group(1) + '-' + String.format("%09d", Integer.parseInt(matcher.group(2))) : null;
+        };
+        return Comparator.comparing(build, Comparator.nullsLast(Comparator.reverseOrder()));
+    }
+    
+    /**
+     * Resolves the repository URLs for this library.
+     * <p>
+     * Repositories are ordered according to the {@link #getRepositoryResolutionMode() resolution mode},
+     * except for the repository that served the library the last time, which is always tried first.
+     *
+     * @param library the library to resolve repositories for
+     * @return the resolved repositories
+     */
+    public Collection<String> resolveRepositories(@NotNull Library library) {
+        Set<String> repositories;
+        switch (getRepositoryResolutionMode()) {
+            case GLOBAL_FIRST:
+                repositories = Stream.of(
+                        getRepositories(),
+                        library.getRepositories(),
+                        library.getFallbackRepositories()
+                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+                break;
+            case LIBRARY_FIRST:
+                repositories = Stream.of(
+                        library.getRepositories(),
+                        library.getFallbackRepositories(),
+                        getRepositories()
+                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+                break;
+            case DEFAULT:
+            default:
+                repositories = Stream.of(
+                        library.getRepositories(),
+                        getRepositories(),
+                        library.getFallbackRepositories()
+                ).flatMap(Collection::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+                break;
+        }
+
+        // Try first the repository that served the library the last time
+        RepositoryAffinity affinity = repositoryAffinity;
+        String preferred = affinity != null ? affinity.getRepository(library) : null;
+        if (preferred != null && repositories.contains(preferred)) {
+            Set<String> ordered = new LinkedHashSet<>();
+            ordered.add(preferred);
+            ordered.addAll(repositories);
+            return ordered;
+        }
+        return repositories;
+    }
+
+    /**
+     * Resolves the URL of the artifact of a snapshot library.
+     *
+     * @param repository The repository to query for snapshot information
+     * @param library    The library
+     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
+     * provided repository
+     */
+    @Nullable
+    protected String resolveSnapshot(@NotNull String repository, @NotNull Library library) {
+        String mavenMetadata = repository.startsWith("file") ? "maven-metadata-local.xml" : "maven-metadata.xml";
+        String url = requireNonNull(repository, "repository") + requireNonNull(library, "library").getPartialPath() + mavenMetadata;
+        // Local repositories are cheap to query and may change at any time
+        MetadataCache cache = RepositoryHealth.getOrigin(url) != null ? metadataCache : null;
+        try {
+            if (cache != null && cache.isUpToDate(url, getUpdatePolicy(repository, library))) {
+                String resolved = getURLFromCachedMetadata(cache, url, library);
+                if (resolved != null) {
+                    return resolved;
+                }
+            }
+
+            return withRetries(url, () -> {
+                ArtifactMetadata validators = cache != null ? cache.getValidators(url) : null;
+                Map<String, String> headers = new HashMap<>();
+                if (validators != null && validators.getETag() != null) {
+                    headers.put("If-None-Match", validators.getETag());
+                }
+                if (validators != null && validators.getLastModified() != null) {
+                    headers.put("If-Modified-Since", validators.getLastModified());
+                }
+
+                try (Transport.Response response = request(url, headers)) {
+                    if (cache == null) {
+                        try (InputStream in = response.getBody()) {
+                            return getURLFromMetadata(in, library);
+                        }
+                    }
+
+                    if (response.getStatusCode() == 304) {
+                        cache.markUpdated(url);
+                    } else {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        try (InputStream in = response.getBody()) {
+                            if (!transfer(in, out, response.getUrl(), null)) {
+                                return null;
+                            }
+                        }
+                        cache.store(url, out.toByteArray(), response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                    }
+                    return getURLFromCachedMetadata(cache, url, library);
+                }
+            });
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            if (cache != null && !(e instanceof FileNotFoundException)) {
+                // The repository can't be reached, so the cached metadata is the best information available
+                try {
+                    String resolved = getURLFromCachedMetadata(cache, url, library);
+                    if (resolved != null) {
+                        logger.debug("Couldn't check " + url + " for updates, using the cached metadata");
+                        return resolved;
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+
+            if (e instanceof RepositoryUnavailableException) {
+                logger.debug(e.getMessage());
+            } else if (e instanceof FileNotFoundException) {
+                logger.debug("File not found: " + url);
+            } else if (e instanceof DownloadStalledException) {
+                logger.warn(e.getMessage());
+            } else if (e instanceof SocketTimeoutException) {
+                logger.debug("Connect timed out: " + url);
+            } else if (e instanceof UnknownHostException) {
+                logger.debug("Unknown host: " + url);
+            } else {
+                logger.debug("Unexpected IOException", e);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Gets the URL of the artifact of a snapshot library from the cached maven-metadata.xml of a repository.
+     *
+     * @param cache   the metadata cache
+     * @param url     the URL of the maven-metadata.xml
+     * @param library the library
+     * @return the URL of the artifact or null if the metadata isn't cached or has no information
+     * @throws IOException if any IO errors occur
+     */
+    @Nullable
+    private String getURLFromCachedMetadata(@NotNull MetadataCache cache, @NotNull String url, @NotNull Library library) throws IOException {
+        byte[] metadata = cache.read(url);
+        return metadata != null ? getURLFromMetadata(new ByteArrayInputStream(metadata), library) : null;
+    }
+
+    /**
+     * Gets the URL of the artifact of a snapshot library from the provided InputStream, which should be opened to the
+     * library's maven-metadata.xml.
+     *
+     * @param inputStream The InputStream opened to the library's maven-metadata.xml
+     * @param library     The library
+     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
+     * provided inputStream
+     * @throws IOException If any IO errors occur
+     */
+    @Nullable
+    protected String getURLFromMetadata(@NotNull InputStream inputStream, @NotNull Library library) throws IOException {
+        requireNonNull(inputStream, "inputStream");
+        requireNonNull(library, "library");
+
+        String version;
+        try {
+            version = metadataReader.readSnapshotVersion(inputStream, library.getVersion(), library.getClassifier(), "jar");
+        } catch (XMLStreamException e) {
+            if (e.getNestedException() instanceof IOException) {
+                throw (IOException) e.getNestedException();
+            }
+            logger.debug("Invalid maven-metadata.xml", e);
+            return null;
+        }
+
+        if (version == null) {
+            return null;
+        }
+        return Util.craftPath(library.getPartialPath(), library.getArtifactId(), version, library.getClassifier());
+    }
+
+    /**
+     * Downloads a library jar and returns the contents as a byte array.
+     *
+     * @param url the URL to the library jar
+     * @return downloaded jar as byte array or null if nothing was downloaded
+     * @deprecated The whole jar is held in memory, use {@link #downloadLibrary(String, Path, MessageDigest)}
+     */
+    @Deprecated
+    protected byte[] downloadLibrary(@NotNull String url) {
+        requireNonNull(url, "url");
+        try {
+            return withRetries(url, () -> {
+                try (Transport.Response response = request(url, Collections.emptyMap());
+                     InputStream in = response.getBody()) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    if (!transfer(in, out, response.getUrl(), null)) {
+                        return null;
+                    }
+
+                    logger.info("Downloaded library " + response.getUrl());
+                    return out.toByteArray();
+                }
+            });
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            if (e instanceof RepositoryUnavailableException) {
+                logger.debug(e.getMessage());
+            } else if (e instanceof FileNotFoundException) {
+                logger.debug("File not found: " + url);
+            } else if (e instanceof DownloadStalledException) {
+                logger.warn(e.getMessage());
+            } else if (e instanceof SocketTimeoutException) {
+                logger.debug("Connect timed out: " + url);
+            } else if (e instanceof UnknownHostException) {
+                logger.debug("Unknown host: " + url);
+            } else {
+                logger.debug("Unexpected IOException", e);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Downloads a library jar from the provided URL and streams it into the
+     * output file.
+     * <p>
+     * The jar is never fully held in memory: bytes are written to the output
+     * file as they arrive using a buffer of {@link #getDownloadBufferSize()} bytes.
+     * If a message digest is provided, it is updated with every downloaded byte.
+     * <p>
+     * While the jar is being downloaded, the validators returned by the server
+     * (ETag and Last-Modified) are saved in an {@link ArtifactMetadata} file next
+     * to the output file. If a previous download from the same URL was interrupted,
+     * it is resumed by requesting only the missing bytes with an HTTP {@code Range}
+     * request. If the server doesn't support ranges or the jar has changed, it is
+     * downloaded again from the beginning. Once the download completes, the
+     * metadata is left next to the output file.
+     *
+     * @param url the URL to the library jar
+     * @param out the file to write the jar to, it is overwritten if it already exists and can't be resumed
+     * @param md  the message digest to update while downloading or null
+     * @return true if the jar was downloaded, false otherwise
+     */
+    protected boolean downloadLibrary(@NotNull String url, @NotNull Path out, @Nullable MessageDigest md) {
+        return downloadLibrary(url, out, md, null);
+    }
+
+    /**
+     * Downloads a library jar from the provided URL and streams it into the output file.
+     *
+     * @param url          the URL to the library jar
+     * @param out          the file to write the jar to
+     * @param md           the message digest to update while downloading or null
+     * @param cancellation the cancellation of the download or null
+     * @return true if the jar was downloaded, false otherwise
+     * @see #downloadLibrary(String, Path, MessageDigest)
+     */
+    private boolean downloadLibrary(@NotNull String url, @NotNull Path out, @Nullable MessageDigest md, @Nullable Cancellation cancellation) {
+        requireNonNull(url, "url");
+        requireNonNull(out, "out");
+        try {
+            return withRetries(url, () -> {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    return false;
+                }
+                // Retries resume the partial download, feeding the digest again
+                if (md != null) {
+                    md.reset();
+                }
+                return downloadOnce(url, out, md, cancellation);
+            });
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            if (e instanceof RepositoryUnavailableException) {
+                logger.debug(e.getMessage());
+            } else if (e instanceof FileNotFoundException) {
+                logger.debug("File not found: " + url);
+            } else if (e instanceof DownloadStalledException) {
+                logger.warn(e.getMessage());
+            } else if (e instanceof SocketTimeoutException) {
+                logger.debug("Connect timed out: " + url);
+            } else if (e instanceof UnknownHostException) {
+                logger.debug("Unknown host: " + url);
+            } else {
+                logger.debug("Unexpected IOException", e);
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Makes a single attempt to download a file, resuming the partial download left by a previous attempt if possible.
+     *
+     * @param url          the URL to the file
+     * @param out          the file to write to
+     * @param md           the message digest fed with the downloaded bytes or null
+     * @param cancellation the cancellation of the download or null
+     * @return true if the file has been downloaded, false otherwise
+     * @throws IOException if the request or the transfer failed
+     */
+    private boolean downloadOnce(@NotNull String url, @NotNull Path out, @Nullable MessageDigest md, @Nullable Cancellation cancellation) throws IOException {
+        long offset = 0;
+        Map<String, String> headers = Collections.emptyMap();
+        ArtifactMetadata partial = Files.isRegularFile(out) ? ArtifactMetadata.read(out) : null;
+        if (partial != null && url.equals(partial.getUrl()) && partial.getRangeValidator() != null) {
+            offset = Files.size(out);
+            if (offset > 0) {
+                headers = new HashMap<>();
+                headers.put("Range", "bytes=" + offset + "-");
+                headers.put("If-Range", partial.getRangeValidator());
+            }
+        }
+
+        Transport.Response response;
+        try {
+            response = request(url, headers);
+        } catch (IOException e) {
+            if (offset == 0 || e instanceof FileNotFoundException || e instanceof RepositoryUnavailableException
+                    || RepositoryHealth.isConnectionFailure(e) || DownloadPolicy.isRetryable(e)) {
+                throw e;
+            }
+
+            // The server rejected the range request (e.g. 416 Range Not Satisfiable), start over
+            logger.debug("Couldn't resume download of " + url + ", downloading it again");
+            deletePartialDownload(out);
+            return downloadOnce(url, out, md, cancellation);
+        }
+
+        if (cancellation != null && !cancellation.attach(response)) {
+            response.close();
+            return false;
+        }
+
+        try {
+            boolean resume = false;
+            if (response.getStatusCode() == 206) {
+                if (offset == 0 || getContentRangeStart(response) != offset) {
+                    logger.debug("Unexpected partial content: " + response.getUrl());
+                    deletePartialDownload(out);
+                    return false;
+                }
+                resume = true;
+            }
+
+            if (resume) {
+                if (md != null) {
+                    // Feed the bytes already downloaded to the digest
+                    try (InputStream in = new DigestInputStream(Files.newInputStream(out), md)) {
+                        byte[] buf = new byte[downloadBufferSize];
+                        while (in.read(buf) != -1) {
+                            // Only digest the bytes
+                        }
+                    }
+                }
+                logger.info("Resuming download of " + response.getUrl() + " from byte " + offset);
+            } else {
+                // Save the validators before writing any byte, so that the download can be resumed if interrupted
+                ArtifactMetadata metadata = new ArtifactMetadata();
+                metadata.setUrl(url);
+                metadata.setETag(response.getHeader("ETag"));
+                metadata.setLastModified(response.getHeader("Last-Modified"));
+                if (metadata.getRangeValidator() != null) {
+                    metadata.write(out);
+                } else {
+                    ArtifactMetadata.delete(out);
+                }
+            }
+
+            try (InputStream in = md != null ? new DigestInputStream(response.getBody(), md) : response.getBody();
+                 OutputStream output = resume ? Files.newOutputStream(out, StandardOpenOption.APPEND) : Files.newOutputStream(out)) {
+                if (!transfer(in, output, response.getUrl(), cancellation)) {
+                    return false;
+                }
+            }
+
+            logger.info("Downloaded library " + response.getUrl());
+            return true;
+        } finally {
+            if (cancellation != null) {
+                // The response has been read, cancelling the download mustn't abort it anymore
+                cancellation.detach(response);
+            }
+            response.close();
+        }
+    }
+
+    /**
+     * Gets the first byte position of the {@code Content-Range} header of a partial response.
+     *
+     * @param response the partial response
+     * @return the first byte position or -1 if the header is missing or invalid
+     */
+    private static long getContentRangeStart(@NotNull Transport.Response response) {
+        String contentRange = response.getHeader("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Deletes a partially downloaded file and its {@link ArtifactMetadata}, so that it won't be resumed.
+     *
+     * @param out the partially downloaded file
+     */
+    private void deletePartialDownload(@NotNull Path out) {
+        try {
+            Files.deleteIfExists(out);
+            ArtifactMetadata.delete(out);
+        } catch (IOException e) {
+            logger.debug("Couldn't delete partial download " + out, e);
+        }
+    }
+
+    /**
+     * Downloads a library jar to the save directory if it doesn't already
+     * exist and returns the local file path.
+     * <p>
+     * Snapshot libraries are downloaded again only if they changed: the URL they
+     * were resolved to and the validators returned by the server are stored in an
+     * {@link ArtifactMetadata} file next to the jar and checked the next time.
+     * <p>
+     * If the library has a checksum, it will be compared against the
+     * downloaded jar's checksum to verify the integrity of the download. If
+     * the checksums don't match, a warning is generated and the next download
+     * URL is attempted.
+     * <p>
+     * Checksum comparison is ignored if the library doesn't have a checksum.
+     * Jars already in the save directory are verified against the checksum
+     * recorded when they were downloaded, but they are hashed again only if
+     * their size or last modified time changed. Corrupted jars are downloaded
+     * again.
+     * <p>
+     * If another library manager in the JVM is already downloading the same library,
+     * this method waits for it and copies its jar instead of downloading it again.
+     * <p>
+     * Most of the time it is advised to use {@link #loadLibrary(Library)}
+     * instead of this method because this one is only concerned with
+     * downloading the jar and returning the local path. It's usually more
+     * desirable to download the jar and add it to the classloader's classpath in
+     * one operation.
+     * <p>
+     * Once the library is downloaded, relocations are applied automatically and
+     * its returned the path to the relocated jar.
+     *
+     * @param library the library to download
+     * @return local file path to library
+     * @see #loadLibrary(Library)
+     * @see #relocate(Path, String, Collection)
+     */
+    @NotNull
+    public Path downloadLibrary(@NotNull Library library) {
+        Path file = saveDirectory.resolve(requireNonNull(library, "library").getPath());
+
+        // Verified release jars can be used without locking the cache
+        if (library.isSnapshot() || !Files.exists(file) || !verifyCachedFile(file, library.getChecksum())) {
+            boolean deferred = loadingDeferred.get();
+            Path awaited = file.toAbsolutePath().normalize();
+            if (!deferred) {
+                // Deferred downloads of the same artifact stop being throttled
+                AWAITED_ARTIFACTS.merge(awaited, 1, Integer::sum);
+            }
+            try {
+                ArtifactLock lock = ArtifactLock.acquire(file, LOCK_TIMEOUT);
+                try {
+                    if (deferred) {
+                        deferredDownload.set(new DeferredDownload(awaited, InFlightDownloads.getKey(library)));
+                    }
+                    downloadLocked(library, file);
+                } finally {
+                    deferredDownload.remove();
+                    lock.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (!deferred) {
+                    AWAITED_ARTIFACTS.computeIfPresent(awaited, (k, waiting) -> waiting > 1 ? waiting - 1 : null);
+                }
+            }
+        }
+
+        // Relocate the file
+        if (library.hasRelocations()) {
+            file = relocate(file, library.getRelocatedPath(), library.getRelocations());
+        }
+
+        return file;
+    }
+
+    /**
+     * Asynchronously downloads a library jar to the save directory if it doesn't
+     * already exist and returns the local file path, using the {@link #getAsyncExecutor() async executor}.
+     *
+     * @param library the library to download
+     * @return a future completed with the local file path, or exceptionally if the download failed
+     * @see #downloadLibrary(Library)
+     */
+    @NotNull
+    public CompletableFuture<Path> downloadLibraryAsync(@NotNull Library library) {
+        return downloadLibraryAsync(library, getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronously downloads a library jar to the save directory if it doesn't
+     * already exist and returns the local file path.
+     *
+     * @param library  the library to download
+     * @param executor the executor to download the library on
+     * @return a future completed with the local file path, or exceptionally if the download failed
+     * @see #downloadLibrary(Library)
+     */
+    @NotNull
+    public CompletableFuture<Path> downloadLibraryAsync(@NotNull Library library, @NotNull Executor executor) {
+        requireNonNull(library, "library");
+        return CompletableFuture.supplyAsync(() -> downloadLibrary(library), requireNonNull(executor, "executor"));
+    }
+
+    /**
+     * Links a library jar from the {@link #getSharedStore() shared store} into the save directory.
+     *
+     * @param library the library
+     * @param file    the jar of the library in the save directory
+     * @return true if the jar was linked, false if it must be downloaded
+     */
+    private boolean linkFromSharedStore(@NotNull Library library, @NotNull Path file) {
+        SharedArtifactStore store = sharedStore;
+        Path stored = store != null ? store.find(library) : null;
+        if (stored == null) {
+            return false;
+        }
+
+        try {
+            store.link(stored, file);
+        } catch (IOException e) {
+            logger.debug("Couldn't link " + stored, e);
+            return false;
+        }
+
+        if (!verifyCachedFile(file, library.getChecksum())) {
+            // The stored artifact is corrupted as well
+            deleteCachedFile(file);
+            try {
+                Files.deleteIfExists(stored);
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+
+        logger.debug("Linked " + library + " from the shared store");
+        return true;
+    }
+
+    /**
+     * Adds a downloaded library jar to the {@link #getSharedStore() shared store}.
+     *
+     * @param library  the library
+     * @param file     the downloaded jar
+     * @param metadata the metadata of the downloaded jar
+     */
+    private void addToSharedStore(@NotNull Library library, @NotNull Path file, @NotNull ArtifactMetadata metadata) {
+        SharedArtifactStore store = sharedStore;
+        String sha256 = metadata.getSha256();
+        if (store == null || sha256 == null || library.isSnapshot()) {
+            return;
+        }
+
+        try {
+            store.store(library, file, Base64.getDecoder().decode(sha256));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Couldn't add " + library + " to the shared store", e);
+        }
+    }
+
+    /**
+     * Reuses a library jar downloaded by another library manager in the JVM.
+     *
+     * @param library the library
+     * @param shared  the jar downloaded by the other library manager
+     * @param file    the jar of the library in the save directory
+     * @return true if the jar was reused, false if it must be downloaded
+     */
+    private boolean reuseDownloadedFile(@NotNull Library library, @NotNull Path shared, @NotNull Path file) {
+        try {
+            SharedArtifactStore store = sharedStore;
+            if (!Files.exists(file) || !Files.isSameFile(shared, file)) {
+                if (store != null) {
+                    store.link(shared, file);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                    try {
+                        Files.copy(shared, tmp, StandardCopyOption.REPLACE_EXISTING);
+                        Util.moveAtomically(tmp, file);
+                    } finally {
+                        Files.deleteIfExists(tmp);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Couldn't reuse " + shared, e);
+            return false;
+        }
+
+        if (!verifyCachedFile(file, library.getChecksum())) {
+            deleteCachedFile(file);
+            return false;
+        }
+
+        logger.debug("Reused " + library + " downloaded by another library manager");
+        return true;
+    }
+
+    /**
+     * Downloads a library into the given file, assuming the caller holds the {@link ArtifactLock} of the file.
+     *
+     * @param library the library to download
+     * @param file    the file to save the library into
+     */
+    private void downloadLocked(@NotNull Library library, @NotNull Path file) {
+        boolean exists = Files.exists(file);
+        if (exists && !verifyCachedFile(file, library.getChecksum())) {
+            deleteCachedFile(file);
+            if (library.hasRelocations()) {
+                deleteCachedFile(saveDirectory.resolve(library.getRelocatedPath()));
+            }
+            exists = false;
+        }
+
+        if (library.isSnapshot()) {
+            // Snapshot libraries must be revalidated. Direct URLs take precedence and usually point to
+            // a unique build, so repositories are queried only if the direct URLs didn't serve the snapshot
+            Collection<String> urls = library.getUrls();
+            ArtifactMetadata metadata = exists ? ArtifactMetadata.read(file) : null;
+            if (!urls.isEmpty() && (metadata == null || urls.contains(metadata.getUrl()))) {
+                if (exists && isSnapshotUpToDate(library, file, urls)) {
+                    logger.debug("Snapshot " + library + " is up to date");
+                    return;
+                }
+
+                // Query the repositories while trying the direct URLs, so that they're ready if needed
+                SnapshotResolution resolution = new SnapshotResolution(library);
+                resolution.start();
+                try {
+                    if (!tryFetchLibrary(library, file, urls)) {
+                        urls = resolution.await();
+                        if (urls.isEmpty() || !tryFetchLibrary(library, file, urls)) {
+                            throw new RuntimeException("Failed to download library '" + library + "'");
+                        }
+                    }
+                } finally {
+                    resolution.cancel();
+                }
+                return;
+            }
+
+            urls = resolveLibrary(library);
+            if (exists && isSnapshotUpToDate(library, file, urls)) {
+                logger.debug("Snapshot " + library + " is up to date");
+            } else {
+                fetchLibrary(library, file, urls);
+            }
+        } else if (!exists && !linkFromSharedStore(library, file)) {
+            // Other library managers in the JVM may be downloading the same library
+            String key = InFlightDownloads.getKey(library);
+            String token = InFlightDownloads.createToken();
+            Path shared;
+            try {
+                shared = InFlightDownloads.acquire(key, token, LOCK_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the download of library '" + library + "'", e);
+            }
+
+            if (shared == null || !reuseDownloadedFile(library, shared, file)) {
+                boolean downloaded = false;
+                try {
+                    fetchLibrary(library, file, resolveLibrary(library));
+                    downloaded = true;
+                } finally {
+                    if (downloaded) {
+                        InFlightDownloads.complete(key, token, file);
+                    } else {
+                        InFlightDownloads.release(key, token);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Downloads a library jar into the save directory from the provided URLs.
+     *
+     * @param library the library to download
+     * @param file    the jar of the library in the save directory, it is replaced if it already exists
+     * @param urls    the URLs to download the library from
+     */
+    private void fetchLibrary(@NotNull Library library, @NotNull Path file, @NotNull Collection<String> urls) {
+        if (urls.isEmpty()) {
+            throw new RuntimeException("Library '" + library + "' couldn't be resolved, add a repository");
+        }
+
+        if (!tryFetchLibrary(library, file, urls)) {
+            throw new RuntimeException("Failed to download library '" + library + "'");
+        }
+    }
+
+    /**
+     * Tries to download a library jar into the save directory from the provided URLs.
+     *
+     * @param library the library to download
+     * @param file    the jar of the library in the save directory, it is replaced if it already exists
+     * @param urls    the URLs to download the library from
+     * @return true if the library was downloaded, false if none of the URLs served it
+     */
+    private boolean tryFetchLibrary(@NotNull Library library, @NotNull Path file, @NotNull Collection<String> urls) {
+        // Not deleted on exit, a partial download is resumed the next time if possible
+        Path out = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            String downloadedUrl = null;
+            if (downloadStrategy == DownloadStrategy.RACE && urls.size() > 1) {
+                downloadedUrl = raceDownload(library, urls, out);
+            } else {
+                MessageDigest md = createDigest();
+                for (String url : urls) {
+                    if (downloadLibrary(library, url, out, md, null)) {
+                        downloadedUrl = url;
+                        break;
+                    }
+                }
+            }
+
+            if (downloadedUrl != null) {
+                rememberRepository(library, downloadedUrl);
+
+                // Keep the resolved URL, the validators and the checksum, used to revalidate snapshots and by the lockfile
+                ArtifactMetadata metadata = ArtifactMetadata.read(out);
+                if (metadata == null) {
+                    metadata = new ArtifactMetadata();
+                    metadata.setUrl(downloadedUrl);
+                }
+
+                Util.moveAtomically(out, file);
+
+                // The relocated jar of the previous snapshot is stale
+                if (library.isSnapshot() && library.hasRelocations()) {
+                    Files.deleteIfExists(saveDirectory.resolve(library.getRelocatedPath()));
+                }
+
+                // Record the state of the verified jar, so that it isn't hashed again on the next start
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                metadata.setFileSize(attributes.size());
+                metadata.setFileTime(attributes.lastModifiedTime().toMillis());
+                metadata.write(file);
+                ArtifactMetadata.delete(out);
+
+                addToSharedStore(library, file, metadata);
+                return true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            // Keep the partial download only if it can be resumed
+            if (Files.exists(out) && !Files.exists(ArtifactMetadata.getFile(out))) {
+                deletePartialDownload(out);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Records the repository that served the library in the {@link #getRepositoryAffinity() repository affinity index}.
+     *
+     * @param library the downloaded library
+     * @param url     the URL the library was downloaded from
+     */
+    private void rememberRepository(@NotNull Library library, @NotNull String url) {
+        RepositoryAffinity affinity = repositoryAffinity;
+        if (affinity == null || library.getUrls().contains(url)) {
+            return;
+        }
+
+        // The longest matching repository, in case a repository URL is a prefix of another one
+        String served = null;
+        for (String repository : resolveRepositories(library)) {
+            if (url.startsWith(repository) && (served == null || repository.length() > served.length())) {
+                served = repository;
+            }
+        }
+
+        if (served != null) {
+            try {
+                affinity.setRepository(library, served);
+            } catch (IOException e) {
+                logger.debug("Couldn't save the repository affinity index", e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a previously downloaded snapshot is still up to date.
+     * <p>
+     * Snapshots with a unique version (timestamp and build number) are up to date
+     * if the repository metadata still resolves to the same URL. Other snapshots
+     * are revalidated with a conditional request using the stored validators.
+     * If the snapshot couldn't be resolved at all, the downloaded one is used.
+     *
+     * @param library the snapshot library
+     * @param file    the previously downloaded snapshot
+     * @param urls    the resolved URLs of the snapshot
+     * @return true if the downloaded snapshot can be used, false if it must be downloaded again
+     */
+    private boolean isSnapshotUpToDate(@NotNull Library library, @NotNull Path file, @NotNull Collection<String> urls) {
+        ArtifactMetadata metadata = ArtifactMetadata.read(file);
+        String url = metadata != null ? metadata.getUrl() : null;
+        if (url == null) {
+            return false;
+        }
+
+        if (urls.isEmpty()) {
+            logger.warn("Couldn't resolve snapshot " + library + ", using the previously downloaded one");
+            return true;
+        }
+
+        if (!urls.contains(url)) {
+            return false;
+        }
+
+        if (!url.endsWith(library.getPath())) {
+            // The URL contains the timestamp and the build number, which didn't change
+            return true;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (metadata.getETag() != null) {
+            headers.put("If-None-Match", metadata.getETag());
+        }
+        if (metadata.getLastModified() != null) {
+            headers.put("If-Modified-Since", metadata.getLastModified());
+        }
+        if (headers.isEmpty()) {
+            return false;
+        }
+
+        try {
+            return withRetries(url, () -> {
+                try (Transport.Response response = request(url, headers)) {
+                    return response.getStatusCode() == 304;
+                }
+            });
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            logger.debug("Couldn't revalidate snapshot " + url, e);
+            return false;
+        }
+    }
+
+    /**
+     * Downloads a library jar from the provided URL into the output file and
+     * verifies its checksum, if the library has one.
+     * <p>
+     * The URL and the SHA-256 checksum of the downloaded jar are saved in the
+     * {@link ArtifactMetadata} of the output file.
+     *
+     * @param library      the library to download
+     * @param url          the URL to the library jar
+     * @param out          the file to write the jar to
+     * @param md           the SHA-256 message digest used to compute the checksum
+     * @param cancellation the cancellation of the download or null
+     * @return true if the jar was downloaded and is valid, false otherwise
+     */
+    private boolean downloadLibrary(@NotNull Library library, @NotNull String url, @NotNull Path out, @NotNull MessageDigest md, @Nullable Cancellation cancellation) {
+        md.reset();
+        if (!downloadLibrary(url, out, md, cancellation)) {
+            return false;
+        }
+
+        byte[] checksum = md.digest();
+        if (library.hasChecksum() && !Arrays.equals(checksum, library.getChecksum())) {
+            logger.warn("*** INVALID CHECKSUM ***");
+            logger.warn(" Library :  " + library);
+            logger.warn(" URL :  " + url);
+            logger.warn(" Expected :  " + Base64.getEncoder().encodeToString(library.getChecksum()));
+            logger.warn(" Actual :  " + Base64.getEncoder().encodeToString(checksum));
+
+            // Don't resume a corrupted download
+            deletePartialDownload(out);
+            return false;
+        }
+
+        ArtifactMetadata metadata = ArtifactMetadata.read(out);
+        if (metadata == null) {
+            metadata = new ArtifactMetadata();
+        }
+        metadata.setUrl(url);
+        metadata.setSha256(Base64.getEncoder().encodeToString(checksum));
+        try {
+            metadata.write(out);
+        } catch (IOException e) {
+            logger.debug("Couldn't save the metadata of " + out, e);
+        }
+        return true;
+    }
+
+    /**
+     * Races the download of a library jar across its candidate URLs.
+     * <p>
+     * The first URL is tried immediately and the next ones are started after every
+     * {@link #getHedgeDelay() hedge delay}, or as soon as a previous attempt fails.
+     * Attempts run on the {@link #getAsyncExecutor() async executor}. The first valid
+     * download wins, the other attempts are aborted and their partial downloads are deleted.
      *
      * @param library the library to download
-     * @return local file path to library
+     * @param urls    the candidate URLs
+     * @param out     the file to move the winning download to
+     * @return the URL the jar was downloaded from or null if it couldn't be downloaded
+     * @throws IOException if the winning download couldn't be moved or the current thread was interrupted
+     */
+    @Nullable
+    private String raceDownload(@NotNull Library library, @NotNull Collection<String> urls, @NotNull Path out) throws IOException {
+        DownloadRace race = new DownloadRace(library, new ArrayList<>(urls), out);
+        Integer index = null;
+        try {
+            race.startNext();
+            long delay = hedgeDelay.toMillis();
+            while (true) {
+                try {
+                    index = race.winner.get(delay, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (!race.startNext()) {
+                        // Run the attempts the executor hasn't started yet, it may be saturated
+                        race.runPending();
+                        index = race.winner.get();
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + library);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            race.finish(index);
+        }
+
+        if (index == null) {
+            return null;
+        }
+
+        Path tmp = race.getFile(index);
+        try {
+            Util.moveAtomically(tmp, out);
+            Path metadata = ArtifactMetadata.getFile(tmp);
+            if (Files.exists(metadata)) {
+                Util.moveAtomically(metadata, ArtifactMetadata.getFile(out));
+            }
+        } finally {
+            deletePartialDownload(tmp);
+        }
+        return race.candidates.get(index);
+    }
+
+    /**
+     * The state of a {@link #raceDownload(Library, Collection, Path) race download}.
+     */
+    private final class DownloadRace {
+        private final Library library;
+        private final List<String> candidates;
+        private final Path out;
+        private final Cancellation[] cancellations;
+        private final AtomicReferenceArray<Attempt> attempts;
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final CompletableFuture<Integer> winner = new CompletableFuture<>();
+
+        private DownloadRace(@NotNull Library library, @NotNull List<String> candidates, @NotNull Path out) {
+            this.library = library;
+            this.candidates = candidates;
+            this.out = out;
+            this.cancellations = new Cancellation[candidates.size()];
+            for (int i = 0; i < cancellations.length; i++) {
+                cancellations[i] = new Cancellation();
+            }
+            this.attempts = new AtomicReferenceArray<>(candidates.size());
+        }
+
+        /**
+         * Gets the file the attempt with the provided index downloads to.
+         *
+         * @param index the index of the attempt
+         * @return the file of the attempt
+         */
+        @NotNull
+        private Path getFile(int index) {
+            return out.resolveSibling(out.getFileName() + "-" + index);
+        }
+
+        /**
+         * Starts the next attempt, unless every candidate has already been started.
+         *
+         * @return true if an attempt has been started
+         */
+        private boolean startNext() {
+            int index = started.getAndIncrement();
+            if (index >= candidates.size() || winner.isDone()) {
+                return false;
+            }
+
+            Attempt attempt = new Attempt(index);
+            attempts.set(index, attempt);
+            try {
+                getAsyncExecutor().execute(attempt::run);
+            } catch (RejectedExecutionException e) {
+                attempt.run();
+            }
+            return true;
+        }
+
+        /**
+         * Runs in the current thread the started attempts which aren't running yet.
+         */
+        private void runPending() {
+            for (int i = 0; i < candidates.size(); i++) {
+                Attempt attempt = attempts.get(i);
+                if (attempt != null) {
+                    attempt.run();
+                }
+            }
+        }
+
+        private void download(int index) {
+            if (winner.isDone()) {
+                return;
+            }
+
+            boolean downloaded = false;
+            try {
+                downloaded = downloadLibrary(library, candidates.get(index), getFile(index), createDigest(), cancellations[index]);
+            } catch (RuntimeException e) {
+                logger.debug("Unexpected exception", e);
+            }
+            if (downloaded && winner.complete(index)) {
+                return;
+            }
+
+            if (failed.incrementAndGet() == candidates.size()) {
+                winner.complete(null);
+            } else {
+                // Don't wait for the hedge delay, start the next candidate right away
+                startNext();
+            }
+        }
+
+        /**
+         * Aborts the attempts still running and deletes their partial downloads.
+         *
+         * @param index the index of the winning attempt or null
+         */
+        private void finish(@Nullable Integer index) {
+            // Attempts not started yet won't start anymore
+            winner.complete(null);
+            for (int i = 0; i < candidates.size(); i++) {
+                if (index != null && i == index) {
+                    continue;
+                }
+
+                Attempt attempt = attempts.get(i);
+                if (attempt != null && !attempt.skip() && cancellations[i].cancel()) {
+                    // Wait for the aborted transfer to stop writing the file, attempts still waiting for
+                    // a response don't write anything once cancelled and aren't waited for
+                    attempt.done.join();
+                }
+                deletePartialDownload(getFile(i));
+            }
+        }
+
+        /**
+         * An attempt of the race, run by the executor or by the thread waiting for the race.
+         */
+        private final class Attempt {
+            private final int index;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+            private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+            private Attempt(int index) {
+                this.index = index;
+            }
+
+            private void run() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    download(index);
+                } finally {
+                    done.complete(null);
+                }
+            }
+
+            /**
+             * Prevents the attempt from running if it hasn't been started yet.
+             *
+             * @return true if the attempt won't run
+             */
+            private boolean skip() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return false;
+                }
+                done.complete(null);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * An artifact downloaded while loading deferred libraries, which is throttled
+     * only as long as no other load is waiting for it.
+     */
+    private static final class DeferredDownload {
+        private final Path file;
+        private final String key;
+
+        private DeferredDownload(@NotNull Path file, @NotNull String key) {
+            this.file = file;
+            this.key = key;
+        }
+
+        /**
+         * Checks whether a foreground load of this JVM is waiting for the artifact,
+         * or another library manager is waiting for the download to finish.
+         *
+         * @return true if the artifact is awaited
+         */
+        private boolean isAwaited() {
+            return AWAITED_ARTIFACTS.containsKey(file) || InFlightDownloads.isAwaited(key);
+        }
+    }
+
+    /**
+     * The cancellation of a download from another thread.
+     * <p>
+     * Cancelling a download {@link Transport.Response#abort() aborts} the response
+     * being read, since blocking reads can't be interrupted.
+     */
+    private static final class Cancellation {
+        private volatile boolean cancelled;
+        private Transport.Response response;
+
+        /**
+         * Registers the response being read, so that it's aborted if the download is cancelled.
+         *
+         * @param response the response
+         * @return false if the download has already been cancelled
+         */
+        private synchronized boolean attach(@NotNull Transport.Response response) {
+            if (cancelled) {
+                return false;
+            }
+            this.response = response;
+            return true;
+        }
+
+        /**
+         * Unregisters a response which has been read.
+         *
+         * @param response the response
+         */
+        private synchronized void detach(@NotNull Transport.Response response) {
+            if (this.response == response) {
+                this.response = null;
+            }
+        }
+
+        /**
+         * Cancels the download.
+         *
+         * @return true if a response was being read and has been aborted
+         */
+        private boolean cancel() {
+            Transport.Response response;
+            synchronized (this) {
+                if (cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                response = this.response;
+            }
+            if (response != null) {
+                response.abort();
+            }
+            return response != null;
+        }
+
+        private boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Creates a new SHA-256 message digest.
+     *
+     * @return the message digest
+     */
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Verifies the integrity of a cached jar.
+     * <p>
+     * The size and the last modified time of the jar are compared with the ones stored
+     * in its {@link ArtifactMetadata} when its checksum was last verified, so that the
+     * jar is hashed again only if it changed. Jars without a known checksum are checked
+     * to be readable zip files and their checksum is recorded.
+     *
+     * @param file     the cached jar
+     * @param checksum the expected SHA-256 checksum or null to use the recorded one
+     * @return true if the jar is intact, false if it is corrupted and must be replaced
+     */
+    private boolean verifyCachedFile(@NotNull Path file, byte @Nullable [] checksum) {
+        ArtifactMetadata metadata = ArtifactMetadata.read(file);
+        String expected = checksum != null ? Base64.getEncoder().encodeToString(checksum) : metadata != null ? metadata.getSha256() : null;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long size = attributes.size();
+            long time = attributes.lastModifiedTime().toMillis();
+            if (metadata != null && expected != null && expected.equals(metadata.getSha256())
+                    && size == metadata.getFileSize() && time == metadata.getFileTime()) {
+                return true;
+            }
+
+            // The jar changed since the last verification or it was never verified
+            MessageDigest md = createDigest();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), md)) {
+                byte[] buf = new byte[downloadBufferSize];
+                while (in.read(buf) != -1) {
+                    // Only digest the bytes
+                }
+            }
+            String actual = Base64.getEncoder().encodeToString(md.digest());
+            if (expected != null ? !expected.equals(actual) : !isReadableJar(file)) {
+                logger.warn("Cached jar " + file + " is corrupted");
+                return false;
+            }
+
+            if (metadata == null) {
+                metadata = new ArtifactMetadata();
+            }
+            metadata.setSha256(actual);
+            metadata.setFileSize(size);
+            metadata.setFileTime(time);
+            metadata.write(file);
+            return true;
+        } catch (IOException e) {
+            logger.debug("Couldn't verify cached jar " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the provided file is a readable zip file, which detects most truncated jars.
+     *
+     * @param file the jar
+     * @return true if the jar is readable, false otherwise
+     */
+    private static boolean isReadableJar(@NotNull Path file) {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            // Opening the zip reads its central directory
+            return zip.size() >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a corrupted cached jar together with its {@link ArtifactMetadata}.
+     *
+     * @param file the corrupted jar
+     */
+    private void deleteCachedFile(@NotNull Path file) {
+        try {
+            Files.deleteIfExists(file);
+            ArtifactMetadata.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Processes the input jar and generates an output jar with the provided
+     * relocation rules applied, then returns the path to the relocated jar.
+     * <p>
+     * The checksum of the input jar is recorded in the {@link ArtifactMetadata} of the
+     * output jar, which is reused only as long as the input jar doesn't change. The output
+     * path should identify the relocation rules, like {@link Library#getRelocatedPath()} does.
+     * Relocated jars of a previous version of the input jar are deleted.
+     *
+     * @param in          input jar
+     * @param out         output jar
+     * @param relocations relocations to apply
+     * @return the relocated file
+     * @see RelocationHelper#relocate(Path, Path, Collection)
+     */
+    @NotNull
+    public Path relocate(@NotNull Path in, @NotNull String out, @NotNull Collection<Relocation> relocations) {
+        requireNonNull(in, "in");
+        requireNonNull(out, "out");
+        requireNonNull(relocations, "relocations");
+
+        Path file = saveDirectory.resolve(out);
+        String source = getVerifiedChecksum(in);
+        if (isRelocatedFrom(file, source)) {
+            return file;
+        }
+
+        synchronized (this) {
+            if (relocator == null) {
+                relocator = new RelocationHelper();
+            }
+        }
+
+        try {
+            ArtifactLock lock = ArtifactLock.acquire(file, LOCK_TIMEOUT);
+            try {
+                // The jar may have been relocated by another process while waiting for the lock
+                if (isRelocatedFrom(file, source)) {
+                    return file;
+                }
+                if (Files.exists(file)) {
+                    deleteCachedFile(file);
+                }
+
+                Path tmpOut = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                try {
+                    relocator.relocate(in, tmpOut, relocations);
+                    Util.moveAtomically(tmpOut, file);
+
+                    logger.info("Relocations applied to " + in.getFileName());
+
+                    // Record the checksum of the relocated jar and of the jar it was relocated from
+                    verifyCachedFile(file, null);
+                    ArtifactMetadata metadata = ArtifactMetadata.read(file);
+                    if (metadata != null && source != null) {
+                        metadata.setSourceSha256(source);
+                        metadata.write(file);
+                        deleteStaleRelocations(in, source);
+                    }
+
+                    return file;
+                } finally {
+                    Files.deleteIfExists(tmpOut);
+                }
+            } finally {
+                lock.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the recorded checksum of a cached jar, verifying it first.
+     *
+     * @param file the cached jar
+     * @return the Base64-encoded SHA-256 checksum or null if the jar couldn't be verified
+     */
+    @Nullable
+    private String getVerifiedChecksum(@NotNull Path file) {
+        if (!Files.exists(file) || !verifyCachedFile(file, null)) {
+            return null;
+        }
+        ArtifactMetadata metadata = ArtifactMetadata.read(file);
+        return metadata != null ? metadata.getSha256() : null;
+    }
+
+    /**
+     * Checks whether a relocated jar is intact and was relocated from the jar with the provided checksum.
+     *
+     * @param file   the relocated jar
+     * @param source the checksum of the input jar or null if unknown
+     * @return true if the relocated jar can be reused
+     */
+    private boolean isRelocatedFrom(@NotNull Path file, @Nullable String source) {
+        if (source == null || !Files.exists(file)) {
+            return false;
+        }
+        ArtifactMetadata metadata = ArtifactMetadata.read(file);
+        return metadata != null && source.equals(metadata.getSourceSha256()) && verifyCachedFile(file, null);
+    }
+
+    /**
+     * Deletes the jars relocated from a previous version of the provided jar. Jars relocated
+     * from the current version with other relocations are kept, since they may be in use.
+     *
+     * @param in     the input jar
+     * @param source the checksum of the current version of the input jar
+     */
+    private void deleteStaleRelocations(@NotNull Path in, @NotNull String source) {
+        String prefix = in.getFileName() + "-relocated-";
+        try (DirectoryStream<Path> relocated = Files.newDirectoryStream(in.toAbsolutePath().getParent(), prefix + "*.jar")) {
+            for (Path file : relocated) {
+                ArtifactMetadata metadata = ArtifactMetadata.read(file);
+                if (metadata != null && metadata.getSourceSha256() != null && !source.equals(metadata.getSourceSha256())) {
+                    Files.deleteIfExists(file);
+                    ArtifactMetadata.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            // Stale jars are only wasted space
+            logger.debug("Couldn't delete the stale relocated jars of " + in, e);
+        }
+    }
+
+    /**
+     * Resolves and loads transitive libraries for a given library. This method ensures that
+     * all libraries on which the provided library depends are properly loaded.
+     *
+     * @param library the primary library for which transitive libraries need to be resolved and loaded.
+     * @throws NullPointerException if the provided library is null.
      * @see #loadLibrary(Library)
-     * @see #relocate(Path, String, Collection)
+     */
+    protected void resolveTransitiveLibraries(@NotNull Library library) {
+        requireNonNull(library, "library");
+
+        for (Library transitiveLibrary : findTransitiveLibraries(library)) {
+            loadLibrary(transitiveLibrary);
+        }
+    }
+
+    /**
+     * Finds the transitive libraries of the provided library, initializing the
+     * transitive dependency helper if needed.
+     *
+     * @param library the library to find the transitive libraries of
+     * @return the transitive libraries
+     */
+    @NotNull
+    private Collection<Library> findTransitiveLibraries(@NotNull Library library) {
+        synchronized (this) {
+            if (transitiveDependencyHelper == null) {
+                transitiveDependencyHelper = new TransitiveDependencyHelper(this, saveDirectory);
+            }
+        }
+
+        // The resolver session isn't guaranteed to be thread-safe
+        synchronized (transitiveDependencyHelper) {
+            return transitiveDependencyHelper.findTransitiveLibraries(library);
+        }
+    }
+
+    /**
+     * Loads a library jar into the classloader classpath. If the library jar
+     * doesn't exist locally, it will be downloaded.
+     * <p>
+     * If the provided library has any relocations, they will be applied to
+     * create a relocated jar and the relocated jar will be loaded instead.
+     * <p>
+     * {@link Library#isLazyLoad() Lazy} isolated libraries are only registered in their
+     * isolated class loader, and are downloaded and loaded when one of their packages is
+     * first accessed.
+     *
+     * @param library the library to load
+     * @see #downloadLibrary(Library)
+     */
+    public void loadLibrary(@NotNull Library library) {
+        if (requireNonNull(library, "library").isLazyLoad() && library.isIsolatedLoad()) {
+            logger.info("Library " + library + " will be loaded on first access");
+            getIsolatedClassLoader(library).addLazyPath(library.getLazyPackages(), () -> {
+                logger.info("Loading library " + library);
+                return prepareLibrary(library);
+            });
+            return;
+        }
+
+        logger.info("Loading library " + library);
+        boolean foreground = !loadingDeferred.get();
+        if (foreground) {
+            foregroundLoads.incrementAndGet();
+        }
+        try {
+            loadLibraryFile(library, prepareLibrary(library));
+        } finally {
+            if (foreground) {
+                foregroundLoads.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Downloads and relocates a library and loads its transitive dependencies, recording
+     * them in the lockfile. The library itself isn't added to the classpath.
+     *
+     * @param library the library to prepare
+     * @return the downloaded file of the library
      */
     @NotNull
-    public Path downloadLibrary(@NotNull Library library) {
-        Path file = saveDirectory.resolve(requireNonNull(library, "library").getPath());
-        if (Files.exists(file)) {
-            // Early return only if library isn't a snapshot, since snapshot libraries are always re-downloaded
-            if (!library.isSnapshot()) {
-                // Relocate the file
-                if (library.hasRelocations()) {
-                    file = relocate(file, library.getRelocatedPath(), library.getRelocations());
+    private Path prepareLibrary(@NotNull Library library) {
+        Lockfile lock = lockfile;
+        if (lock != null) {
+            List<PreparedLibrary> locked = findLockedLibrary(lock, library);
+            if (locked != null) {
+                // The library itself comes after its dependencies
+                for (PreparedLibrary preparedLibrary : locked.subList(0, locked.size() - 1)) {
+                    loadLibraryFile(preparedLibrary.library, preparedLibrary.file);
                 }
-
-                return file;
+                return locked.get(locked.size() - 1).file;
             }
+        }
 
-            // Delete the file since the Files.move call down below will fail if it exists
-            try {
-                Files.delete(file);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+        Path file = downloadLibrary(library);
+        Collection<Library> transitiveLibraries = Collections.emptyList();
+        if (library.resolveTransitiveDependencies()) {
+            if (lock == null) {
+                resolveTransitiveLibraries(library);
+            } else {
+                // The transitive libraries are needed to lock the library
+                transitiveLibraries = findTransitiveLibraries(library);
+                for (Library transitiveLibrary : transitiveLibraries) {
+                    loadLibrary(transitiveLibrary);
+                }
             }
         }
 
-        Collection<String> urls = resolveLibrary(library);
-        if (urls.isEmpty()) {
-            throw new RuntimeException("Library '" + library + "' couldn't be resolved, add a repository");
+        if (lock != null) {
+            lockLibrary(lock, library, file, transitiveLibraries);
+            saveLockfile(lock);
         }
+        return file;
+    }
 
-        MessageDigest md = null;
-        if (library.hasChecksum()) {
-            try {
-                md = MessageDigest.getInstance("SHA-256");
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
-            }
+    /**
+     * Asynchronously loads a library jar into the classloader classpath, using
+     * the {@link #getAsyncExecutor() async executor}.
+     * <p>
+     * Libraries loaded by concurrent calls are added to the classpath in completion order,
+     * use {@link #loadLibrariesAsync(Library...)} when the order matters.
+     *
+     * @param library the library to load
+     * @return a future completed once the library has been loaded
+     * @see #loadLibrary(Library)
+     */
+    @NotNull
+    public CompletableFuture<Void> loadLibraryAsync(@NotNull Library library) {
+        return loadLibraryAsync(library, getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronously loads a library jar into the classloader classpath.
+     * <p>
+     * Libraries loaded by concurrent calls are added to the classpath in completion order,
+     * use {@link #loadLibrariesAsync(Executor, Library...)} when the order matters.
+     *
+     * @param library  the library to load
+     * @param executor the executor to load the library on
+     * @return a future completed once the library has been loaded
+     * @see #loadLibrary(Library)
+     */
+    @NotNull
+    public CompletableFuture<Void> loadLibraryAsync(@NotNull Library library, @NotNull Executor executor) {
+        requireNonNull(library, "library");
+        return CompletableFuture.runAsync(() -> loadLibrary(library), requireNonNull(executor, "executor"));
+    }
+
+    /**
+     * Finds the locked jars of a library and its transitive dependencies.
+     *
+     * @param lock    the lockfile
+     * @param library the library
+     * @return the locked libraries, in the order they must be added to the classpath,
+     * or null if the library isn't locked or a locked jar is missing or doesn't match its pinned checksum
+     */
+    @Nullable
+    private List<PreparedLibrary> findLockedLibrary(@NotNull Lockfile lock, @NotNull Library library) {
+        String fingerprint = Lockfile.fingerprint(library, getRepositories(), repositoryResolutionMode);
+        List<Lockfile.Entry> entries = lock.resolve(fingerprint);
+        if (entries == null) {
+            return null;
         }
 
-        Path out = file.resolveSibling(file.getFileName() + ".tmp");
-        out.toFile().deleteOnExit();
+        List<PreparedLibrary> locked = new ArrayList<>(entries.size());
+        for (Lockfile.Entry entry : entries) {
+            Path file = saveDirectory.resolve(entry.getPath());
+            if (!Files.isRegularFile(file) || !verifyCachedFile(file, null)) {
+                logger.debug("Locked jar " + file + " is missing or corrupted, resolving " + library + " again");
+                return null;
+            }
 
-        try {
-            Files.createDirectories(file.getParent());
+            // Relocated jars are pinned by the checksum of the jar they were relocated from
+            ArtifactMetadata metadata = ArtifactMetadata.read(file);
+            String actual = metadata == null ? null : metadata.getSourceSha256() != null ? metadata.getSourceSha256() : metadata.getSha256();
+            if (entry.getSha256() != null && !entry.getSha256().equals(actual)) {
+                logger.warn("Locked jar " + file + " doesn't match the lockfile checksum, resolving " + library + " again");
+                deleteCachedFile(file);
+                return null;
+            }
+            locked.add(new PreparedLibrary(entry.getFingerprint().equals(fingerprint) ? library : entry.toLibrary(), file));
+        }
 
-            for (String url : urls) {
-                byte[] bytes = downloadLibrary(url);
-                if (bytes == null) {
-                    continue;
-                }
+        logger.debug("Using locked jars for " + library);
+        return locked;
+    }
 
-                if (md != null) {
-                    byte[] checksum = md.digest(bytes);
-                    if (!Arrays.equals(checksum, library.getChecksum())) {
-                        logger.warn("*** INVALID CHECKSUM ***");
-                        logger.warn(" Library :  " + library);
-                        logger.warn(" URL :  " + url);
-                        logger.warn(" Expected :  " + Base64.getEncoder().encodeToString(library.getChecksum()));
-                        logger.warn(" Actual :  " + Base64.getEncoder().encodeToString(checksum));
-                        continue;
-                    }
-                }
+    /**
+     * Records a loaded library in the lockfile.
+     *
+     * @param lock                the lockfile
+     * @param library             the loaded library
+     * @param file                the loaded jar
+     * @param transitiveLibraries the transitive libraries of the library
+     */
+    private void lockLibrary(@NotNull Lockfile lock, @NotNull Library library, @NotNull Path file, @NotNull Collection<Library> transitiveLibraries) {
+        Collection<String> repositories = getRepositories();
+        List<String> dependencies = new ArrayList<>(transitiveLibraries.size());
+        for (Library transitiveLibrary : transitiveLibraries) {
+            dependencies.add(Lockfile.fingerprint(transitiveLibrary, repositories, repositoryResolutionMode));
+        }
 
-                Files.write(out, bytes);
-                Files.move(out, file);
+        ArtifactMetadata metadata = ArtifactMetadata.read(saveDirectory.resolve(library.getPath()));
+        String sha256 = metadata != null ? metadata.getSha256() : null;
+        if (sha256 == null && library.hasChecksum()) {
+            sha256 = Base64.getEncoder().encodeToString(library.getChecksum());
+        }
 
-                // Relocate the file
-                if (library.hasRelocations()) {
-                    file = relocate(file, library.getRelocatedPath(), library.getRelocations());
-                }
+        lock.lock(new Lockfile.Entry(
+                Lockfile.fingerprint(library, repositories, repositoryResolutionMode),
+                library.toString(),
+                saveDirectory.relativize(file).toString().replace(File.separatorChar, '/'),
+                metadata != null ? metadata.getUrl() : null,
+                sha256,
+                library.isIsolatedLoad(),
+                library.getLoaderId(),
+                dependencies
+        ));
+    }
 
-                return file;
-            }
+    /**
+     * Saves the lockfile, logging any error.
+     *
+     * @param lock the lockfile
+     */
+    private void saveLockfile(@NotNull Lockfile lock) {
+        try {
+            lock.save();
         } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        } finally {
-            try {
-                Files.deleteIfExists(out);
-            } catch (IOException ignored) {
-            }
+            logger.warn("Couldn't save the lockfile " + lock.getFile(), e);
         }
-
-        throw new RuntimeException("Failed to download library '" + library + "'");
     }
 
     /**
-     * Processes the input jar and generates an output jar with the provided
-     * relocation rules applied, then returns the path to the relocated jar.
+     * Adds the downloaded file of a library to the classloader classpath or to
+     * its isolated class loader.
      *
-     * @param in          input jar
-     * @param out         output jar
-     * @param relocations relocations to apply
-     * @return the relocated file
-     * @see RelocationHelper#relocate(Path, Path, Collection)
+     * @param library the library
+     * @param file    the downloaded file of the library
      */
-    @NotNull
-    public Path relocate(@NotNull Path in, @NotNull String out, @NotNull Collection<Relocation> relocations) {
-        requireNonNull(in, "in");
-        requireNonNull(out, "out");
-        requireNonNull(relocations, "relocations");
+    private void loadLibraryFile(@NotNull Library library, @NotNull Path file) {
+        if (library.isIsolatedLoad()) {
+            addToIsolatedClasspath(library, file);
+        } else {
+            addToClasspath(file);
+        }
+    }
 
-        Path file = saveDirectory.resolve(out);
-        if (Files.exists(file)) {
-            return file;
+    /**
+     * Loads multiple libraries into the classloader classpath.
+     * <p>
+     * Libraries are added to the classpath in the provided order. If the {@link #getLoadingParallelism()
+     * loading parallelism} is greater than 1, libraries are downloaded and relocated concurrently,
+     * starting with the ones with the highest {@link Library#getPriority() priority}.
+     * <p>
+     * {@link Library#isDeferred() Deferred} libraries are not loaded by this method, they
+     * are scheduled to be loaded in the background once the other libraries have been loaded.
+     * Their downloads are throttled to the {@link DownloadPolicy#getDeferredBandwidth() deferred bandwidth}
+     * while other libraries are being loaded, unless another load is waiting for the same artifact.
+     *
+     * @param libraries the libraries to load
+     * @see #loadLibrary(Library)
+     * @see #setLoadingParallelism(int)
+     * @see #getDeferredLoading()
+     */
+    public void loadLibraries(@NotNull Library... libraries) {
+        requireNonNull(libraries, "libraries");
+        List<Library> immediate = new ArrayList<>(libraries.length);
+        List<Library> deferred = new ArrayList<>();
+        for (Library library : libraries) {
+            (requireNonNull(library, "library").isDeferred() ? deferred : immediate).add(library);
         }
 
-        Path tmpOut = file.resolveSibling(file.getFileName() + ".tmp");
-        tmpOut.toFile().deleteOnExit();
+        loadImmediateLibraries(immediate.toArray(new Library[0]));
+        scheduleDeferredLibraries(deferred);
+    }
 
-        synchronized (this) {
-            if (relocator == null) {
-                relocator = new RelocationHelper(this);
+    /**
+     * Loads the non-deferred libraries, in the provided order.
+     *
+     * @param libraries the libraries to load
+     */
+    private void loadImmediateLibraries(@NotNull Library... libraries) {
+        if (loadingParallelism <= 1 || libraries.length <= 1) {
+            for (Library library : libraries) {
+                loadLibrary(library);
             }
+            return;
         }
 
-        try {
-            relocator.relocate(in, tmpOut, relocations);
-            Files.move(tmpOut, file);
-
-            logger.info("Relocations applied to " + in.getFileName());
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(loadingParallelism, libraries.length), runnable -> {
+            Thread thread = new Thread(runnable, "libby-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
-            return file;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+        try {
+            prefetchLibraries(executor, libraries).commit();
         } finally {
-            try {
-                Files.deleteIfExists(tmpOut);
-            } catch (IOException ignored) {
-            }
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Resolves and loads transitive libraries for a given library. This method ensures that
-     * all libraries on which the provided library depends are properly loaded.
+     * Schedules the deferred libraries to be loaded in the background, one at a time and
+     * after the previously scheduled ones, so that they don't compete for bandwidth.
      *
-     * @param library the primary library for which transitive libraries need to be resolved and loaded.
-     * @throws NullPointerException if the provided library is null.
-     * @see #loadLibrary(Library)
+     * @param libraries the deferred libraries
      */
-    protected void resolveTransitiveLibraries(@NotNull Library library) {
-        requireNonNull(library, "library");
+    private void scheduleDeferredLibraries(@NotNull List<Library> libraries) {
+        if (libraries.isEmpty()) {
+            return;
+        }
 
         synchronized (this) {
-            if (transitiveDependencyHelper == null) {
-                transitiveDependencyHelper = new TransitiveDependencyHelper(this, saveDirectory);
+            Executor executor = getAsyncExecutor();
+            for (Library library : libraries) {
+                logger.debug("Deferring the loading of library " + library);
+                deferredLoading = deferredLoading.thenRunAsync(() -> {
+                    loadingDeferred.set(true);
+                    try {
+                        loadLibrary(library);
+                    } catch (RuntimeException e) {
+                        logger.warn("Couldn't load deferred library " + library, e);
+                    } finally {
+                        loadingDeferred.remove();
+                    }
+                }, executor);
             }
         }
+    }
 
-        for (Library transitiveLibrary : transitiveDependencyHelper.findTransitiveLibraries(library)) {
-            loadLibrary(transitiveLibrary);
+    /**
+     * Gets the loading of the deferred libraries scheduled so far.
+     * <p>
+     * Deferred libraries which fail to load are logged and skipped.
+     *
+     * @return a future completed once all the deferred libraries scheduled so far have been loaded
+     * @see Library#isDeferred()
+     */
+    @NotNull
+    public CompletableFuture<Void> getDeferredLoading() {
+        synchronized (this) {
+            return deferredLoading;
         }
     }
 
     /**
-     * Loads a library jar into the classloader classpath. If the library jar
-     * doesn't exist locally, it will be downloaded.
+     * Starts downloading, verifying and relocating multiple libraries and their transitive
+     * dependencies in the background, using the {@link #getAsyncExecutor() async executor}.
      * <p>
-     * If the provided library has any relocations, they will be applied to
-     * create a relocated jar and the relocated jar will be loaded instead.
+     * The libraries aren't added to the classpath until {@link Prefetch#commit()} is called.
      *
-     * @param library the library to load
-     * @see #downloadLibrary(Library)
+     * @param libraries the libraries to prefetch
+     * @return the prefetch handle
+     * @see #prefetchLibraries(Executor, Library...)
      */
-    public void loadLibrary(@NotNull Library library) {
-        logger.info("Loading library " + library);
-        Path file = downloadLibrary(requireNonNull(library, "library"));
-        if (library.resolveTransitiveDependencies()) {
-            resolveTransitiveLibraries(library);
+    @NotNull
+    public Prefetch prefetchLibraries(@NotNull Library... libraries) {
+        return prefetchLibraries(getAsyncExecutor(), libraries);
+    }
+
+    /**
+     * Starts downloading, verifying and relocating multiple libraries and their transitive
+     * dependencies in the background.
+     * <p>
+     * The libraries aren't added to the classpath until {@link Prefetch#commit()} is called,
+     * which allows to overlap downloads with the initialization of the application and to
+     * inject all the libraries later in a single fast step. Libraries are prefetched by descending
+     * {@link Library#getPriority() priority} and committed in the provided order.
+     *
+     * @param executor  the executor to download and relocate the libraries on
+     * @param libraries the libraries to prefetch
+     * @return the prefetch handle
+     */
+    @NotNull
+    public Prefetch prefetchLibraries(@NotNull Executor executor, @NotNull Library... libraries) {
+        requireNonNull(executor, "executor");
+        requireNonNull(libraries, "libraries");
+
+        List<Library> lazyLibraries = new ArrayList<>();
+        List<Library> prefetched = new ArrayList<>(libraries.length);
+        for (Library library : libraries) {
+            if (requireNonNull(library, "library").isLazyLoad() && library.isIsolatedLoad()) {
+                // Nothing to prefetch, lazy libraries are registered on commit
+                lazyLibraries.add(library);
+            } else {
+                prefetched.add(library);
+            }
         }
 
-        if (library.isIsolatedLoad()) {
-            addToIsolatedClasspath(library, file);
-        } else {
-            addToClasspath(file);
+        // Start the downloads with the highest priority first
+        List<Library> sorted = new ArrayList<>(prefetched);
+        sorted.sort(BY_PRIORITY);
+
+        foregroundLoads.incrementAndGet();
+        LoadingPipeline pipeline = new LoadingPipeline(executor);
+        Map<Library, CompletableFuture<List<PreparedLibrary>>> prepared = new IdentityHashMap<>();
+        for (Library library : sorted) {
+            logger.info("Loading library " + library);
+            prepared.computeIfAbsent(library, pipeline::prepare);
         }
+
+        // Keep the declared order, so that classpath semantics are deterministic
+        CompletableFuture<List<PreparedLibrary>> all = CompletableFuture.allOf(prepared.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<PreparedLibrary> preparedLibraries = new ArrayList<>();
+            for (Library library : prefetched) {
+                preparedLibraries.addAll(prepared.get(library).join());
+            }
+            return preparedLibraries;
+        });
+        all.whenComplete((preparedLibraries, throwable) -> foregroundLoads.decrementAndGet());
+        return new Prefetch(all, lazyLibraries);
     }
 
     /**
-     * Loads multiple libraries into the classloader classpath.
+     * Asynchronously loads multiple libraries into the classloader classpath in the
+     * provided order, using the {@link #getAsyncExecutor() async executor}.
      *
      * @param libraries the libraries to load
-     * @see #loadLibrary(Library)
+     * @return a future completed once all the libraries have been loaded
+     * @see #loadLibraries(Library...)
      */
-    public void loadLibraries(@NotNull Library... libraries) {
-        for (Library library : libraries) {
-            loadLibrary(library);
+    @NotNull
+    public CompletableFuture<Void> loadLibrariesAsync(@NotNull Library... libraries) {
+        return loadLibrariesAsync(getAsyncExecutor(), libraries);
+    }
+
+    /**
+     * Asynchronously loads multiple libraries into the classloader classpath in the provided order.
+     *
+     * @param executor  the executor to load the libraries on
+     * @param libraries the libraries to load
+     * @return a future completed once all the libraries have been loaded
+     * @see #loadLibraries(Library...)
+     */
+    @NotNull
+    public CompletableFuture<Void> loadLibrariesAsync(@NotNull Executor executor, @NotNull Library... libraries) {
+        Library[] copy = requireNonNull(libraries, "libraries").clone();
+        return CompletableFuture.runAsync(() -> loadLibraries(copy), requireNonNull(executor, "executor"));
+    }
+
+    /**
+     * Waits for the provided future to complete, rethrowing its failure cause.
+     *
+     * @param future the future to wait for
+     * @param <T>    the result type
+     * @return the result of the future
+     */
+    private static <T> T join(@NotNull CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A library which has been downloaded and relocated, ready to be added to the classpath.
+     */
+    private static final class PreparedLibrary {
+        private final Library library;
+        private final Path file;
+
+        private PreparedLibrary(@NotNull Library library, @NotNull Path file) {
+            this.library = library;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Libraries being prefetched in the background, which can be added to the classpath
+     * once ready with {@link #commit()}.
+     *
+     * @see #prefetchLibraries(Executor, Library...)
+     */
+    public final class Prefetch {
+        private final CompletableFuture<List<PreparedLibrary>> prepared;
+        private final List<Library> lazyLibraries;
+        private final AtomicBoolean committed = new AtomicBoolean();
+
+        private Prefetch(@NotNull CompletableFuture<List<PreparedLibrary>> prepared, @NotNull List<Library> lazyLibraries) {
+            this.prepared = prepared;
+            this.lazyLibraries = lazyLibraries;
+        }
+
+        /**
+         * Gets whether the prefetch has completed, either successfully or not.
+         *
+         * @return true if the prefetch has completed
+         */
+        public boolean isDone() {
+            return prepared.isDone();
+        }
+
+        /**
+         * Gets the prefetched files, in the order they will be added to the classpath.
+         *
+         * @return a future completed with the prefetched files, or exceptionally if the prefetch failed
+         */
+        @NotNull
+        public CompletableFuture<List<Path>> getFiles() {
+            return prepared.thenApply(preparedLibraries -> {
+                List<Path> files = new ArrayList<>(preparedLibraries.size());
+                for (PreparedLibrary preparedLibrary : preparedLibraries) {
+                    files.add(preparedLibrary.file);
+                }
+                return Collections.unmodifiableList(files);
+            });
+        }
+
+        /**
+         * Waits for the prefetch to complete and adds the prefetched libraries to the
+         * classloader classpath or to their isolated class loaders.
+         *
+         * @throws IllegalStateException if the libraries have already been committed
+         * @throws RuntimeException      if the prefetch failed
+         */
+        public void commit() {
+            if (!committed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Prefetched libraries have already been committed");
+            }
+
+            for (PreparedLibrary preparedLibrary : join(prepared)) {
+                loadLibraryFile(preparedLibrary.library, preparedLibrary.file);
+            }
+            for (Library library : lazyLibraries) {
+                loadLibrary(library);
+            }
+
+            Lockfile lock = lockfile;
+            if (lock != null) {
+                saveLockfile(lock);
+            }
+        }
+    }
+
+    /**
+     * Downloads, relocates and resolves the transitive dependencies of libraries concurrently.
+     */
+    private final class LoadingPipeline {
+        private final Executor executor;
+
+        /**
+         * Downloads keyed by the produced file, used to download only once libraries requested multiple times
+         */
+        private final Map<String, CompletableFuture<Path>> downloads = new HashMap<>();
+
+        /**
+         * Last download of every artifact, used to avoid concurrently writing the same artifact
+         */
+        private final Map<String, CompletableFuture<Path>> artifacts = new HashMap<>();
+
+        private LoadingPipeline(@NotNull Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Prepares a library and its transitive dependencies.
+         *
+         * @param library the library to prepare
+         * @return the prepared libraries, in the order they must be added to the classpath
+         */
+        private CompletableFuture<List<PreparedLibrary>> prepare(@NotNull Library library) {
+            Lockfile lock = lockfile;
+            if (lock != null) {
+                List<PreparedLibrary> locked = findLockedLibrary(lock, library);
+                if (locked != null) {
+                    return CompletableFuture.completedFuture(locked);
+                }
+            }
+
+            CompletableFuture<Path> file = download(library);
+            if (!library.resolveTransitiveDependencies()) {
+                return file.thenApply(path -> {
+                    if (lock != null) {
+                        lockLibrary(lock, library, path, Collections.emptyList());
+                    }
+                    return Collections.singletonList(new PreparedLibrary(library, path));
+                });
+            }
+
+            CompletableFuture<Collection<Library>> found = CompletableFuture.supplyAsync(() -> findTransitiveLibraries(library), executor);
+            CompletableFuture<List<PreparedLibrary>> transitive = found
+                    .thenCompose(transitiveLibraries -> {
+                        List<CompletableFuture<List<PreparedLibrary>>> futures = new ArrayList<>(transitiveLibraries.size());
+                        for (Library transitiveLibrary : transitiveLibraries) {
+                            futures.add(prepare(transitiveLibrary));
+                        }
+
+                        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                            List<PreparedLibrary> preparedLibraries = new ArrayList<>();
+                            for (CompletableFuture<List<PreparedLibrary>> future : futures) {
+                                preparedLibraries.addAll(future.join());
+                            }
+                            return preparedLibraries;
+                        });
+                    });
+
+            // Transitive libraries are added to the classpath before the library itself, like loadLibrary does
+            return transitive.thenCombine(file, (preparedLibraries, path) -> {
+                if (lock != null) {
+                    lockLibrary(lock, library, path, found.join());
+                }
+
+                List<PreparedLibrary> result = new ArrayList<>(preparedLibraries);
+                result.add(new PreparedLibrary(library, path));
+                return result;
+            });
+        }
+
+        /**
+         * Downloads and relocates a library on the executor.
+         *
+         * @param library the library to download
+         * @return the future path of the library
+         */
+        private CompletableFuture<Path> download(@NotNull Library library) {
+            String output = library.hasRelocations() ? library.getRelocatedPath() : library.getPath();
+            synchronized (downloads) {
+                CompletableFuture<Path> download = downloads.get(output);
+                if (download != null) {
+                    return download;
+                }
+
+                CompletableFuture<Path> previous = artifacts.get(library.getPath());
+                if (previous == null) {
+                    download = CompletableFuture.supplyAsync(() -> downloadLibrary(library), executor);
+                } else {
+                    // Same artifact with different relocations, wait for the previous one to complete
+                    download = previous.handleAsync((path, throwable) -> downloadLibrary(library), executor);
+                }
+
+                downloads.put(output, download);
+                artifacts.put(library.getPath(), download);
+                return download;
+            }
         }
     }
 
@@ -783,10 +3452,52 @@ public abstract class LibraryManager {
             addRepository(repo);
         }
 
-        // Load libraries
-        for (Library library : config.getLibraries()) {
-            loadLibrary(library);
+        // Load download limits
+        if (config.getDownloadLimiter() != null) {
+            setDownloadLimiter(config.getDownloadLimiter());
         }
+
+        // Load libraries
+        loadLibraries(config.getLibraries().toArray(new Library[0]));
+    }
+
+    /**
+     * Asynchronously configures the current library manager from a libby.json file in the
+     * classloader classpath, using the {@link #getAsyncExecutor() async executor}.
+     *
+     * @return a future completed once the configured libraries have been loaded
+     * @see #configureFromJSON()
+     */
+    @NotNull
+    public CompletableFuture<Void> configureFromJSONAsync() {
+        return configureFromJSONAsync("libby.json");
+    }
+
+    /**
+     * Asynchronously configures the current library manager from a file in the classloader
+     * classpath, using the {@link #getAsyncExecutor() async executor}.
+     *
+     * @param fileName the name of the json file
+     * @return a future completed once the configured libraries have been loaded
+     * @see #configureFromJSON(String)
+     */
+    @NotNull
+    public CompletableFuture<Void> configureFromJSONAsync(@NotNull String fileName) {
+        return configureFromJSONAsync(fileName, getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronously configures the current library manager from a file in the classloader classpath.
+     *
+     * @param fileName the name of the json file
+     * @param executor the executor to load the configured libraries on
+     * @return a future completed once the configured libraries have been loaded
+     * @see #configureFromJSON(String)
+     */
+    @NotNull
+    public CompletableFuture<Void> configureFromJSONAsync(@NotNull String fileName, @NotNull Executor executor) {
+        requireNonNull(fileName, "fileName");
+        return CompletableFuture.runAsync(() -> configureFromJSON(fileName), requireNonNull(executor, "executor"));
     }
 
     /**
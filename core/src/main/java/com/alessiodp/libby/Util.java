@@ -3,6 +3,16 @@ package com.alessiodp.libby;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
 /**
  * Libby's utility class.
  */
@@ -71,4 +81,60 @@ public final class Util {
         }
         return path + ".jar";
     }
+
+    /**
+     * Loads a properties file.
+     *
+     * @param file The properties file
+     * @return The loaded properties or null if the file doesn't exist
+     * @throws IOException If the file couldn't be read
+     */
+    @Nullable
+    public static Properties loadProperties(@NotNull Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed properties file " + file, e);
+        }
+        return properties;
+    }
+
+    /**
+     * Stores a properties file atomically, so that readers never see a partially written file.
+     *
+     * @param properties The properties to store
+     * @param file The properties file, it is replaced if it already exists
+     * @throws IOException If the file couldn't be written
+     */
+    public static void storeProperties(@NotNull Properties properties, @NotNull Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            moveAtomically(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Moves a file replacing the target file atomically, so that readers see either the old
+     * or the new file. Falls back to a non-atomic move if the file system doesn't support it.
+     *
+     * @param source The file to move
+     * @param target The target file, it is replaced if it already exists
+     * @throws IOException If the file couldn't be moved
+     */
+    public static void moveAtomically(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
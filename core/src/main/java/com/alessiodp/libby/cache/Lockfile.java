@@ -0,0 +1,369 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.RepositoryResolutionMode;
+import com.alessiodp.libby.Util;
+import com.alessiodp.libby.relocation.Relocation;
+import com.alessiodp.libby.transitive.ExcludedDependency;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lockfile pinning the fully resolved artifacts of the loaded libraries, so that
+ * later starts can load them without resolving transitive dependencies, fetching
+ * metadata or contacting repositories.
+ * <p>
+ * Every library is identified by a fingerprint of its definition and of the
+ * configured repositories, so entries are automatically invalidated when a
+ * library or the repositories change.
+ */
+public class Lockfile {
+    /**
+     * The lockfile
+     */
+    private final Path file;
+
+    /**
+     * Locked entries, loaded lazily from the lockfile
+     */
+    private Properties entries;
+
+    /**
+     * Whether entries have changed since they were loaded or saved
+     */
+    private boolean dirty;
+
+    /**
+     * Creates a new lockfile.
+     *
+     * @param file the lockfile, it is created when the first library is locked
+     */
+    public Lockfile(@NotNull Path file) {
+        this.file = requireNonNull(file, "file");
+    }
+
+    /**
+     * Gets the lockfile path.
+     *
+     * @return the lockfile path
+     */
+    @NotNull
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the locked artifacts of the library with the provided fingerprint, including
+     * its transitive dependencies. Dependencies come before the library itself, in the
+     * order they must be added to the classpath.
+     *
+     * @param fingerprint the library fingerprint
+     * @return the locked artifacts or null if the library or any of its dependencies isn't locked
+     * @see #fingerprint(Library, Collection, RepositoryResolutionMode)
+     */
+    @Nullable
+    public synchronized List<Entry> resolve(@NotNull String fingerprint) {
+        List<Entry> resolved = new ArrayList<>();
+        return resolve(requireNonNull(fingerprint, "fingerprint"), resolved, new HashSet<>()) ? resolved : null;
+    }
+
+    private boolean resolve(@NotNull String fingerprint, @NotNull List<Entry> resolved, @NotNull Set<String> visited) {
+        if (!visited.add(fingerprint)) {
+            return true;
+        }
+
+        Entry entry = get(fingerprint);
+        if (entry == null) {
+            return false;
+        }
+
+        for (String dependency : entry.getDependencies()) {
+            if (!resolve(dependency, resolved, visited)) {
+                return false;
+            }
+        }
+        resolved.add(entry);
+        return true;
+    }
+
+    @Nullable
+    private Entry get(@NotNull String fingerprint) {
+        Properties properties = load();
+        String library = properties.getProperty(fingerprint + ".library");
+        String path = properties.getProperty(fingerprint + ".path");
+        if (library == null || path == null) {
+            return null;
+        }
+
+        String dependencies = properties.getProperty(fingerprint + ".dependencies", "");
+        return new Entry(
+                fingerprint,
+                library,
+                path,
+                properties.getProperty(fingerprint + ".url"),
+                properties.getProperty(fingerprint + ".sha256"),
+                Boolean.parseBoolean(properties.getProperty(fingerprint + ".isolatedLoad")),
+                properties.getProperty(fingerprint + ".loaderId"),
+                dependencies.isEmpty() ? Collections.emptyList() : Arrays.asList(dependencies.split(","))
+        );
+    }
+
+    /**
+     * Locks a library. The lockfile isn't saved until {@link #save()} is called.
+     *
+     * @param entry the locked artifact of the library
+     */
+    public synchronized void lock(@NotNull Entry entry) {
+        Properties properties = load();
+        String fingerprint = requireNonNull(entry, "entry").getFingerprint();
+        set(properties, fingerprint + ".library", entry.getLibrary());
+        set(properties, fingerprint + ".path", entry.getPath());
+        set(properties, fingerprint + ".url", entry.getUrl());
+        set(properties, fingerprint + ".sha256", entry.getSha256());
+        set(properties, fingerprint + ".isolatedLoad", entry.isIsolatedLoad() ? "true" : null);
+        set(properties, fingerprint + ".loaderId", entry.getLoaderId());
+        set(properties, fingerprint + ".dependencies", entry.getDependencies().isEmpty() ? null : String.join(",", entry.getDependencies()));
+    }
+
+    private void set(@NotNull Properties properties, @NotNull String key, @Nullable String value) {
+        Object previous = value != null ? properties.setProperty(key, value) : properties.remove(key);
+        if (value == null ? previous != null : !value.equals(previous)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Saves the lockfile if any library has been locked since the last save.
+     *
+     * @throws IOException if the lockfile couldn't be saved
+     */
+    public synchronized void save() throws IOException {
+        if (dirty) {
+            Util.storeProperties(load(), file);
+            dirty = false;
+        }
+    }
+
+    @NotNull
+    private Properties load() {
+        if (entries == null) {
+            try {
+                entries = Util.loadProperties(file);
+            } catch (IOException ignored) {
+                // A corrupted lockfile is simply rebuilt
+            }
+            if (entries == null) {
+                entries = new Properties();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Computes the fingerprint of a library, which changes whenever the library
+     * definition or the repositories it is resolved from change.
+     *
+     * @param library        the library
+     * @param repositories   the global repositories
+     * @param resolutionMode the repository resolution mode
+     * @return the fingerprint
+     */
+    @NotNull
+    public static String fingerprint(@NotNull Library library, @NotNull Collection<String> repositories, @NotNull RepositoryResolutionMode resolutionMode) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, requireNonNull(library, "library").toString());
+        append(builder, library.hasChecksum() ? Base64.getEncoder().encodeToString(library.getChecksum()) : null);
+        append(builder, String.join(" ", library.getUrls()));
+        append(builder, String.join(" ", library.getRepositories()));
+        append(builder, String.join(" ", library.getFallbackRepositories()));
+        append(builder, String.join(" ", requireNonNull(repositories, "repositories")));
+        append(builder, requireNonNull(resolutionMode, "resolutionMode").name());
+        for (Relocation relocation : library.getRelocations()) {
+            append(builder, relocation.getPattern() + '>' + relocation.getRelocatedPattern()
+                    + '+' + String.join(",", relocation.getIncludes()) + '-' + String.join(",", relocation.getExcludes()));
+        }
+        append(builder, Boolean.toString(library.isIsolatedLoad()));
+        append(builder, library.getLoaderId());
+        append(builder, Boolean.toString(library.resolveTransitiveDependencies()));
+        for (ExcludedDependency excluded : library.getExcludedTransitiveDependencies()) {
+            append(builder, excluded.getGroupId() + ':' + excluded.getArtifactId());
+        }
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void append(@NotNull StringBuilder builder, @Nullable String value) {
+        builder.append(value != null ? value : "").append('\n');
+    }
+
+    /**
+     * A locked artifact.
+     */
+    public static final class Entry {
+        @NotNull
+        private final String fingerprint;
+        @NotNull
+        private final String library;
+        @NotNull
+        private final String path;
+        @Nullable
+        private final String url;
+        @Nullable
+        private final String sha256;
+        private final boolean isolatedLoad;
+        @Nullable
+        private final String loaderId;
+        @NotNull
+        private final List<String> dependencies;
+
+        /**
+         * Creates a new locked artifact.
+         *
+         * @param fingerprint  the fingerprint of the library
+         * @param library      the library coordinates (groupId:artifactId:version[:classifier])
+         * @param path         the path of the loaded jar, relative to the save directory
+         * @param url          the URL the jar was downloaded from or null if unknown
+         * @param sha256       the Base64-encoded SHA-256 checksum of the downloaded jar or null if unknown
+         * @param isolatedLoad whether the jar is loaded in an isolated class loader
+         * @param loaderId     the id of the isolated class loader or null
+         * @param dependencies the fingerprints of the transitive dependencies
+         */
+        public Entry(@NotNull String fingerprint, @NotNull String library, @NotNull String path, @Nullable String url, @Nullable String sha256,
+                     boolean isolatedLoad, @Nullable String loaderId, @NotNull Collection<String> dependencies) {
+            this.fingerprint = requireNonNull(fingerprint, "fingerprint");
+            this.library = requireNonNull(library, "library");
+            this.path = requireNonNull(path, "path");
+            this.url = url;
+            this.sha256 = sha256;
+            this.isolatedLoad = isolatedLoad;
+            this.loaderId = loaderId;
+            this.dependencies = Collections.unmodifiableList(new ArrayList<>(requireNonNull(dependencies, "dependencies")));
+        }
+
+        /**
+         * Gets the fingerprint of the library.
+         *
+         * @return the fingerprint
+         */
+        @NotNull
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Gets the library coordinates (groupId:artifactId:version[:classifier]).
+         *
+         * @return the library coordinates
+         */
+        @NotNull
+        public String getLibrary() {
+            return library;
+        }
+
+        /**
+         * Gets the path of the loaded jar (relocated, if the library has relocations), relative to the save directory.
+         *
+         * @return the path
+         */
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the URL the jar was downloaded from.
+         *
+         * @return the URL or null if unknown
+         */
+        @Nullable
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Gets the Base64-encoded SHA-256 checksum of the downloaded jar.
+         *
+         * @return the checksum or null if unknown
+         */
+        @Nullable
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * Gets whether the jar is loaded in an isolated class loader.
+         *
+         * @return true if the jar is loaded in an isolated class loader
+         */
+        public boolean isIsolatedLoad() {
+            return isolatedLoad;
+        }
+
+        /**
+         * Gets the id of the isolated class loader.
+         *
+         * @return the loader id or null
+         */
+        @Nullable
+        public String getLoaderId() {
+            return loaderId;
+        }
+
+        /**
+         * Gets the fingerprints of the transitive dependencies of the library.
+         *
+         * @return the dependency fingerprints
+         */
+        @NotNull
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Creates a library with the coordinates and the loading options of this artifact.
+         *
+         * @return the library
+         */
+        @NotNull
+        public Library toLibrary() {
+            String[] coordinates = library.split(":");
+            if (coordinates.length < 3) {
+                throw new IllegalStateException("Invalid locked library " + library);
+            }
+            return Library.builder()
+                    .groupId(coordinates[0])
+                    .artifactId(coordinates[1])
+                    .version(coordinates[2])
+                    .classifier(coordinates.length > 3 ? coordinates[3] : null)
+                    .isolatedLoad(isolatedLoad)
+                    .loaderId(loaderId)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Util;
+import com.alessiodp.libby.download.ArtifactMetadata;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent cache of repository metadata files, like {@code maven-metadata.xml}, so that
+ * snapshots can be resolved without querying the repositories again until the
+ * {@link UpdatePolicy update policy} requires it.
+ * <p>
+ * Metadata files are saved mirroring their URL (host, port and path) and the last
+ * time they were checked for updates is their last modified time. The HTTP validators
+ * returned by the server are saved in their {@link ArtifactMetadata}, to check for
+ * updates with conditional requests.
+ */
+public class MetadataCache {
+    /**
+     * The directory where metadata files are saved
+     */
+    private final Path directory;
+
+    /**
+     * Creates a new metadata cache.
+     *
+     * @param directory the directory where metadata files are saved, it is created when the first file is stored
+     */
+    public MetadataCache(@NotNull Path directory) {
+        this.directory = requireNonNull(directory, "directory");
+    }
+
+    /**
+     * Gets the directory where metadata files are saved.
+     *
+     * @return the cache directory
+     */
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the cache file of the metadata at the provided URL.
+     *
+     * @param url the URL of the metadata
+     * @return the cache file or null if the URL can't be cached
+     */
+    @Nullable
+    public Path getFile(@NotNull String url) {
+        URI uri;
+        try {
+            uri = new URI(requireNonNull(url, "url")).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+
+        String host = uri.getHost();
+        String path = uri.getPath();
+        if (host == null || path == null || path.endsWith("/") || path.contains("..")) {
+            return null;
+        }
+
+        String origin = uri.getPort() != -1 ? host + '_' + uri.getPort() : host;
+        return directory.resolve(origin + path).normalize();
+    }
+
+    /**
+     * Reads the cached metadata at the provided URL.
+     *
+     * @param url the URL of the metadata
+     * @return the cached metadata or null if not cached
+     */
+    @Nullable
+    public byte[] read(@NotNull String url) {
+        Path file = getFile(url);
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the cached metadata at the provided URL can be used without checking for updates.
+     *
+     * @param url    the URL of the metadata
+     * @param policy the update policy of the metadata
+     * @return true if the metadata is cached and doesn't need to be checked for updates
+     */
+    public boolean isUpToDate(@NotNull String url, @NotNull UpdatePolicy policy) {
+        requireNonNull(policy, "policy");
+        Path file = getFile(url);
+        if (file == null) {
+            return false;
+        }
+
+        try {
+            return !policy.isUpdateRequired(Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the HTTP validators of the cached metadata at the provided URL.
+     *
+     * @param url the URL of the metadata
+     * @return the validators or null if the metadata isn't cached or has no validators
+     */
+    @Nullable
+    public ArtifactMetadata getValidators(@NotNull String url) {
+        Path file = getFile(url);
+        return file != null && Files.isRegularFile(file) ? ArtifactMetadata.read(file) : null;
+    }
+
+    /**
+     * Stores the metadata at the provided URL, marking it as just checked for updates.
+     *
+     * @param url          the URL of the metadata
+     * @param content      the metadata
+     * @param eTag         the ETag returned by the server or null
+     * @param lastModified the Last-Modified header returned by the server or null
+     * @throws IOException if the metadata couldn't be saved
+     */
+    public void store(@NotNull String url, byte @NotNull [] content, @Nullable String eTag, @Nullable String lastModified) throws IOException {
+        requireNonNull(content, "content");
+        Path file = getFile(url);
+        if (file == null) {
+            return;
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            Util.moveAtomically(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        if (eTag != null || lastModified != null) {
+            ArtifactMetadata metadata = new ArtifactMetadata();
+            metadata.setUrl(url);
+            metadata.setETag(eTag);
+            metadata.setLastModified(lastModified);
+            metadata.write(file);
+        } else {
+            ArtifactMetadata.delete(file);
+        }
+    }
+
+    /**
+     * Marks the cached metadata at the provided URL as just checked for updates,
+     * after the server reported that it hasn't changed.
+     *
+     * @param url the URL of the metadata
+     * @throws IOException if the metadata couldn't be updated
+     */
+    public void markUpdated(@NotNull String url) throws IOException {
+        Path file = getFile(url);
+        if (file != null) {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Util;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Cache of the URLs that repositories reported as not found, so that they aren't
+ * requested again until the cached miss expires.
+ * <p>
+ * Misses are kept in memory and, if a file is provided, also saved to disk to
+ * survive restarts.
+ */
+public class NegativeCache {
+    /**
+     * Time after which a cached miss expires
+     */
+    private final Duration ttl;
+
+    /**
+     * The file where misses are saved or null to keep them only in memory
+     */
+    @Nullable
+    private final Path file;
+
+    /**
+     * Expiration times (epoch milliseconds) by URL, loaded lazily from the file
+     */
+    private Map<String, Long> misses;
+
+    /**
+     * Creates a new in-memory negative cache.
+     *
+     * @param ttl time after which a cached miss expires
+     */
+    public NegativeCache(@NotNull Duration ttl) {
+        this(ttl, null);
+    }
+
+    /**
+     * Creates a new negative cache.
+     *
+     * @param ttl  time after which a cached miss expires
+     * @param file the file where misses are saved or null to keep them only in memory
+     */
+    public NegativeCache(@NotNull Duration ttl, @Nullable Path file) {
+        if (requireNonNull(ttl, "ttl").isNegative()) {
+            throw new IllegalArgumentException("TTL must not be negative");
+        }
+        this.ttl = ttl;
+        this.file = file;
+    }
+
+    /**
+     * Gets the time after which a cached miss expires.
+     *
+     * @return the TTL
+     */
+    @NotNull
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Gets the file where misses are saved.
+     *
+     * @return the file or null if misses are kept only in memory
+     */
+    @Nullable
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Checks whether the provided URL is known to be missing.
+     *
+     * @param url the URL
+     * @return true if a miss is cached and not expired, false otherwise
+     */
+    public synchronized boolean isMissing(@NotNull String url) {
+        Long expiration = load().get(requireNonNull(url, "url"));
+        if (expiration == null) {
+            return false;
+        }
+        if (expiration <= System.currentTimeMillis()) {
+            misses.remove(url);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the provided URL was not found.
+     *
+     * @param url the URL
+     * @throws IOException if the cache file couldn't be saved
+     */
+    public synchronized void recordMiss(@NotNull String url) throws IOException {
+        load().put(requireNonNull(url, "url"), System.currentTimeMillis() + ttl.toMillis());
+        save();
+    }
+
+    /**
+     * Forgets all the cached misses.
+     *
+     * @throws IOException if the cache file couldn't be saved
+     */
+    public synchronized void clear() throws IOException {
+        load().clear();
+        save();
+    }
+
+    @NotNull
+    private Map<String, Long> load() {
+        if (misses != null) {
+            return misses;
+        }
+
+        misses = new HashMap<>();
+        if (file != null) {
+            Properties properties = null;
+            try {
+                properties = Util.loadProperties(file);
+            } catch (IOException ignored) {
+                // A corrupted cache is simply rebuilt
+            }
+            if (properties != null) {
+                long now = System.currentTimeMillis();
+                for (String url : properties.stringPropertyNames()) {
+                    try {
+                        long expiration = Long.parseLong(properties.getProperty(url));
+                        if (expiration > now) {
+                            misses.put(url, expiration);
+                        }
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return misses;
+    }
+
+    private void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Properties properties = new Properties();
+        misses.values().removeIf(expiration -> expiration <= now);
+        misses.forEach((url, expiration) -> properties.setProperty(url, Long.toString(expiration)));
+        Util.storeProperties(properties, file);
+    }
+}
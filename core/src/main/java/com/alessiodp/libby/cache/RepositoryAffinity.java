@@ -0,0 +1,96 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.Util;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent index of the repository that last served each artifact, used to try
+ * that repository first the next time the artifact is resolved.
+ * <p>
+ * Artifacts are identified by groupId and artifactId, so a new version of a library
+ * is looked up in the repository that served the previous one.
+ */
+public class RepositoryAffinity {
+    /**
+     * The index file
+     */
+    private final Path file;
+
+    /**
+     * Repositories by artifact, loaded lazily from the index file
+     */
+    private Properties repositories;
+
+    /**
+     * Creates a new repository affinity index.
+     *
+     * @param file the index file, it is created when the first repository is recorded
+     */
+    public RepositoryAffinity(@NotNull Path file) {
+        this.file = requireNonNull(file, "file");
+    }
+
+    /**
+     * Gets the index file.
+     *
+     * @return the index file
+     */
+    @NotNull
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the repository that last served the provided library.
+     *
+     * @param library the library
+     * @return the repository or null if unknown
+     */
+    @Nullable
+    public synchronized String getRepository(@NotNull Library library) {
+        return load().getProperty(getKey(library));
+    }
+
+    /**
+     * Records the repository that served the provided library and saves the index file.
+     *
+     * @param library    the library
+     * @param repository the repository that served the library
+     * @throws IOException if the index file couldn't be saved
+     */
+    public synchronized void setRepository(@NotNull Library library, @NotNull String repository) throws IOException {
+        requireNonNull(repository, "repository");
+        if (repository.equals(load().setProperty(getKey(library), repository))) {
+            return;
+        }
+        Util.storeProperties(repositories, file);
+    }
+
+    @NotNull
+    private Properties load() {
+        if (repositories == null) {
+            try {
+                repositories = Util.loadProperties(file);
+            } catch (IOException ignored) {
+                // A corrupted index is simply rebuilt
+            }
+            if (repositories == null) {
+                repositories = new Properties();
+            }
+        }
+        return repositories;
+    }
+
+    @NotNull
+    private static String getKey(@NotNull Library library) {
+        return requireNonNull(library, "library").getGroupId() + ':' + library.getArtifactId();
+    }
+}
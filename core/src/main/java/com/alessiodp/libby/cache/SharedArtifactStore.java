@@ -0,0 +1,182 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.Util;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content-addressable store of artifacts shared by every library manager on the
+ * server, so that each unique artifact is downloaded and stored only once.
+ * <p>
+ * Artifacts are stored by SHA-256 checksum and referenced from the save directory
+ * of each library manager through hard links, falling back to copies when hard
+ * links aren't supported. An index maps the coordinates of non-snapshot libraries
+ * to their checksum, so that libraries without a declared checksum can be found too.
+ * <p>
+ * The store can be enabled for every library manager of the server by setting the
+ * {@link #SYSTEM_PROPERTY_DIRECTORY} system property or the {@link #ENV_VAR_DIRECTORY}
+ * environment variable to the store directory.
+ */
+public class SharedArtifactStore {
+    /**
+     * System property to set to the directory of the shared store to enable it for every library manager.
+     */
+    public static final String SYSTEM_PROPERTY_DIRECTORY = "libby.sharedStore.directory";
+
+    /**
+     * Environment variable to set to the directory of the shared store to enable it for every library manager.
+     */
+    public static final String ENV_VAR_DIRECTORY = "LIBBY_SHARED_STORE_DIRECTORY";
+
+    /**
+     * The store directory
+     */
+    private final Path directory;
+
+    /**
+     * Creates a new shared artifact store.
+     *
+     * @param directory the store directory
+     */
+    public SharedArtifactStore(@NotNull Path directory) {
+        this.directory = requireNonNull(directory, "directory").toAbsolutePath();
+    }
+
+    /**
+     * Creates the shared artifact store configured with the {@link #SYSTEM_PROPERTY_DIRECTORY}
+     * system property or the {@link #ENV_VAR_DIRECTORY} environment variable.
+     *
+     * @return the configured store or null if none is configured
+     */
+    @Nullable
+    public static SharedArtifactStore fromEnvironment() {
+        String directory = System.getProperty(SYSTEM_PROPERTY_DIRECTORY);
+        if (directory == null || directory.isEmpty()) {
+            directory = System.getenv(ENV_VAR_DIRECTORY);
+        }
+        return directory != null && !directory.isEmpty() ? new SharedArtifactStore(Paths.get(directory)) : null;
+    }
+
+    /**
+     * Gets the store directory.
+     *
+     * @return the store directory
+     */
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Finds the stored artifact of a library, using its checksum or, if it doesn't
+     * have one, the checksum indexed by coordinates.
+     *
+     * @param library the library
+     * @return the stored artifact or null if it isn't stored
+     */
+    @Nullable
+    public Path find(@NotNull Library library) {
+        String sha256 = requireNonNull(library, "library").hasChecksum() ? toHex(library.getChecksum()) : null;
+        if (sha256 == null && !library.isSnapshot()) {
+            try {
+                sha256 = new String(Files.readAllBytes(getIndexFile(library)), StandardCharsets.UTF_8).trim();
+            } catch (IOException ignored) {
+                return null;
+            }
+        }
+
+        if (sha256 == null || sha256.length() != 64) {
+            return null;
+        }
+        Path file = getFile(sha256);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * Adds a downloaded artifact to the store, if it isn't already stored, and indexes
+     * the library coordinates unless it is a snapshot.
+     *
+     * @param library the library
+     * @param file    the downloaded artifact
+     * @param sha256  the SHA-256 checksum of the artifact
+     * @throws IOException if the artifact couldn't be stored
+     */
+    public void store(@NotNull Library library, @NotNull Path file, byte @NotNull [] sha256) throws IOException {
+        String hex = toHex(requireNonNull(sha256, "sha256"));
+        Path stored = getFile(hex);
+        if (!Files.isRegularFile(stored)) {
+            link(requireNonNull(file, "file"), stored);
+        }
+
+        if (!requireNonNull(library, "library").isSnapshot()) {
+            Path index = getIndexFile(library);
+            Files.createDirectories(index.getParent());
+            Path tmp = Files.createTempFile(index.getParent(), index.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, hex.getBytes(StandardCharsets.UTF_8));
+                Util.moveAtomically(tmp, index);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Makes the target file reference the source file, through a hard link if possible
+     * or a copy otherwise. The target file is replaced atomically if it already exists.
+     *
+     * @param source the source file
+     * @param target the target file
+     * @throws IOException if the target file couldn't be created
+     */
+    public void link(@NotNull Path source, @NotNull Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = parent.resolve(target.getFileName() + "." + UUID.randomUUID() + ".link");
+        try {
+            try {
+                Files.createLink(tmp, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                if (e instanceof NoSuchFileException) {
+                    throw (NoSuchFileException) e;
+                }
+                // Hard links aren't supported (e.g. different file systems), copy the file
+                Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Util.moveAtomically(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @NotNull
+    private Path getFile(@NotNull String sha256) {
+        return directory.resolve(sha256.substring(0, 2)).resolve(sha256 + ".jar");
+    }
+
+    @NotNull
+    private Path getIndexFile(@NotNull Library library) {
+        return directory.resolve("index").resolve(library.getPath() + ".sha256");
+    }
+
+    @NotNull
+    private static String toHex(byte @NotNull [] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package com.alessiodp.libby.cache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Maven-style policy deciding when cached repository metadata must be checked for updates.
+ *
+ * @see MetadataCache
+ */
+public final class UpdatePolicy {
+    /**
+     * Metadata is checked for updates every time it's used.
+     */
+    public static final UpdatePolicy ALWAYS = new UpdatePolicy("always", null);
+
+    /**
+     * Metadata is checked for updates once a day, on its first use after midnight.
+     */
+    public static final UpdatePolicy DAILY = new UpdatePolicy("daily", null);
+
+    /**
+     * Cached metadata is never checked for updates.
+     */
+    public static final UpdatePolicy NEVER = new UpdatePolicy("never", null);
+
+    private final String name;
+    private final Duration interval;
+
+    private UpdatePolicy(@NotNull String name, Duration interval) {
+        this.name = name;
+        this.interval = interval;
+    }
+
+    /**
+     * Creates a policy checking metadata for updates when it's older than the provided interval.
+     *
+     * @param interval the interval between checks
+     * @return the update policy
+     */
+    @NotNull
+    public static UpdatePolicy interval(@NotNull Duration interval) {
+        if (requireNonNull(interval, "interval").isNegative()) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        return new UpdatePolicy("interval:" + interval.toMinutes(), interval);
+    }
+
+    /**
+     * Parses an update policy in the Maven format: {@code always}, {@code daily},
+     * {@code never} or {@code interval:N}, where N is a number of minutes.
+     *
+     * @param policy the policy to parse
+     * @return the update policy
+     * @throws IllegalArgumentException if the policy is invalid
+     */
+    @NotNull
+    public static UpdatePolicy parse(@NotNull String policy) {
+        String normalized = requireNonNull(policy, "policy").trim().toLowerCase(Locale.ROOT);
+        switch (normalized) {
+            case "always":
+                return ALWAYS;
+            case "daily":
+                return DAILY;
+            case "never":
+                return NEVER;
+        }
+
+        if (normalized.startsWith("interval:")) {
+            try {
+                return interval(Duration.ofMinutes(Long.parseLong(normalized.substring("interval:".length()))));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        throw new IllegalArgumentException("Invalid update policy: " + policy);
+    }
+
+    /**
+     * Checks whether metadata last updated at the provided time must be checked for updates.
+     *
+     * @param lastUpdated the last time the metadata was checked for updates
+     * @return true if the metadata must be checked for updates
+     */
+    public boolean isUpdateRequired(@NotNull Instant lastUpdated) {
+        requireNonNull(lastUpdated, "lastUpdated");
+        if (this == ALWAYS) {
+            return true;
+        } else if (this == NEVER) {
+            return false;
+        } else if (this == DAILY) {
+            ZoneId zone = ZoneId.systemDefault();
+            return lastUpdated.isBefore(LocalDate.now(zone).atStartOfDay(zone).toInstant());
+        }
+        return !lastUpdated.plus(interval).isAfter(Instant.now());
+    }
+
+    /**
+     * Gets the policy in the Maven format.
+     *
+     * @return the policy in the Maven format
+     * @see #parse(String)
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof UpdatePolicy && name.equals(((UpdatePolicy) o).name) && Objects.equals(interval, ((UpdatePolicy) o).interval);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
@@ -9,6 +9,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -16,12 +22,20 @@ import static java.util.Objects.requireNonNull;
  * This class loader is a simple child of {@code URLClassLoader} that uses
  * the JVM's Extensions Class Loader as the parent instead of the system class
  * loader to provide an unpolluted classpath.
+ * <p>
+ * Paths can also be {@link #addLazyPath(Collection, Supplier) added lazily}, when
+ * a class or resource of one of their packages is requested for the first time.
  */
 public class IsolatedClassLoader extends URLClassLoader {
     static {
         ClassLoader.registerAsParallelCapable();
     }
 
+    /**
+     * Paths which haven't been added yet, waiting for a class or resource of their packages to be requested
+     */
+    private final List<LazyPath> lazyPaths = new CopyOnWriteArrayList<>();
+
     /**
      * Creates a new isolated class loader for the given URLs.
      *
@@ -54,6 +68,61 @@ public class IsolatedClassLoader extends URLClassLoader {
         }
     }
 
+    /**
+     * Adds a path to the classpath on demand. The path is supplied and added when a class or
+     * resource of one of the provided packages (or of their subpackages) is requested for the
+     * first time, blocking the requesting thread until it's available.
+     * <p>
+     * If the supplier fails, the requested class isn't found and the supplier will be called
+     * again on the next request.
+     *
+     * @param packages the names of the packages contained in the path, like {@code com.example.library}
+     * @param path     the supplier of the path to add
+     */
+    public void addLazyPath(@NotNull Collection<String> packages, @NotNull Supplier<Path> path) {
+        List<String> prefixes = new ArrayList<>(requireNonNull(packages, "packages").size());
+        for (String packageName : packages) {
+            requireNonNull(packageName, "packageName");
+            prefixes.add(packageName.endsWith(".") ? packageName : packageName + '.');
+        }
+        lazyPaths.add(new LazyPath(prefixes, requireNonNull(path, "path")));
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        try {
+            addLazyPaths(name);
+        } catch (RuntimeException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        return super.findClass(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        addLazyPaths(name.replace('/', '.'));
+        return super.findResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        addLazyPaths(name.replace('/', '.'));
+        return super.findResources(name);
+    }
+
+    /**
+     * Adds the lazy paths containing the provided class or resource.
+     *
+     * @param name the name of the class or resource, with dots as separators
+     */
+    private void addLazyPaths(@NotNull String name) {
+        for (LazyPath lazyPath : lazyPaths) {
+            if (lazyPath.contains(name)) {
+                lazyPath.add();
+            }
+        }
+    }
+
     /**
      * Defines and loads a class.
      *
@@ -103,4 +172,34 @@ public class IsolatedClassLoader extends URLClassLoader {
             }
         }
     }
+
+    /**
+     * A path added to the classpath on demand.
+     */
+    private final class LazyPath {
+        private final List<String> prefixes;
+        private Supplier<Path> path;
+
+        private LazyPath(@NotNull List<String> prefixes, @NotNull Supplier<Path> path) {
+            this.prefixes = prefixes;
+            this.path = path;
+        }
+
+        private boolean contains(@NotNull String name) {
+            for (String prefix : prefixes) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void add() {
+            if (path != null) {
+                addPath(path.get());
+                path = null;
+                lazyPaths.remove(this);
+            }
+        }
+    }
 }
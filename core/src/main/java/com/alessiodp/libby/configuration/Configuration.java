@@ -1,6 +1,7 @@
 package com.alessiodp.libby.configuration;
 
 import com.alessiodp.libby.Library;
+import com.alessiodp.libby.download.DownloadLimiter;
 import com.alessiodp.libby.relocation.Relocation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -40,6 +41,12 @@ public class Configuration {
     @NotNull
     private final List<Library> libraries;
 
+    /**
+     * The (optional) limits of the downloads.
+     */
+    @Nullable
+    private final DownloadLimiter downloadLimiter;
+
     /**
      * Creates a new {@code Configuration} instance.
      *
@@ -49,10 +56,24 @@ public class Configuration {
      * @param libraries the libraries to download and load
      */
     public Configuration(@Nullable Integer version, @Nullable Set<String> repositories, @Nullable Set<Relocation> globalRelocations, @Nullable List<Library> libraries) {
+        this(version, repositories, globalRelocations, libraries, null);
+    }
+
+    /**
+     * Creates a new {@code Configuration} instance.
+     *
+     * @param version the (optional) version of the config
+     * @param repositories the URL of maven repositories from which libraries will be downloaded
+     * @param globalRelocations the relocations to apply to every library
+     * @param libraries the libraries to download and load
+     * @param downloadLimiter the (optional) limits of the downloads
+     */
+    public Configuration(@Nullable Integer version, @Nullable Set<String> repositories, @Nullable Set<Relocation> globalRelocations, @Nullable List<Library> libraries, @Nullable DownloadLimiter downloadLimiter) {
         this.version = version;
         this.repositories = repositories != null ? Collections.unmodifiableSet(new HashSet<>(repositories)) : Collections.emptySet();
         this.globalRelocations = globalRelocations != null ? Collections.unmodifiableSet(new HashSet<>(globalRelocations)) : Collections.emptySet();
         this.libraries = libraries != null ? Collections.unmodifiableList(new ArrayList<>(libraries)) : Collections.emptyList();
+        this.downloadLimiter = downloadLimiter;
     }
 
     /**
@@ -95,4 +116,14 @@ public class Configuration {
     public List<Library> getLibraries() {
         return libraries;
     }
+
+    /**
+     * Gets the (optional) limits of the downloads.
+     *
+     * @return The limits of the downloads or null if not configured
+     */
+    @Nullable
+    public DownloadLimiter getDownloadLimiter() {
+        return downloadLimiter;
+    }
 }
@@ -3,7 +3,9 @@ package com.alessiodp.libby.configuration;
 import com.alessiodp.libby.Library;
 import com.alessiodp.libby.LibraryManager;
 import com.alessiodp.libby.Repositories;
+import com.alessiodp.libby.cache.UpdatePolicy;
 import com.alessiodp.libby.classloader.IsolatedClassLoader;
+import com.alessiodp.libby.download.DownloadLimiter;
 import com.alessiodp.libby.relocation.Relocation;
 import com.alessiodp.libby.transitive.ExcludedDependency;
 import org.jetbrains.annotations.NotNull;
@@ -163,8 +165,9 @@ public class ConfigurationFetcher {
             Set<String> repositories = fetchRepositories(root, false);
             Set<Relocation> globalRelocations = fetchRelocations(root);
             List<Library> libraries = fetchLibraries(root, globalRelocations);
+            DownloadLimiter downloadLimiter = fetchDownloadLimiter(root);
 
-            return new Configuration(version, repositories, globalRelocations, libraries);
+            return new Configuration(version, repositories, globalRelocations, libraries, downloadLimiter);
         } catch (ReflectiveOperationException e) {
             throw new RuntimeException(e);
         }
@@ -287,6 +290,74 @@ public class ConfigurationFetcher {
         return Collections.emptySet();
     }
 
+    /**
+     * Fetch the download limits from the JSON file. It can be omitted from the JSON.
+     * If defined, it must be an object with the following optional properties:
+     * <ul>
+     *     <li>maxConnectionsPerHost: The maximum number of concurrent requests to the same host</li>
+     *     <li>maxConnections: An object mapping host names to their maximum number of concurrent requests</li>
+     *     <li>maxBandwidth: The maximum total bandwidth of the downloads, in bytes per second</li>
+     * </ul>
+     *
+     * @param configuration the root object of the JSON file
+     * @return the download limiter or null if not defined
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private DownloadLimiter fetchDownloadLimiter(@NotNull Map<String, Object> configuration) {
+        Object download = configuration.get("download");
+
+        if (download == null) {
+            return null;
+        }
+
+        if (!(download instanceof Map)) {
+            throw new ConfigurationException("Invalid download limits: " + download);
+        }
+
+        Map<String, Object> limits = (Map<String, Object>) download;
+        DownloadLimiter.Builder builder = DownloadLimiter.builder();
+
+        try {
+            Object maxConnectionsPerHost = limits.get("maxConnectionsPerHost");
+
+            if (maxConnectionsPerHost != null) {
+                if (!(maxConnectionsPerHost instanceof Number)) {
+                    throw new ConfigurationException("The maxConnectionsPerHost property must be a number");
+                }
+                builder.maxConnectionsPerHost(((Number) maxConnectionsPerHost).intValue());
+            }
+
+            Object maxConnections = limits.get("maxConnections");
+
+            if (maxConnections != null) {
+                if (!(maxConnections instanceof Map)) {
+                    throw new ConfigurationException("The maxConnections property must be an object");
+                }
+
+                for (Map.Entry<String, Object> host : ((Map<String, Object>) maxConnections).entrySet()) {
+                    if (!(host.getValue() instanceof Number)) {
+                        throw new ConfigurationException("Invalid max connections of host " + host.getKey() + ": " + host.getValue());
+                    }
+                    builder.maxConnections(host.getKey(), ((Number) host.getValue()).intValue());
+                }
+            }
+
+            Object maxBandwidth = limits.get("maxBandwidth");
+
+            if (maxBandwidth != null) {
+                if (!(maxBandwidth instanceof Number)) {
+                    throw new ConfigurationException("The maxBandwidth property must be a number");
+                }
+                builder.maxBandwidth(((Number) maxBandwidth).longValue());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid download limits: " + e.getMessage(), e);
+        }
+
+        return builder.build();
+    }
+
     /**
      * Fetch the excluded transitive dependencies from the JSON of a library. It can be omitted.
      * If defined, they must be an array of objects that include the following properties:
@@ -353,6 +424,10 @@ public class ConfigurationFetcher {
      *     <li>relocations: An array of relocations to apply to this library</li>
      *     <li>resolveTransitiveDependencies: Whether to resolve transitive dependencies</li>
      *     <li>excludedTransitiveDependencies: An array of dependencies excluded during transitive dependencies resolution</li>
+     *     <li>priority: The loading priority of this library, libraries with higher priority are loaded first</li>
+     *     <li>deferred: Whether to load this library in the background after the other libraries</li>
+     *     <li>lazyPackages: An array of packages which trigger the loading of this isolated library on first access</li>
+     *     <li>updatePolicy: The update policy of the cached snapshot metadata (always, daily, never or interval:N minutes)</li>
      * </ul>
      *
      * @param configuration the root object of the JSON file
@@ -424,6 +499,38 @@ public class ConfigurationFetcher {
 
                 fetchExcludedTransitiveDependencies(library).forEach(libraryBuilder::excludeTransitiveDependency);
 
+                Object priority = library.get("priority");
+
+                if (priority != null) {
+                    if (!(priority instanceof Number)) {
+                        throw new ConfigurationException("The priority property must be a number");
+                    }
+                    libraryBuilder.priority(((Number) priority).intValue());
+                }
+
+                libraryBuilder.deferred(getBoolean(library, "deferred"));
+
+                ArrayList<Object> lazyPackages = getArray(library, "lazyPackages");
+
+                if (lazyPackages != null) {
+                    for (Object lazyPackage : lazyPackages) {
+                        if (!(lazyPackage instanceof String)) {
+                            throw new ConfigurationException("Invalid lazy package: " + lazyPackage);
+                        }
+                        libraryBuilder.lazyPackage((String) lazyPackage);
+                    }
+                }
+
+                String updatePolicy = getString(library, "updatePolicy");
+
+                if (updatePolicy != null) {
+                    try {
+                        libraryBuilder.updatePolicy(UpdatePolicy.parse(updatePolicy));
+                    } catch (IllegalArgumentException e) {
+                        throw new ConfigurationException("Invalid update policy: " + updatePolicy, e);
+                    }
+                }
+
                 fetchRepositories(library, false).forEach(libraryBuilder::repository);
 
                 fetchRepositories(library, true).forEach(libraryBuilder::fallbackRepository);
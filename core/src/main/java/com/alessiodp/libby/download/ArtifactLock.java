@@ -0,0 +1,95 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An exclusive lock on an artifact, shared by every process and every library manager
+ * using the same directory, used to prevent concurrent writes of the same artifact.
+ * <p>
+ * The lock is held on a {@code .lock} file next to the artifact. Lock files are never
+ * deleted, since deleting them while another process is waiting would break the lock.
+ */
+public final class ArtifactLock implements Closeable {
+    /**
+     * Interval between attempts while waiting for the lock
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private ArtifactLock(@NotNull FileChannel channel, @NotNull FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Acquires the lock on the provided artifact, waiting until it is released by
+     * other processes or other library managers of the JVM.
+     *
+     * @param artifact the artifact to lock
+     * @param timeout  the maximum time to wait
+     * @return the acquired lock, which must be closed to release it
+     * @throws IOException if the lock couldn't be acquired before the timeout or the thread was interrupted
+     */
+    @NotNull
+    public static ArtifactLock acquire(@NotNull Path artifact, @NotNull Duration timeout) throws IOException {
+        Path file = requireNonNull(artifact, "artifact").resolveSibling(artifact.getFileName() + ".lock");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        long deadline = System.nanoTime() + requireNonNull(timeout, "timeout").toNanos();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            while (true) {
+                try {
+                    FileLock lock = channel.tryLock();
+                    if (lock != null) {
+                        return new ArtifactLock(channel, lock);
+                    }
+                } catch (OverlappingFileLockException ignored) {
+                    // Held by another library manager of this JVM
+                }
+
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IOException("Timed out waiting for the lock on " + artifact);
+                }
+                try {
+                    Thread.sleep(POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the lock on " + artifact);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the lock.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.Util;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Metadata stored next to a downloaded (or partially downloaded) artifact,
+ * like the URL it was downloaded from, the HTTP validators returned by
+ * the server and its checksum together with the size and the last modified
+ * time of the file when the checksum was verified.
+ * <p>
+ * The metadata is saved as a properties file next to the artifact.
+ */
+public class ArtifactMetadata {
+    /**
+     * Extension appended to the artifact file name to get the metadata file name
+     */
+    public static final String EXTENSION = ".properties";
+
+    /**
+     * Stored properties
+     */
+    private final Properties properties;
+
+    /**
+     * Creates a new empty artifact metadata.
+     */
+    public ArtifactMetadata() {
+        this(new Properties());
+    }
+
+    private ArtifactMetadata(@NotNull Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Gets the metadata file of the provided artifact file.
+     *
+     * @param artifact the artifact file
+     * @return the metadata file
+     */
+    @NotNull
+    public static Path getFile(@NotNull Path artifact) {
+        return requireNonNull(artifact, "artifact").resolveSibling(artifact.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Reads the metadata of the provided artifact file.
+     *
+     * @param artifact the artifact file
+     * @return the metadata or null if it doesn't exist or couldn't be read
+     */
+    @Nullable
+    public static ArtifactMetadata read(@NotNull Path artifact) {
+        try {
+            Properties properties = Util.loadProperties(getFile(artifact));
+            return properties != null ? new ArtifactMetadata(properties) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes this metadata next to the provided artifact file, replacing the existing one.
+     *
+     * @param artifact the artifact file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(@NotNull Path artifact) throws IOException {
+        Util.storeProperties(properties, getFile(artifact));
+    }
+
+    /**
+     * Deletes the metadata of the provided artifact file, if it exists.
+     *
+     * @param artifact the artifact file
+     * @throws IOException if an I/O error occurs
+     */
+    public static void delete(@NotNull Path artifact) throws IOException {
+        try {
+            Files.deleteIfExists(getFile(artifact));
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+
+    /**
+     * Gets the URL the artifact was downloaded from.
+     *
+     * @return the URL or null
+     */
+    @Nullable
+    public String getUrl() {
+        return properties.getProperty("url");
+    }
+
+    /**
+     * Sets the URL the artifact was downloaded from.
+     *
+     * @param url the URL or null
+     */
+    public void setUrl(@Nullable String url) {
+        set("url", url);
+    }
+
+    /**
+     * Gets the ETag returned by the server for the artifact.
+     *
+     * @return the ETag or null
+     */
+    @Nullable
+    public String getETag() {
+        return properties.getProperty("etag");
+    }
+
+    /**
+     * Sets the ETag returned by the server for the artifact.
+     *
+     * @param eTag the ETag or null
+     */
+    public void setETag(@Nullable String eTag) {
+        set("etag", eTag);
+    }
+
+    /**
+     * Gets the Last-Modified date returned by the server for the artifact.
+     *
+     * @return the Last-Modified date or null
+     */
+    @Nullable
+    public String getLastModified() {
+        return properties.getProperty("lastModified");
+    }
+
+    /**
+     * Sets the Last-Modified date returned by the server for the artifact.
+     *
+     * @param lastModified the Last-Modified date or null
+     */
+    public void setLastModified(@Nullable String lastModified) {
+        set("lastModified", lastModified);
+    }
+
+    /**
+     * Gets the Base64-encoded SHA-256 checksum of the artifact.
+     *
+     * @return the checksum or null
+     */
+    @Nullable
+    public String getSha256() {
+        return properties.getProperty("sha256");
+    }
+
+    /**
+     * Sets the Base64-encoded SHA-256 checksum of the artifact.
+     *
+     * @param sha256 the checksum or null
+     */
+    public void setSha256(@Nullable String sha256) {
+        set("sha256", sha256);
+    }
+
+    /**
+     * Gets the Base64-encoded SHA-256 checksum of the artifact this one was generated from,
+     * like the original jar of a relocated one.
+     *
+     * @return the checksum or null
+     */
+    @Nullable
+    public String getSourceSha256() {
+        return properties.getProperty("sourceSha256");
+    }
+
+    /**
+     * Sets the Base64-encoded SHA-256 checksum of the artifact this one was generated from.
+     *
+     * @param sourceSha256 the checksum or null
+     */
+    public void setSourceSha256(@Nullable String sourceSha256) {
+        set("sourceSha256", sourceSha256);
+    }
+
+    /**
+     * Gets the size of the artifact file when its checksum was last verified.
+     *
+     * @return the size in bytes or -1 if unknown
+     */
+    public long getFileSize() {
+        return getLong("fileSize");
+    }
+
+    /**
+     * Sets the size of the artifact file when its checksum was last verified.
+     *
+     * @param fileSize the size in bytes or -1 if unknown
+     */
+    public void setFileSize(long fileSize) {
+        set("fileSize", fileSize >= 0 ? Long.toString(fileSize) : null);
+    }
+
+    /**
+     * Gets the last modified time of the artifact file when its checksum was last verified.
+     *
+     * @return the last modified time in milliseconds since the epoch or -1 if unknown
+     */
+    public long getFileTime() {
+        return getLong("fileTime");
+    }
+
+    /**
+     * Sets the last modified time of the artifact file when its checksum was last verified.
+     *
+     * @param fileTime the last modified time in milliseconds since the epoch or -1 if unknown
+     */
+    public void setFileTime(long fileTime) {
+        set("fileTime", fileTime >= 0 ? Long.toString(fileTime) : null);
+    }
+
+    /**
+     * Gets the strong validator to use in an {@code If-Range} header, preferring
+     * the ETag over the Last-Modified date. Weak ETags can't be used.
+     *
+     * @return the validator or null if none is available
+     */
+    @Nullable
+    public String getRangeValidator() {
+        String eTag = getETag();
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        return getLastModified();
+    }
+
+    private long getLong(@NotNull String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void set(@NotNull String key, @Nullable String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        } else {
+            properties.remove(key);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Limits the load put by downloads on repositories and on the network: the number
+ * of concurrent requests to the same host is capped and the total bandwidth used
+ * by all the downloads can be limited.
+ * <p>
+ * A request holds a connection slot of its host until its response is closed, while
+ * the bandwidth is shared by reading response bodies at no more than the configured rate.
+ * Local repositories are never limited.
+ * <p>
+ * A limiter can be shared by multiple library managers to enforce limits across all of them.
+ *
+ * @see com.alessiodp.libby.LibraryManager#setDownloadLimiter(DownloadLimiter)
+ * @see #builder()
+ */
+public class DownloadLimiter {
+    /**
+     * Maximum number of concurrent requests to a host, 0 if unlimited
+     */
+    private final int maxConnectionsPerHost;
+
+    /**
+     * Maximum number of concurrent requests by host, overriding the default one
+     */
+    @NotNull
+    private final Map<String, Integer> hostMaxConnections;
+
+    /**
+     * Maximum total bandwidth in bytes per second, 0 if unlimited
+     */
+    private final long maxBandwidth;
+
+    /**
+     * Connection slots by host
+     */
+    private final Map<String, Semaphore> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Available bytes of the bandwidth token bucket, negative when readers are waiting
+     */
+    private double tokens;
+
+    /**
+     * Last time the token bucket has been refilled
+     */
+    private long refilledAt = System.nanoTime();
+
+    private DownloadLimiter(@NotNull Builder builder) {
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.hostMaxConnections = Collections.unmodifiableMap(new HashMap<>(builder.hostMaxConnections));
+        this.maxBandwidth = builder.maxBandwidth;
+        this.tokens = maxBandwidth;
+    }
+
+    /**
+     * Gets the maximum number of concurrent requests to a host.
+     *
+     * @return the maximum number of concurrent requests to a host, 0 if unlimited
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Gets the maximum number of concurrent requests to the provided host.
+     *
+     * @param host the host name
+     * @return the maximum number of concurrent requests to the host, 0 if unlimited
+     */
+    public int getMaxConnections(@NotNull String host) {
+        Integer max = hostMaxConnections.get(requireNonNull(host, "host").toLowerCase(Locale.ROOT));
+        return max != null ? max : maxConnectionsPerHost;
+    }
+
+    /**
+     * Gets the maximum total bandwidth used by the downloads.
+     *
+     * @return the maximum bandwidth in bytes per second, 0 if unlimited
+     */
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    /**
+     * Wraps a transport, so that its requests are subject to the limits of this limiter.
+     *
+     * @param transport the transport to wrap
+     * @return the limited transport
+     */
+    @NotNull
+    public Transport limit(@NotNull Transport transport) {
+        requireNonNull(transport, "transport");
+        return (url, headers, connectTimeout, readTimeout) -> {
+            Semaphore slots = getConnectionSlots(url);
+            if (slots != null) {
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a connection to " + url);
+                }
+            }
+
+            try {
+                return new LimitedResponse(transport.get(url, headers, connectTimeout, readTimeout), slots);
+            } catch (IOException | RuntimeException | Error e) {
+                if (slots != null) {
+                    slots.release();
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Gets the connection slots of the host of the provided URL.
+     *
+     * @param url the requested URL
+     * @return the connection slots or null if the requests to the host aren't limited
+     */
+    @Nullable
+    private Semaphore getConnectionSlots(@NotNull String url) {
+        String host = getHost(url);
+        if (host == null) {
+            return null;
+        }
+
+        int max = getMaxConnections(host);
+        if (max <= 0) {
+            return null;
+        }
+        return connections.computeIfAbsent(host, h -> new Semaphore(max, true));
+    }
+
+    /**
+     * Waits until the provided number of bytes can be read without exceeding the maximum bandwidth.
+     *
+     * @param bytes the number of bytes read
+     * @throws InterruptedIOException if the current thread is interrupted while waiting
+     */
+    private void throttle(int bytes) throws InterruptedIOException {
+        if (maxBandwidth <= 0 || bytes <= 0) {
+            return;
+        }
+
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // The bucket holds at most one second worth of bytes
+            tokens = Math.min(maxBandwidth, tokens + (now - refilledAt) * maxBandwidth / 1e9);
+            refilledAt = now;
+            tokens -= bytes;
+            wait = tokens < 0 ? (long) (-tokens * 1e9 / maxBandwidth) : 0;
+        }
+
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling a download");
+            }
+        }
+    }
+
+    /**
+     * Gets the lower-cased host of the provided URL.
+     *
+     * @param url the URL
+     * @return the host or null if the URL doesn't refer to a remote repository
+     */
+    @Nullable
+    private static String getHost(@NotNull String url) {
+        if (RepositoryHealth.getOrigin(url) == null) {
+            return null;
+        }
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new download limiter builder.
+     *
+     * @return new download limiter builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A response which releases its connection slot when closed or aborted and whose body is throttled.
+     */
+    private final class LimitedResponse implements Transport.Response {
+        private final Transport.Response response;
+        @Nullable
+        private final Semaphore slots;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private LimitedResponse(@NotNull Transport.Response response, @Nullable Semaphore slots) {
+            this.response = response;
+            this.slots = slots;
+        }
+
+        @Override
+        @NotNull
+        public String getUrl() {
+            return response.getUrl();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusCode();
+        }
+
+        @Override
+        @Nullable
+        public String getHeader(@NotNull String name) {
+            return response.getHeader(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.getContentLength();
+        }
+
+        @Override
+        @NotNull
+        public InputStream getBody() throws IOException {
+            InputStream body = response.getBody();
+            if (maxBandwidth <= 0) {
+                return body;
+            }
+
+            return new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        throttle(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte @NotNull [] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    throttle(read);
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                response.close();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void abort() {
+            // Don't fall back to close(), it could wait for a blocked read
+            try {
+                response.abort();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases the connection slot, only once even if the response is both aborted and closed.
+         */
+        private void release() {
+            if (released.compareAndSet(false, true) && slots != null) {
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * Due to the number of optional limits, the Builder is used for creating
+     * new limiters. Unless changed, no limit is applied.
+     */
+    public static class Builder {
+        /**
+         * Maximum number of concurrent requests to a host
+         */
+        private int maxConnectionsPerHost;
+
+        /**
+         * Maximum number of concurrent requests by host
+         */
+        private final Map<String, Integer> hostMaxConnections = new HashMap<>();
+
+        /**
+         * Maximum total bandwidth in bytes per second
+         */
+        private long maxBandwidth;
+
+        /**
+         * Sets the maximum number of concurrent requests to the same host.
+         *
+         * @param maxConnectionsPerHost the maximum number of concurrent requests, 0 for no limit
+         * @return this builder
+         */
+        @NotNull
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            if (maxConnectionsPerHost < 0) {
+                throw new IllegalArgumentException("Max connections must not be negative");
+            }
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests to a host, overriding the
+         * {@link #maxConnectionsPerHost(int) default one}.
+         *
+         * @param host           the host name, like {@code repo.example.com}
+         * @param maxConnections the maximum number of concurrent requests, 0 for no limit
+         * @return this builder
+         */
+        @NotNull
+        public Builder maxConnections(@NotNull String host, int maxConnections) {
+            if (maxConnections < 0) {
+                throw new IllegalArgumentException("Max connections must not be negative");
+            }
+            hostMaxConnections.put(requireNonNull(host, "host").toLowerCase(Locale.ROOT), maxConnections);
+            return this;
+        }
+
+        /**
+         * Sets the maximum total bandwidth used by the downloads.
+         * <p>
+         * Throttled downloads should not be subject to a
+         * {@link DownloadPolicy#getMinThroughput() throughput floor} higher than this.
+         *
+         * @param bytesPerSecond the maximum bandwidth in bytes per second, 0 for no limit
+         * @return this builder
+         */
+        @NotNull
+        public Builder maxBandwidth(long bytesPerSecond) {
+            if (bytesPerSecond < 0) {
+                throw new IllegalArgumentException("Max bandwidth must not be negative");
+            }
+            this.maxBandwidth = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Creates a new download limiter using this builder's configuration.
+         *
+         * @return new download limiter
+         */
+        @NotNull
+        public DownloadLimiter build() {
+            return new DownloadLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable set of rules controlling how artifacts and metadata are downloaded:
+ * connect and read timeouts (optionally per repository), retries of transient
+ * failures with jittered exponential backoff, a throughput floor which aborts
+ * transfers that are alive but too slow to complete in a reasonable time, and the
+ * bandwidth left to deferred libraries while other libraries are being loaded.
+ *
+ * @see com.alessiodp.libby.LibraryManager#setDownloadPolicy(DownloadPolicy)
+ * @see #builder()
+ */
+public class DownloadPolicy {
+    /**
+     * Default timeouts
+     */
+    @NotNull
+    private final Timeouts defaultTimeouts;
+
+    /**
+     * Timeouts by repository URL
+     */
+    @NotNull
+    private final Map<String, Timeouts> repositoryTimeouts;
+
+    /**
+     * Maximum number of retries of a failed request
+     */
+    private final int maxRetries;
+
+    /**
+     * Base delay of the exponential backoff between retries
+     */
+    @NotNull
+    private final Duration retryBackoff;
+
+    /**
+     * Maximum delay between retries
+     */
+    @NotNull
+    private final Duration maxRetryBackoff;
+
+    /**
+     * Minimum throughput in bytes per second, 0 if disabled
+     */
+    private final long minThroughput;
+
+    /**
+     * Time window over which the throughput is measured
+     */
+    @NotNull
+    private final Duration throughputWindow;
+
+    /**
+     * Bandwidth in bytes per second of the downloads of deferred libraries while other libraries are being loaded, 0 if unlimited
+     */
+    private final long deferredBandwidth;
+
+    private DownloadPolicy(@NotNull Builder builder) {
+        this.defaultTimeouts = new Timeouts(builder.connectTimeout, builder.readTimeout);
+        this.repositoryTimeouts = Collections.unmodifiableMap(new LinkedHashMap<>(builder.repositoryTimeouts));
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoff = builder.retryBackoff;
+        this.maxRetryBackoff = builder.maxRetryBackoff;
+        this.minThroughput = builder.minThroughput;
+        this.throughputWindow = builder.throughputWindow;
+        this.deferredBandwidth = builder.deferredBandwidth;
+    }
+
+    /**
+     * Gets the connect timeout for the provided URL.
+     *
+     * @param url the URL to request
+     * @return the connect timeout
+     */
+    @NotNull
+    public Duration getConnectTimeout(@NotNull String url) {
+        return getTimeouts(url).connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout for the provided URL, that is the maximum time to wait for data.
+     *
+     * @param url the URL to request
+     * @return the read timeout
+     */
+    @NotNull
+    public Duration getReadTimeout(@NotNull String url) {
+        return getTimeouts(url).readTimeout;
+    }
+
+    /**
+     * Gets the timeouts of the repository with the longest URL which is a prefix of the provided one.
+     *
+     * @param url the URL to request
+     * @return the timeouts for the URL
+     */
+    @NotNull
+    private Timeouts getTimeouts(@NotNull String url) {
+        requireNonNull(url, "url");
+        Timeouts timeouts = defaultTimeouts;
+        int length = -1;
+        for (Map.Entry<String, Timeouts> entry : repositoryTimeouts.entrySet()) {
+            if (url.startsWith(entry.getKey()) && entry.getKey().length() > length) {
+                timeouts = entry.getValue();
+                length = entry.getKey().length();
+            }
+        }
+        return timeouts;
+    }
+
+    /**
+     * Gets the maximum number of retries of a failed request.
+     *
+     * @return the maximum number of retries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Gets the base delay of the exponential backoff between retries.
+     *
+     * @return the base retry delay
+     */
+    @NotNull
+    public Duration getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * Gets the maximum delay between retries.
+     *
+     * @return the maximum retry delay
+     */
+    @NotNull
+    public Duration getMaxRetryBackoff() {
+        return maxRetryBackoff;
+    }
+
+    /**
+     * Computes the delay before a retry. The delay grows exponentially with the number of
+     * the retry, up to the {@link #getMaxRetryBackoff() maximum}, and is randomized between
+     * half and the whole of it, so that clients that failed together don't retry together.
+     *
+     * @param retry the number of the retry, starting from 1
+     * @return the delay before the retry
+     */
+    @NotNull
+    public Duration getRetryDelay(int retry) {
+        if (retry < 1) {
+            throw new IllegalArgumentException("Retry must be positive");
+        }
+
+        long max = maxRetryBackoff.toMillis();
+        long delay = Math.min(max, retryBackoff.toMillis() << Math.min(retry - 1, 30));
+        if (delay < 0) {
+            delay = max;
+        }
+        long half = delay / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(delay - half + 1));
+    }
+
+    /**
+     * Gets the minimum throughput of a transfer. Transfers slower than this over the
+     * {@link #getThroughputWindow() throughput window} are aborted.
+     *
+     * @return the minimum throughput in bytes per second, 0 if disabled
+     */
+    public long getMinThroughput() {
+        return minThroughput;
+    }
+
+    /**
+     * Gets the time window over which the throughput of a transfer is measured.
+     *
+     * @return the throughput window
+     */
+    @NotNull
+    public Duration getThroughputWindow() {
+        return throughputWindow;
+    }
+
+    /**
+     * Gets the bandwidth of the downloads of {@link com.alessiodp.libby.Library#isDeferred() deferred libraries}
+     * while other libraries are being loaded. Downloads of artifacts that other loads are waiting for are not limited.
+     *
+     * @return the bandwidth in bytes per second, 0 if unlimited
+     */
+    public long getDeferredBandwidth() {
+        return deferredBandwidth;
+    }
+
+    /**
+     * Checks whether a request that failed with the provided exception should be retried.
+     * <p>
+     * Timeouts, connection resets, truncated and stalled transfers, and the 408, 429 and 5xx
+     * status codes are considered transient. Missing files, unknown hosts and skipped
+     * repositories are not.
+     *
+     * @param exception the exception thrown by the request
+     * @return true if the request can be retried
+     */
+    public static boolean isRetryable(@NotNull IOException exception) {
+        if (exception instanceof FileNotFoundException
+                || exception instanceof UnknownHostException
+                || exception instanceof RepositoryUnavailableException) {
+            return false;
+        }
+        if (exception instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) exception).getStatusCode();
+            return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+        }
+        return exception instanceof SocketTimeoutException
+                || exception instanceof SocketException
+                || exception instanceof EOFException
+                || exception instanceof DownloadStalledException
+                || RepositoryHealth.isConnectionFailure(exception);
+    }
+
+    /**
+     * Creates a new download policy builder.
+     *
+     * @return new download policy builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Connect and read timeouts.
+     */
+    private static final class Timeouts {
+        private final Duration connectTimeout;
+        private final Duration readTimeout;
+
+        private Timeouts(@NotNull Duration connectTimeout, @NotNull Duration readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+    }
+
+    /**
+     * Due to the constructor complexity of a download policy, the Builder is
+     * used for creating new policies. Unless changed, requests time out after
+     * 5 seconds, are retried twice, the throughput floor is disabled and deferred
+     * libraries are downloaded at 64 KiB/s while other libraries are being loaded.
+     */
+    public static class Builder {
+        /**
+         * Default connect timeout
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Default read timeout
+         */
+        private Duration readTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Timeouts by repository URL
+         */
+        private final Map<String, Timeouts> repositoryTimeouts = new LinkedHashMap<>();
+
+        /**
+         * Maximum number of retries
+         */
+        private int maxRetries = 2;
+
+        /**
+         * Base retry delay
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        /**
+         * Maximum retry delay
+         */
+        private Duration maxRetryBackoff = Duration.ofSeconds(10);
+
+        /**
+         * Minimum throughput in bytes per second
+         */
+        private long minThroughput;
+
+        /**
+         * Throughput window
+         */
+        private Duration throughputWindow = Duration.ofSeconds(30);
+
+        /**
+         * Bandwidth of deferred downloads in bytes per second
+         */
+        private long deferredBandwidth = 64 * 1024;
+
+        /**
+         * Sets the default connect timeout.
+         *
+         * @param connectTimeout the connect timeout
+         * @return this builder
+         */
+        @NotNull
+        public Builder connectTimeout(@NotNull Duration connectTimeout) {
+            this.connectTimeout = requirePositive(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the default read timeout, that is the maximum time to wait for data.
+         *
+         * @param readTimeout the read timeout
+         * @return this builder
+         */
+        @NotNull
+        public Builder readTimeout(@NotNull Duration readTimeout) {
+            this.readTimeout = requirePositive(readTimeout, "readTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the timeouts of the requests to a repository, overriding the default ones.
+         *
+         * @param url            the repository URL
+         * @param connectTimeout the connect timeout
+         * @param readTimeout    the read timeout
+         * @return this builder
+         */
+        @NotNull
+        public Builder repositoryTimeouts(@NotNull String url, @NotNull Duration connectTimeout, @NotNull Duration readTimeout) {
+            String repository = requireNonNull(url, "url").endsWith("/") ? url : url + '/';
+            repositoryTimeouts.put(repository, new Timeouts(requirePositive(connectTimeout, "connectTimeout"), requirePositive(readTimeout, "readTimeout")));
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of retries of a request which failed with a transient error.
+         *
+         * @param maxRetries the maximum number of retries, 0 to disable retries
+         * @return this builder
+         * @see DownloadPolicy#isRetryable(IOException)
+         */
+        @NotNull
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("Max retries must not be negative");
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Sets the base and the maximum delay of the exponential backoff between retries.
+         *
+         * @param retryBackoff    the delay before the first retry
+         * @param maxRetryBackoff the maximum delay between retries
+         * @return this builder
+         */
+        @NotNull
+        public Builder retryBackoff(@NotNull Duration retryBackoff, @NotNull Duration maxRetryBackoff) {
+            if (requireNonNull(retryBackoff, "retryBackoff").isNegative() || requireNonNull(maxRetryBackoff, "maxRetryBackoff").compareTo(retryBackoff) < 0) {
+                throw new IllegalArgumentException("Retry backoff must not be negative nor greater than the maximum backoff");
+            }
+            this.retryBackoff = retryBackoff;
+            this.maxRetryBackoff = maxRetryBackoff;
+            return this;
+        }
+
+        /**
+         * Sets the throughput floor: transfers slower than the provided throughput over
+         * the provided window are aborted, and retried if retries are enabled.
+         *
+         * @param bytesPerSecond the minimum throughput in bytes per second, 0 to disable the floor
+         * @param window         the time window over which the throughput is measured
+         * @return this builder
+         */
+        @NotNull
+        public Builder minThroughput(long bytesPerSecond, @NotNull Duration window) {
+            if (bytesPerSecond < 0) {
+                throw new IllegalArgumentException("Minimum throughput must not be negative");
+            }
+            this.minThroughput = bytesPerSecond;
+            this.throughputWindow = requirePositive(window, "window");
+            return this;
+        }
+
+        /**
+         * Sets the bandwidth of the downloads of deferred libraries while other libraries are being
+         * loaded, so that they don't compete with the libraries needed right away.
+         *
+         * @param bytesPerSecond the bandwidth in bytes per second, 0 to not limit deferred downloads
+         * @return this builder
+         */
+        @NotNull
+        public Builder deferredBandwidth(long bytesPerSecond) {
+            if (bytesPerSecond < 0) {
+                throw new IllegalArgumentException("Deferred bandwidth must not be negative");
+            }
+            this.deferredBandwidth = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Creates a new download policy using this builder's configuration.
+         *
+         * @return new download policy
+         */
+        @NotNull
+        public DownloadPolicy build() {
+            return new DownloadPolicy(this);
+        }
+
+        @NotNull
+        private static Duration requirePositive(@NotNull Duration duration, @NotNull String name) {
+            if (requireNonNull(duration, name).isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a transfer is aborted because it stopped or became slower than the
+ * throughput floor of the {@link DownloadPolicy}.
+ */
+public class DownloadStalledException extends IOException {
+    /**
+     * Creates a new download stalled exception.
+     *
+     * @param message the detail message
+     */
+    public DownloadStalledException(@NotNull String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,354 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.LibbyProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Transport} based on the {@code java.net.http.HttpClient} introduced in Java 11.
+ * <p>
+ * A single persistent client is shared by all requests with the same connect timeout, so
+ * connections (and TLS sessions) to the same repository are pooled and, when supported by
+ * the server, multiplexed over HTTP/2.
+ * <p>
+ * Since libby is built against Java 8, the client is driven through reflection.
+ * Non-HTTP URLs are delegated to an {@link URLConnectionTransport}.
+ */
+public class HttpClientTransport implements Transport {
+    /**
+     * Reflected HttpClient classes and methods, null if not available
+     */
+    private static final Method newClientBuilder, clientBuilderVersion, clientBuilderFollowRedirects, clientBuilderConnectTimeout, clientBuilderBuild;
+    private static final Method newRequestBuilder, requestBuilderHeader, requestBuilderTimeout, requestBuilderBuild;
+    private static final Method clientSend, ofInputStream;
+    private static final Method responseStatusCode, responseBody, responseHeaders, responseUri, headersFirstValue;
+    private static final Object version2, redirectNormal;
+
+    static {
+        Method newBuilder = null, version = null, followRedirects = null, connectTimeout = null, build = null;
+        Method newRequest = null, header = null, timeout = null, buildRequest = null;
+        Method send = null, inputStreamHandler = null;
+        Method statusCode = null, body = null, headers = null, uri = null, firstValue = null;
+        Object http2 = null, normal = null;
+        try {
+            Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+            Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+            Class<?> bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> bodyHandlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+
+            newBuilder = clientClass.getMethod("newBuilder");
+            version = clientBuilderClass.getMethod("version", versionClass);
+            followRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+            connectTimeout = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+            build = clientBuilderClass.getMethod("build");
+            newRequest = requestClass.getMethod("newBuilder", URI.class);
+            header = requestBuilderClass.getMethod("header", String.class, String.class);
+            timeout = requestBuilderClass.getMethod("timeout", Duration.class);
+            buildRequest = requestBuilderClass.getMethod("build");
+            send = clientClass.getMethod("send", requestClass, bodyHandlerClass);
+            inputStreamHandler = bodyHandlersClass.getMethod("ofInputStream");
+            statusCode = responseClass.getMethod("statusCode");
+            body = responseClass.getMethod("body");
+            headers = responseClass.getMethod("headers");
+            uri = responseClass.getMethod("uri");
+            firstValue = headersClass.getMethod("firstValue", String.class);
+            http2 = versionClass.getField("HTTP_2").get(null);
+            normal = redirectClass.getField("NORMAL").get(null);
+        } catch (Exception ignored) {
+            newBuilder = null; // Not supported, running on Java 8 or java.net.http isn't available
+        } finally {
+            newClientBuilder = newBuilder;
+            clientBuilderVersion = version;
+            clientBuilderFollowRedirects = followRedirects;
+            clientBuilderConnectTimeout = connectTimeout;
+            clientBuilderBuild = build;
+            newRequestBuilder = newRequest;
+            requestBuilderHeader = header;
+            requestBuilderTimeout = timeout;
+            requestBuilderBuild = buildRequest;
+            clientSend = send;
+            ofInputStream = inputStreamHandler;
+            responseStatusCode = statusCode;
+            responseBody = body;
+            responseHeaders = headers;
+            responseUri = uri;
+            headersFirstValue = firstValue;
+            version2 = http2;
+            redirectNormal = normal;
+        }
+    }
+
+    /**
+     * Clients by connect timeout, since the HttpClient only supports a per-client connect timeout
+     */
+    private final Map<Integer, Object> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Transport used for non-HTTP URLs
+     */
+    private final URLConnectionTransport fallback = new URLConnectionTransport();
+
+    /**
+     * Lazily-initialized scheduler used to enforce read timeouts on response bodies
+     */
+    private volatile ScheduledExecutorService readTimeoutScheduler;
+
+    /**
+     * Creates a new HttpClient transport.
+     *
+     * @throws UnsupportedOperationException if the HttpClient isn't supported by the running JVM
+     * @see #isSupported()
+     */
+    public HttpClientTransport() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("java.net.http.HttpClient is not available, Java 11+ is required");
+        }
+    }
+
+    /**
+     * Checks whether the running JVM supports the HttpClient.
+     *
+     * @return true if the HttpClient is supported, false otherwise
+     */
+    public static boolean isSupported() {
+        return newClientBuilder != null;
+    }
+
+    @NotNull
+    @Override
+    public Response get(@NotNull String url, @NotNull Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException {
+        requireNonNull(headers, "headers");
+        URI uri = URI.create(requireNonNull(url, "url"));
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return fallback.get(url, headers, connectTimeout, readTimeout);
+        }
+
+        try {
+            Object requestBuilder = newRequestBuilder.invoke(null, uri);
+            requestBuilderHeader.invoke(requestBuilder, "User-Agent", LibbyProperties.HTTP_USER_AGENT);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                requestBuilderHeader.invoke(requestBuilder, header.getKey(), header.getValue());
+            }
+            // The request timeout applies until the response headers are received
+            requestBuilderTimeout.invoke(requestBuilder, Duration.ofMillis((long) connectTimeout + readTimeout));
+            Object request = requestBuilderBuild.invoke(requestBuilder);
+
+            Object response = clientSend.invoke(getClient(connectTimeout), request, ofInputStream.invoke(null));
+            int statusCode = (int) responseStatusCode.invoke(response);
+            InputStream body = (InputStream) responseBody.invoke(response);
+            if (statusCode >= 400) {
+                body.close();
+                if (statusCode == HttpURLConnection.HTTP_NOT_FOUND || statusCode == HttpURLConnection.HTTP_GONE) {
+                    throw new FileNotFoundException(url);
+                }
+                throw new HttpStatusException(url, statusCode);
+            }
+
+            return new HttpClientResponse(response, statusCode, new ReadTimeoutInputStream(body, readTimeout));
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Request interrupted: " + url);
+            } else if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @NotNull
+    private Object getClient(int connectTimeout) {
+        return clients.computeIfAbsent(connectTimeout, timeout -> {
+            try {
+                Object builder = newClientBuilder.invoke(null);
+                clientBuilderVersion.invoke(builder, version2);
+                clientBuilderFollowRedirects.invoke(builder, redirectNormal);
+                if (timeout > 0) {
+                    clientBuilderConnectTimeout.invoke(builder, Duration.ofMillis(timeout));
+                }
+                return clientBuilderBuild.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @NotNull
+    private ScheduledExecutorService getReadTimeoutScheduler() {
+        ScheduledExecutorService scheduler = readTimeoutScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = readTimeoutScheduler;
+                if (scheduler == null) {
+                    readTimeoutScheduler = scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "libby-http-read-timeout");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Closes the response body when a read blocks for longer than the read timeout, since
+     * the HttpClient doesn't support read timeouts on response bodies.
+     */
+    private final class ReadTimeoutInputStream extends FilterInputStream {
+        private final long readTimeoutNanos;
+        private final ScheduledFuture<?> watchdog;
+        private volatile long readStart;
+        private volatile boolean timedOut;
+
+        private ReadTimeoutInputStream(@NotNull InputStream in, int readTimeout) {
+            super(in);
+            this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+            if (readTimeout > 0) {
+                long period = Math.max(readTimeout / 4, 50);
+                this.watchdog = getReadTimeoutScheduler().scheduleWithFixedDelay(this::checkTimeout, period, period, TimeUnit.MILLISECONDS);
+            } else {
+                this.watchdog = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            readStart = System.nanoTime();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut ? new SocketTimeoutException("Read timed out") : e;
+            } finally {
+                readStart = 0;
+            }
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            readStart = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw timedOut ? new SocketTimeoutException("Read timed out") : e;
+            } finally {
+                readStart = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            super.close();
+        }
+
+        private void checkTimeout() {
+            long start = readStart;
+            if (start != 0 && System.nanoTime() - start > readTimeoutNanos) {
+                timedOut = true;
+                watchdog.cancel(false);
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final class HttpClientResponse implements Response {
+        private final Object response;
+        private final int statusCode;
+        private final InputStream body;
+
+        private HttpClientResponse(@NotNull Object response, int statusCode, @NotNull InputStream body) {
+            this.response = response;
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        @NotNull
+        @Override
+        public String getUrl() {
+            try {
+                return responseUri.invoke(response).toString();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NotNull String name) {
+            try {
+                Optional<?> value = (Optional<?>) headersFirstValue.invoke(responseHeaders.invoke(response), name);
+                return value.isPresent() ? (String) value.get() : null;
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            String length = getHeader("Content-Length");
+            if (length == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @NotNull
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers a request with an error status code, other than the
+ * ones meaning that the resource doesn't exist.
+ *
+ * @see Transport#get(String, java.util.Map, int, int)
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+
+    /**
+     * Creates a new HTTP status exception.
+     *
+     * @param url        the requested URL
+     * @param statusCode the status code returned by the server
+     */
+    public HttpStatusException(@NotNull String url, int statusCode) {
+        super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the status code returned by the server.
+     *
+     * @return the status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
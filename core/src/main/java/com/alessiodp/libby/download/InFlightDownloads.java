@@ -0,0 +1,236 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.Library;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * JVM-wide coordination of library downloads, shared by every library manager
+ * in the JVM, including the ones of differently relocated copies of Libby.
+ * <p>
+ * The first manager requesting an artifact downloads it, while the others wait
+ * for it to finish and reuse the downloaded file. The state is kept in the
+ * {@link System#getProperties() system properties}, using only string values so
+ * that no Libby class is shared between copies.
+ */
+public final class InFlightDownloads {
+    /**
+     * Prefix of the system properties holding the state of the downloads
+     */
+    private static final String PREFIX = "libby.download.";
+
+    /**
+     * States of a download, formatted as {@code pending:<owner>:<waiters>} and {@code done:<owner>:<waiters>:<file>}
+     */
+    private static final String PENDING = "pending:";
+    private static final String DONE = "done:";
+
+    /**
+     * Interval between checks while waiting for a download
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private InFlightDownloads() {
+        throw new UnsupportedOperationException("Util class.");
+    }
+
+    /**
+     * Gets the key identifying the downloads of a library, made of its coordinates and checksum.
+     *
+     * @param library the library
+     * @return the key
+     */
+    @NotNull
+    public static String getKey(@NotNull Library library) {
+        requireNonNull(library, "library");
+        return PREFIX + library + '@' + (library.hasChecksum() ? Base64.getEncoder().encodeToString(library.getChecksum()) : "-");
+    }
+
+    /**
+     * Creates a new token identifying a download owner.
+     *
+     * @return the token
+     */
+    @NotNull
+    public static String createToken() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Acquires the download with the provided key. If another owner is downloading it,
+     * waits until the download finishes or the timeout expires.
+     *
+     * @param key     the download key
+     * @param token   the token of the caller
+     * @param timeout the maximum time to wait for another owner
+     * @return the file downloaded by another owner, or null if the caller must download the
+     * artifact itself (because it acquired the download or the other owner failed or timed out)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Nullable
+    public static Path acquire(@NotNull String key, @NotNull String token, @NotNull Duration timeout) throws InterruptedException {
+        Properties properties = System.getProperties();
+        String pending = PENDING + requireNonNull(token, "token") + ":0";
+        long deadline = System.nanoTime() + requireNonNull(timeout, "timeout").toNanos();
+        // The owner of the download the caller is registered as a waiter of
+        String waitingFor = null;
+        try {
+            while (true) {
+                Object state = properties.putIfAbsent(requireNonNull(key, "key"), pending);
+                if (state == null) {
+                    waitingFor = null;
+                    return null;
+                }
+
+                String[] parts = state.toString().split(":", 4);
+                String owner = parts[1];
+                int waiters = Integer.parseInt(parts[2]);
+                if (!owner.equals(waitingFor)) {
+                    // Not registered to this download, the previous owner released it
+                    waitingFor = null;
+                }
+
+                if (state.toString().startsWith(DONE)) {
+                    Path file = toPath(parts[3]);
+                    if (file != null && Files.isRegularFile(file)) {
+                        return file;
+                    }
+
+                    // The downloaded file is gone, download it again
+                    if (properties.replace(key, state, pending)) {
+                        waitingFor = null;
+                        return null;
+                    }
+                    continue;
+                }
+
+                if (waitingFor == null) {
+                    if (properties.replace(key, state, PENDING + owner + ':' + (waiters + 1))) {
+                        waitingFor = owner;
+                    }
+                    continue;
+                }
+
+                if (System.nanoTime() - deadline >= 0) {
+                    return null;
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+        } finally {
+            if (waitingFor != null) {
+                leave(properties, key, waitingFor);
+            }
+        }
+    }
+
+    /**
+     * Checks whether other managers are waiting for the download with the provided key.
+     *
+     * @param key the download key
+     * @return true if the download is pending and has waiters
+     */
+    public static boolean isAwaited(@NotNull String key) {
+        Object state = System.getProperties().get(requireNonNull(key, "key"));
+        if (state == null || !state.toString().startsWith(PENDING)) {
+            return false;
+        }
+        String[] parts = state.toString().split(":", 4);
+        return Integer.parseInt(parts[2]) > 0;
+    }
+
+    /**
+     * Marks an acquired download as finished, letting the waiting managers reuse the file.
+     * The state of the download is removed once every waiting manager got the file.
+     *
+     * @param key   the download key
+     * @param token the token used to acquire the download
+     * @param file  the downloaded file
+     */
+    public static void complete(@NotNull String key, @NotNull String token, @NotNull Path file) {
+        Properties properties = System.getProperties();
+        while (true) {
+            Object state = properties.get(key);
+            if (state == null || !state.toString().startsWith(PENDING + token + ':')) {
+                return;
+            }
+
+            int waiters = Integer.parseInt(state.toString().substring(PENDING.length() + token.length() + 1));
+            boolean replaced = waiters > 0
+                    ? properties.replace(key, state, DONE + token + ':' + waiters + ':' + file.toAbsolutePath())
+                    : properties.remove(key, state);
+            if (replaced) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases an acquired download which failed, letting the next manager try.
+     *
+     * @param key   the download key
+     * @param token the token used to acquire the download
+     */
+    public static void release(@NotNull String key, @NotNull String token) {
+        Properties properties = System.getProperties();
+        while (true) {
+            Object state = properties.get(key);
+            if (state == null || !state.toString().startsWith(PENDING + token + ':') || properties.remove(key, state)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Unregisters a waiter of a download, removing the state of the download
+     * if it's finished and this was the last waiter.
+     *
+     * @param properties the system properties
+     * @param key        the download key
+     * @param owner      the token of the owner of the download
+     */
+    private static void leave(@NotNull Properties properties, @NotNull String key, @NotNull String owner) {
+        while (true) {
+            Object state = properties.get(key);
+            if (state == null) {
+                return;
+            }
+
+            String[] parts = state.toString().split(":", 4);
+            if (!parts[1].equals(owner)) {
+                return;
+            }
+
+            int waiters = Integer.parseInt(parts[2]);
+            boolean replaced;
+            if (waiters <= 1 && state.toString().startsWith(DONE)) {
+                replaced = properties.remove(key, state);
+            } else {
+                parts[2] = Integer.toString(Math.max(0, waiters - 1));
+                replaced = properties.replace(key, state, String.join(":", parts));
+            }
+            if (replaced) {
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    private static Path toPath(@NotNull String path) {
+        try {
+            return Paths.get(path);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
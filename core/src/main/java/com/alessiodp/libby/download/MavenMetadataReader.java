@@ -0,0 +1,172 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streaming reader of the {@code maven-metadata.xml} of snapshot versions.
+ * <p>
+ * The metadata is read without building a document, stopping as soon as the version of
+ * the requested artifact is known. The reader can be reused and shared between threads.
+ * <p>
+ * Example metadata:
+ * <pre>{@code
+ * <metadata>
+ *   <versioning>
+ *     <snapshot>
+ *       <timestamp>20220617.013635</timestamp>
+ *       <buildNumber>12</buildNumber>
+ *     </snapshot>
+ *     <snapshotVersions>
+ *       <snapshotVersion>
+ *         <classifier>sources</classifier>
+ *         <extension>jar</extension>
+ *         <value>1.0-20220617.013635-12</value>
+ *       </snapshotVersion>
+ *     </snapshotVersions>
+ *   </versioning>
+ * </metadata>
+ * }</pre>
+ */
+public class MavenMetadataReader {
+    private final XMLInputFactory factory;
+
+    /**
+     * Creates a new metadata reader.
+     */
+    public MavenMetadataReader() {
+        factory = XMLInputFactory.newFactory();
+        // Metadata never needs a DTD, don't let repositories make the parser fetch anything
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Reads the version of a snapshot artifact from its metadata.
+     * <p>
+     * The {@code <snapshotVersion>} entry matching the classifier and the extension of the
+     * artifact is used if present. Otherwise, the version is built from the timestamp and the
+     * build number of the {@code <snapshot>} element, or is the base version for local copies.
+     *
+     * @param inputStream the metadata, it isn't closed
+     * @param version     the base version of the artifact, like {@code 1.0-SNAPSHOT}
+     * @param classifier  the classifier of the artifact or null
+     * @param extension   the extension of the artifact, like {@code jar}
+     * @return the version of the artifact, like {@code 1.0-20220617.013635-12}, or null if the metadata has no snapshot information
+     * @throws XMLStreamException if the metadata is malformed or couldn't be read
+     */
+    @Nullable
+    public String readSnapshotVersion(@NotNull InputStream inputStream, @NotNull String version, @Nullable String classifier, @NotNull String extension) throws XMLStreamException {
+        requireNonNull(inputStream, "inputStream");
+        requireNonNull(version, "version");
+        requireNonNull(extension, "extension");
+        String artifactClassifier = classifier != null ? classifier : "";
+
+        XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+        try {
+            String timestamp = null;
+            String buildNumber = null;
+            boolean localCopy = false;
+
+            String entryClassifier = "";
+            String entryExtension = null;
+            String entryValue = null;
+
+            // Names of the open elements up to <snapshotVersion>, deeper elements are skipped
+            String[] path = new String[4];
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (depth == 3 && isPath(path, "metadata", "versioning", "snapshot")) {
+                        // getElementText() consumes the end of the element
+                        switch (name) {
+                            case "timestamp":
+                                timestamp = reader.getElementText().trim();
+                                continue;
+                            case "buildNumber":
+                                buildNumber = reader.getElementText().trim();
+                                continue;
+                            case "localCopy":
+                                localCopy = Boolean.parseBoolean(reader.getElementText().trim());
+                                continue;
+                        }
+                    } else if (depth == 4 && isPath(path, "metadata", "versioning", "snapshotVersions", "snapshotVersion")) {
+                        switch (name) {
+                            case "classifier":
+                                entryClassifier = reader.getElementText().trim();
+                                continue;
+                            case "extension":
+                                entryExtension = reader.getElementText().trim();
+                                continue;
+                            case "value":
+                                entryValue = reader.getElementText().trim();
+                                continue;
+                        }
+                    } else if (depth == 0 && !name.equals("metadata")) {
+                        return null;
+                    }
+
+                    if (depth < path.length) {
+                        path[depth] = name;
+                    }
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    if (depth == 3 && isPath(path, "metadata", "versioning", "snapshotVersions", "snapshotVersion")) {
+                        if (entryValue != null && artifactClassifier.equals(entryClassifier) && extension.equals(entryExtension)) {
+                            return entryValue;
+                        }
+                        entryClassifier = "";
+                        entryExtension = null;
+                        entryValue = null;
+                    } else if (depth == 1 && isPath(path, "metadata", "versioning")) {
+                        // Everything needed is inside <versioning>
+                        break;
+                    }
+                }
+            }
+
+            if (localCopy) {
+                return version;
+            }
+            if (timestamp == null || timestamp.isEmpty() || buildNumber == null || buildNumber.isEmpty()) {
+                return null;
+            }
+
+            // It should never happen that a snapshot version doesn't end in "-SNAPSHOT", but better be sure
+            if (version.endsWith("-SNAPSHOT")) {
+                version = version.substring(0, version.length() - "-SNAPSHOT".length());
+            }
+            return version + '-' + timestamp + '-' + buildNumber;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Checks whether the open elements start with the provided names.
+     *
+     * @param path  the names of the open elements
+     * @param names the expected names
+     * @return true if the open elements start with the names
+     */
+    private static boolean isPath(@NotNull String[] path, @NotNull String... names) {
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].equals(path[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,288 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tracks the health of the repositories contacted by the library manager.
+ * <p>
+ * After {@link #getFailureThreshold()} consecutive connection failures, the circuit of a
+ * repository is opened and requests to it are skipped for the {@link #getCoolDown() cool-down}
+ * period. Then, a single request is let through: if it succeeds the circuit is closed again,
+ * otherwise it's reopened for another cool-down period. A request that ends without an outcome,
+ * for example because it was cancelled, must {@link #release(String) release} the circuit.
+ * <p>
+ * Repositories are tracked by origin (scheme, host and port), since connection failures
+ * affect every repository hosted on the same server. Local repositories are never tracked.
+ *
+ * @see com.alessiodp.libby.LibraryManager#setRepositoryHealth(RepositoryHealth)
+ */
+public class RepositoryHealth {
+    /**
+     * The state of the circuit of a repository.
+     */
+    public enum State {
+        /**
+         * The repository is reachable, requests are performed normally.
+         */
+        CLOSED,
+        /**
+         * The repository is unreachable, requests are skipped until the cool-down period ends.
+         */
+        OPEN,
+        /**
+         * The cool-down period ended, a single request is let through to check the repository.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Consecutive connection failures after which the circuit is opened
+     */
+    private final int failureThreshold;
+
+    /**
+     * Time during which an open circuit skips requests
+     */
+    private final Duration coolDown;
+
+    /**
+     * Circuits by repository origin
+     */
+    private final Map<String, Circuit> circuits = new LinkedHashMap<>();
+
+    /**
+     * Repositories skipped at least once
+     */
+    private final Set<String> skipped = new LinkedHashSet<>();
+
+    /**
+     * Creates a new repository health tracker.
+     *
+     * @param failureThreshold consecutive connection failures after which the circuit of a repository is opened
+     * @param coolDown         time during which requests to a repository with an open circuit are skipped
+     */
+    public RepositoryHealth(int failureThreshold, @NotNull Duration coolDown) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Failure threshold must be positive");
+        }
+        if (requireNonNull(coolDown, "coolDown").isNegative()) {
+            throw new IllegalArgumentException("Cool-down must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.coolDown = coolDown;
+    }
+
+    /**
+     * Gets the number of consecutive connection failures after which the circuit of a repository is opened.
+     *
+     * @return the failure threshold
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Gets the time during which requests to a repository with an open circuit are skipped.
+     *
+     * @return the cool-down period
+     */
+    @NotNull
+    public Duration getCoolDown() {
+        return coolDown;
+    }
+
+    /**
+     * Checks whether a request to the provided URL can be performed. If the circuit of its repository
+     * is half-open, only the first caller is allowed to perform the request.
+     *
+     * @param url the URL to request
+     * @return true if the request can be performed, false if it must be skipped
+     */
+    public synchronized boolean tryAcquire(@NotNull String url) {
+        String origin = getOrigin(url);
+        Circuit circuit = origin != null ? circuits.get(origin) : null;
+        if (circuit == null || circuit.state == State.CLOSED) {
+            return true;
+        }
+
+        if (circuit.state == State.OPEN && System.nanoTime() - circuit.openedAt >= coolDown.toNanos()) {
+            // Let a single request through
+            circuit.state = State.HALF_OPEN;
+            circuit.probe = Thread.currentThread();
+            return true;
+        }
+
+        skipped.add(origin);
+        return false;
+    }
+
+    /**
+     * Releases a request to the provided URL that ended without recording a success or a failure,
+     * for example because it was cancelled. If the request was the one let through a half-open
+     * circuit, the circuit is reopened for another cool-down period, so that a later request
+     * checks the repository again.
+     *
+     * @param url the requested URL
+     */
+    public synchronized void release(@NotNull String url) {
+        String origin = getOrigin(url);
+        Circuit circuit = origin != null ? circuits.get(origin) : null;
+        if (circuit != null && circuit.state == State.HALF_OPEN && circuit.probe == Thread.currentThread()) {
+            circuit.open();
+        }
+    }
+
+    /**
+     * Records that the repository of the provided URL answered a request.
+     *
+     * @param url the requested URL
+     */
+    public synchronized void recordSuccess(@NotNull String url) {
+        String origin = getOrigin(url);
+        if (origin != null) {
+            circuits.computeIfAbsent(origin, k -> new Circuit()).close();
+        }
+    }
+
+    /**
+     * Records a failed request to the provided URL. Only connection failures are taken
+     * into account, other errors are recorded as a success since the repository answered.
+     *
+     * @param url       the requested URL
+     * @param exception the exception thrown by the request
+     * @return true if the circuit of the repository has just been opened, false otherwise
+     * @see #isConnectionFailure(IOException)
+     */
+    public synchronized boolean recordFailure(@NotNull String url, @NotNull IOException exception) {
+        String origin = getOrigin(url);
+        if (origin == null) {
+            return false;
+        }
+
+        Circuit circuit = circuits.computeIfAbsent(origin, k -> new Circuit());
+        if (!isConnectionFailure(exception)) {
+            circuit.close();
+            return false;
+        }
+
+        circuit.failures++;
+        if (circuit.state == State.HALF_OPEN || (circuit.state == State.CLOSED && circuit.failures >= failureThreshold)) {
+            circuit.open();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the state of the circuit of the repository of the provided URL.
+     *
+     * @param url a repository URL or a URL of an artifact in the repository
+     * @return the state of the circuit
+     */
+    @NotNull
+    public synchronized State getState(@NotNull String url) {
+        String origin = getOrigin(url);
+        Circuit circuit = origin != null ? circuits.get(origin) : null;
+        return circuit != null ? circuit.state : State.CLOSED;
+    }
+
+    /**
+     * Gets the state of the circuits of all the contacted repositories.
+     *
+     * @return an unmodifiable map of repository origins to circuit states
+     */
+    @NotNull
+    public synchronized Map<String, State> getStates() {
+        Map<String, State> states = new LinkedHashMap<>();
+        circuits.forEach((origin, circuit) -> states.put(origin, circuit.state));
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Gets the repositories that were skipped at least once because their circuit was open.
+     *
+     * @return an unmodifiable set of repository origins
+     */
+    @NotNull
+    public synchronized Set<String> getSkippedRepositories() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(skipped));
+    }
+
+    /**
+     * Closes all the circuits and forgets the skipped repositories.
+     */
+    public synchronized void reset() {
+        circuits.clear();
+        skipped.clear();
+    }
+
+    /**
+     * Checks whether the provided exception means that the repository couldn't be reached.
+     *
+     * @param exception the exception thrown by a request
+     * @return true if it's a connection failure, false otherwise
+     */
+    public static boolean isConnectionFailure(@NotNull IOException exception) {
+        return exception instanceof UnknownHostException
+                || exception instanceof ConnectException
+                || exception instanceof NoRouteToHostException
+                || exception instanceof SocketTimeoutException
+                // java.net.http.HttpConnectTimeoutException and HttpTimeoutException, not available in Java 8
+                || exception.getClass().getName().startsWith("java.net.http.Http") && exception.getClass().getName().endsWith("TimeoutException");
+    }
+
+    /**
+     * Gets the origin (scheme, host and port) of the provided URL.
+     *
+     * @param url the URL
+     * @return the origin or null if the URL doesn't refer to a remote repository
+     */
+    @Nullable
+    public static String getOrigin(@NotNull String url) {
+        try {
+            URI uri = new URI(requireNonNull(url, "url"));
+            if (uri.getScheme() == null || uri.getRawAuthority() == null || "file".equalsIgnoreCase(uri.getScheme())) {
+                return null;
+            }
+            return uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static final class Circuit {
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private Thread probe;
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probe = null;
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            failures = 0;
+            probe = null;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is skipped because the circuit of the repository is open.
+ *
+ * @see RepositoryHealth
+ */
+public class RepositoryUnavailableException extends IOException {
+    /**
+     * Creates a new repository unavailable exception.
+     *
+     * @param url the skipped URL
+     */
+    public RepositoryUnavailableException(@NotNull String url) {
+        super("Repository unavailable, skipped request to " + url);
+    }
+}
@@ -0,0 +1,110 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The transport layer used by the library manager to fetch artifacts and
+ * metadata from repositories.
+ * <p>
+ * Implementations are expected to be thread-safe and to reuse connections
+ * between requests whenever possible.
+ *
+ * @see com.alessiodp.libby.LibraryManager#setTransport(Transport)
+ */
+public interface Transport {
+    /**
+     * Performs a GET request to the provided URL.
+     * <p>
+     * Successful (2xx) and not modified (304) responses are returned to the caller,
+     * which must close them after use.
+     *
+     * @param url            the URL to request
+     * @param headers        additional request headers
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout    read timeout in milliseconds
+     * @return the response
+     * @throws FileNotFoundException if the server reported that the resource doesn't exist
+     * @throws HttpStatusException   if the server returned an error
+     * @throws IOException           if the request couldn't be completed
+     */
+    @NotNull
+    Response get(@NotNull String url, @NotNull Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException;
+
+    /**
+     * Creates the default transport for the running JVM.
+     * <p>
+     * On Java 11+ a connection-pooled {@link HttpClientTransport} with HTTP/2 support is
+     * returned, otherwise an {@link URLConnectionTransport}.
+     *
+     * @return the default transport
+     */
+    @NotNull
+    static Transport createDefault() {
+        return HttpClientTransport.isSupported() ? new HttpClientTransport() : new URLConnectionTransport();
+    }
+
+    /**
+     * A response returned by a {@link Transport}.
+     */
+    interface Response extends Closeable {
+        /**
+         * Gets the URL of the response, which may differ from the requested one if redirects were followed.
+         *
+         * @return the URL of the response
+         */
+        @NotNull
+        String getUrl();
+
+        /**
+         * Gets the HTTP status code of the response. Non-HTTP responses always have status code 200.
+         *
+         * @return the status code
+         */
+        int getStatusCode();
+
+        /**
+         * Gets the value of a response header.
+         *
+         * @param name the name of the header, case-insensitive
+         * @return the value of the header or null if not present
+         */
+        @Nullable
+        String getHeader(@NotNull String name);
+
+        /**
+         * Gets the length of the response body.
+         *
+         * @return the length of the response body or -1 if unknown
+         */
+        long getContentLength();
+
+        /**
+         * Gets the response body.
+         *
+         * @return the response body
+         * @throws IOException if the body couldn't be opened
+         */
+        @NotNull
+        InputStream getBody() throws IOException;
+
+        /**
+         * Aborts the response from another thread, so that a read of the body blocked on the
+         * network fails instead of waiting for the read timeout. The connection isn't reused.
+         * <p>
+         * By default, the response is closed.
+         */
+        default void abort() {
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.LibbyProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Transport} based on {@link URLConnection}, available on every Java version
+ * and supporting every URL scheme known by the JVM (like {@code file:} URLs).
+ * <p>
+ * HTTP connections are kept alive and reused by the JVM's connection cache.
+ */
+public class URLConnectionTransport implements Transport {
+
+    @NotNull
+    @Override
+    public Response get(@NotNull String url, @NotNull Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException {
+        URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
+
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
+        for (Map.Entry<String, String> header : requireNonNull(headers, "headers").entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (!(connection instanceof HttpURLConnection)) {
+            // Opening the input stream throws FileNotFoundException if the file doesn't exist
+            return new URLConnectionResponse(connection, 200, connection.getInputStream());
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        int statusCode = httpConnection.getResponseCode();
+        if (statusCode >= 400) {
+            // Consume the error stream to allow the connection to be reused
+            InputStream error = httpConnection.getErrorStream();
+            if (error != null) {
+                error.close();
+            }
+
+            if (statusCode == HttpURLConnection.HTTP_NOT_FOUND || statusCode == HttpURLConnection.HTTP_GONE) {
+                throw new FileNotFoundException(url);
+            }
+            throw new HttpStatusException(url, statusCode);
+        }
+
+        return new URLConnectionResponse(connection, statusCode, null);
+    }
+
+    private static final class URLConnectionResponse implements Response {
+        private final URLConnection connection;
+        private final int statusCode;
+        private InputStream body;
+
+        private URLConnectionResponse(@NotNull URLConnection connection, int statusCode, @Nullable InputStream body) {
+            this.connection = connection;
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        @NotNull
+        @Override
+        public String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NotNull String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @NotNull
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = statusCode == HttpURLConnection.HTTP_NOT_MODIFIED ? new ByteArrayInputStream(new byte[0]) : connection.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!(connection instanceof HttpURLConnection)) {
+                if (body != null) {
+                    body.close();
+                }
+                return;
+            }
+
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // There's no body to drain, give the connection back to the keep-alive cache
+                connection.getInputStream().close();
+            } else if (body != null) {
+                body.close();
+            } else {
+                // Draining a body which hasn't been read would download it, drop the connection instead
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+
+        @Override
+        public void abort() {
+            // Closing the body could wait for a blocked read, disconnecting closes the socket
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            } else {
+                Response.super.abort();
+            }
+        }
+    }
+}
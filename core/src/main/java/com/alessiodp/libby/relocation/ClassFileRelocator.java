@@ -0,0 +1,439 @@
+package com.alessiodp.libby.relocation;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Relocates class files by rewriting their constant pool in place, without
+ * parsing nor regenerating the bytecode.
+ * <p>
+ * Every class name in a class file is stored in a {@code CONSTANT_Utf8} entry of its constant
+ * pool, so relocating a class is a matter of finding how every such entry is used (a class
+ * name, a descriptor, a signature or a string constant) and relocating it accordingly.
+ * The few entries used in more than one way with different results are duplicated.
+ * <p>
+ * Class names are relocated like the ASM remapper used by Luck's Jar Relocator does.
+ */
+final class ClassFileRelocator {
+    // Constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    // How a CONSTANT_Utf8 entry is used
+    private static final byte NAME = 1;
+    private static final byte VALUE = 2;
+    private static final byte DESCRIPTOR = 3;
+
+    private final RelocationRules rules;
+
+    ClassFileRelocator(@NotNull RelocationRules rules) {
+        this.rules = requireNonNull(rules, "rules");
+    }
+
+    /**
+     * Relocates a class file.
+     *
+     * @param classFile the class file
+     * @return the relocated class file, which is the provided array if nothing was relocated
+     * @throws IllegalArgumentException if the class file is malformed
+     */
+    byte @NotNull [] relocate(byte @NotNull [] classFile) {
+        try {
+            return new Rewriter(classFile).rewrite();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * The rewriting of a single class file.
+     */
+    private final class Rewriter {
+        private final byte[] bytes;
+        private final int poolCount;
+        private final int[] offsets;
+        private final int poolEnd;
+        // Usages of every Utf8 entry and the offsets of the indexes referring to it
+        private final List<Reference> references = new ArrayList<>();
+
+        private Rewriter(byte @NotNull [] bytes) {
+            this.bytes = bytes;
+            if (u4(0) != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+
+            poolCount = u2(8);
+            offsets = new int[poolCount];
+            int offset = 10;
+            for (int i = 1; i < poolCount; i++) {
+                offsets[i] = offset;
+                int tag = bytes[offset];
+                switch (tag) {
+                    case UTF8:
+                        offset += 3 + u2(offset + 1);
+                        break;
+                    case CLASS:
+                        reference(offset + 1, NAME);
+                        offset += 3;
+                        break;
+                    case STRING:
+                        reference(offset + 1, VALUE);
+                        offset += 3;
+                        break;
+                    case METHOD_TYPE:
+                        reference(offset + 1, DESCRIPTOR);
+                        offset += 3;
+                        break;
+                    case PACKAGE:
+                        reference(offset + 1, NAME);
+                        offset += 3;
+                        break;
+                    case MODULE:
+                        offset += 3;
+                        break;
+                    case NAME_AND_TYPE:
+                        reference(offset + 3, DESCRIPTOR);
+                        offset += 5;
+                        break;
+                    case METHOD_HANDLE:
+                        offset += 4;
+                        break;
+                    case INTEGER: case FLOAT: case FIELD_REF: case METHOD_REF: case INTERFACE_METHOD_REF: case DYNAMIC: case INVOKE_DYNAMIC:
+                        offset += 5;
+                        break;
+                    case LONG: case DOUBLE:
+                        offset += 9;
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+            poolEnd = offset;
+        }
+
+        private byte @NotNull [] rewrite() {
+            scanMembers();
+
+            // Relocate every used Utf8 entry, for each of its usages
+            String[][] relocated = new String[poolCount][];
+            boolean changed = false;
+            for (Reference reference : references) {
+                String[] usages = relocated[reference.index];
+                if (usages == null) {
+                    usages = relocated[reference.index] = new String[DESCRIPTOR + 1];
+                }
+                if (usages[reference.usage] == null) {
+                    String value = utf8(reference.index);
+                    String result;
+                    switch (reference.usage) {
+                        case NAME:
+                            result = value.startsWith("[") ? rules.relocateDescriptor(value) : rules.relocatePath(value);
+                            break;
+                        case VALUE:
+                            result = rules.relocateValue(value);
+                            break;
+                        default:
+                            result = rules.relocateDescriptor(value);
+                    }
+                    usages[reference.usage] = result != null ? result : value;
+                    changed |= result != null;
+                }
+            }
+            if (!changed) {
+                return bytes;
+            }
+
+            // Entries used in different ways which relocate differently are
+            // kept for their first usage and duplicated for the others
+            byte[] patched = bytes.clone();
+            String[] replacements = new String[poolCount];
+            List<String> appended = new ArrayList<>();
+            for (Reference reference : references) {
+                String value = relocated[reference.index][reference.usage];
+                String replacement = replacements[reference.index];
+                if (replacement == null) {
+                    replacements[reference.index] = value;
+                } else if (!replacement.equals(value)) {
+                    int index = appended.indexOf(value);
+                    if (index == -1) {
+                        index = appended.size();
+                        appended.add(value);
+                    }
+                    index += poolCount;
+                    if (index >= 0xFFFF) {
+                        throw new IllegalArgumentException("Constant pool too large");
+                    }
+                    patched[reference.offset] = (byte) (index >>> 8);
+                    patched[reference.offset + 1] = (byte) index;
+                }
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + 256);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.write(patched, 0, 8);
+                out.writeShort(poolCount + appended.size());
+                for (int i = 1; i < poolCount; i++) {
+                    int start = offsets[i];
+                    if (start == 0) {
+                        // Second slot of a long or a double
+                        continue;
+                    }
+                    if (replacements[i] != null) {
+                        out.writeByte(UTF8);
+                        out.writeUTF(replacements[i]);
+                    } else {
+                        out.write(patched, start, nextEntry(i) - start);
+                    }
+                }
+                for (String value : appended) {
+                    out.writeByte(UTF8);
+                    out.writeUTF(value);
+                }
+                out.write(patched, poolEnd, patched.length - poolEnd);
+            } catch (IOException e) {
+                // Only thrown for strings too long for the class file format
+                throw new UncheckedIOException(e);
+            }
+            return buffer.toByteArray();
+        }
+
+        private int nextEntry(int index) {
+            for (int i = index + 1; i < poolCount; i++) {
+                if (offsets[i] != 0) {
+                    return offsets[i];
+                }
+            }
+            return poolEnd;
+        }
+
+        /**
+         * Finds the descriptors, signatures and string constants used by fields, methods and attributes.
+         */
+        private void scanMembers() {
+            int offset = poolEnd + 6;
+            offset += 2 + 2 * u2(offset); // Interfaces
+            for (int members = 0; members < 2; members++) { // Fields, then methods
+                int count = u2(offset);
+                offset += 2;
+                for (int i = 0; i < count; i++) {
+                    reference(offset + 4, DESCRIPTOR);
+                    offset = scanAttributes(offset + 6);
+                }
+            }
+            scanAttributes(offset);
+        }
+
+        /**
+         * Scans the attributes starting at the provided offset.
+         *
+         * @param offset the offset of the attributes count
+         * @return the offset after the attributes
+         */
+        private int scanAttributes(int offset) {
+            int count = u2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                String name = utf8(u2(offset));
+                int start = offset + 6;
+                int end = start + u4(offset + 2);
+                switch (name) {
+                    case "Signature":
+                        reference(start, DESCRIPTOR);
+                        break;
+                    case "Code": {
+                        int codeLength = u4(start + 4);
+                        int exceptions = u2(start + 8 + codeLength);
+                        scanAttributes(start + 10 + codeLength + exceptions * 8);
+                        break;
+                    }
+                    case "LocalVariableTable":
+                    case "LocalVariableTypeTable": {
+                        int entries = u2(start);
+                        for (int j = 0; j < entries; j++) {
+                            reference(start + 2 + j * 10 + 6, DESCRIPTOR);
+                        }
+                        break;
+                    }
+                    case "RuntimeVisibleAnnotations":
+                    case "RuntimeInvisibleAnnotations":
+                        scanAnnotations(start);
+                        break;
+                    case "RuntimeVisibleParameterAnnotations":
+                    case "RuntimeInvisibleParameterAnnotations": {
+                        int parameters = bytes[start] & 0xFF;
+                        int position = start + 1;
+                        for (int j = 0; j < parameters; j++) {
+                            position = scanAnnotations(position);
+                        }
+                        break;
+                    }
+                    case "RuntimeVisibleTypeAnnotations":
+                    case "RuntimeInvisibleTypeAnnotations": {
+                        int annotations = u2(start);
+                        int position = start + 2;
+                        for (int j = 0; j < annotations; j++) {
+                            position = skipTypeAnnotationTarget(position);
+                            position = scanAnnotation(position);
+                        }
+                        break;
+                    }
+                    case "AnnotationDefault":
+                        scanElementValue(start);
+                        break;
+                    case "Record": {
+                        int components = u2(start);
+                        int position = start + 2;
+                        for (int j = 0; j < components; j++) {
+                            reference(position + 2, DESCRIPTOR);
+                            position = scanAttributes(position + 4);
+                        }
+                        break;
+                    }
+                }
+                offset = end;
+            }
+            return offset;
+        }
+
+        private int scanAnnotations(int offset) {
+            int count = u2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                offset = scanAnnotation(offset);
+            }
+            return offset;
+        }
+
+        private int scanAnnotation(int offset) {
+            reference(offset, DESCRIPTOR);
+            int pairs = u2(offset + 2);
+            offset += 4;
+            for (int i = 0; i < pairs; i++) {
+                offset = scanElementValue(offset + 2);
+            }
+            return offset;
+        }
+
+        private int scanElementValue(int offset) {
+            char tag = (char) bytes[offset];
+            switch (tag) {
+                case 's':
+                    // Points directly to a Utf8 entry, unlike the ldc instruction
+                    reference(offset + 1, VALUE);
+                    return offset + 3;
+                case 'e':
+                    reference(offset + 1, DESCRIPTOR);
+                    return offset + 5;
+                case 'c':
+                    reference(offset + 1, DESCRIPTOR);
+                    return offset + 3;
+                case '@':
+                    return scanAnnotation(offset + 1);
+                case '[': {
+                    int count = u2(offset + 1);
+                    offset += 3;
+                    for (int i = 0; i < count; i++) {
+                        offset = scanElementValue(offset);
+                    }
+                    return offset;
+                }
+                default:
+                    // Primitive constants
+                    return offset + 3;
+            }
+        }
+
+        private int skipTypeAnnotationTarget(int offset) {
+            int target = bytes[offset] & 0xFF;
+            switch (target) {
+                case 0x00: case 0x01: case 0x16:
+                    offset += 2;
+                    break;
+                case 0x13: case 0x14: case 0x15:
+                    offset += 1;
+                    break;
+                case 0x40: case 0x41:
+                    offset += 3 + u2(offset + 1) * 6;
+                    break;
+                case 0x47: case 0x48: case 0x49: case 0x4A: case 0x4B:
+                    offset += 4;
+                    break;
+                default:
+                    // supertype, type parameter bound, throws, catch and offset targets
+                    offset += 3;
+            }
+            // Type path
+            return offset + 1 + (bytes[offset] & 0xFF) * 2;
+        }
+
+        private void reference(int offset, byte usage) {
+            int index = u2(offset);
+            if (index > 0 && index < poolCount) {
+                references.add(new Reference(offset, index, usage));
+            }
+        }
+
+        @NotNull
+        private String utf8(int index) {
+            int offset = offsets[index];
+            if (bytes[offset] != UTF8) {
+                throw new IllegalArgumentException("Constant pool entry " + index + " isn't a Utf8 entry");
+            }
+            try {
+                // The entry is a modified UTF-8 string prefixed by its length, like the ones DataInput reads
+                return new DataInputStream(new ByteArrayInputStream(bytes, offset + 1, u2(offset + 1) + 2)).readUTF();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Malformed Utf8 entry " + index, e);
+            }
+        }
+
+        private int u2(int offset) {
+            return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+        }
+
+        private int u4(int offset) {
+            return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+        }
+    }
+
+    /**
+     * A reference to a Utf8 entry.
+     */
+    private static final class Reference {
+        private final int offset;
+        private final int index;
+        private final byte usage;
+
+        private Reference(int offset, int index, byte usage) {
+            this.offset = offset;
+            this.index = index;
+            this.usage = usage;
+        }
+    }
+}
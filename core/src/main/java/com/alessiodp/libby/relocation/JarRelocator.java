@@ -0,0 +1,280 @@
+package com.alessiodp.libby.relocation;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Relocates jars in a single pass over their entries.
+ * <p>
+ * Entries are read sequentially while their class files are relocated in parallel
+ * on the common {@link ForkJoinPool}, then written in the same order they have in the
+ * input jar and with their original timestamps, so that relocating the same jar with
+ * the same relocations always produces the same output.
+ * <p>
+ * The output jar has the same files Luck's Jar Relocator would produce: signatures are
+ * dropped, the digests of the manifest entries are removed and duplicated entries are
+ * written only once. The directory entries of the input jar are dropped too, and the
+ * parent directories of every written entry are added right before its first entry.
+ */
+final class JarRelocator {
+    /**
+     * The maximum number of entries waiting to be written, to bound memory usage on large jars
+     */
+    private static final int MAX_PENDING_ENTRIES = 256;
+
+    /**
+     * The maximum size of the entries waiting to be written
+     */
+    private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private final RelocationRules rules;
+    private final ClassFileRelocator classRelocator;
+
+    JarRelocator(@NotNull Collection<Relocation> relocations) {
+        this.rules = new RelocationRules(requireNonNull(relocations, "relocations"));
+        this.classRelocator = new ClassFileRelocator(rules);
+    }
+
+    /**
+     * Relocates a jar.
+     *
+     * @param in  the input jar
+     * @param out the output jar
+     * @throws IOException if the jars couldn't be read or written
+     */
+    void relocate(@NotNull Path in, @NotNull Path out) throws IOException {
+        Deque<PendingEntry> pending = new ArrayDeque<>();
+        try (ZipInputStream input = new ZipInputStream(new BufferedInputStream(Files.newInputStream(in)));
+             JarOutputStream output = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            Set<String> names = new HashSet<>();
+            Set<String> directories = new HashSet<>();
+            long pendingBytes = 0;
+
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || name.equals("META-INF/INDEX.LIST") || isSignatureFile(name)) {
+                    continue;
+                }
+
+                boolean isClass = name.endsWith(".class") && !rules.isEmpty();
+                String relocatedName;
+                if (name.equals(MANIFEST)) {
+                    relocatedName = name;
+                } else if (isClass) {
+                    relocatedName = relocateEntryName(name.substring(0, name.length() - ".class".length())) + ".class";
+                } else {
+                    relocatedName = relocateEntryName(name);
+                }
+
+                // The first of duplicated entries wins
+                if (!names.add(relocatedName)) {
+                    continue;
+                }
+
+                byte[] content = readAll(input);
+                PendingEntry pendingEntry;
+                if (name.equals(MANIFEST)) {
+                    pendingEntry = new PendingEntry(relocatedName, entry.getTime(), processManifest(content));
+                } else if (isClass) {
+                    pendingEntry = new PendingEntry(relocatedName, entry.getTime(), content.length, ForkJoinPool.commonPool().submit(() -> {
+                        try {
+                            return classRelocator.relocate(content);
+                        } catch (RuntimeException e) {
+                            throw new RuntimeException("Error processing class " + name, e);
+                        }
+                    }));
+                } else {
+                    pendingEntry = new PendingEntry(relocatedName, entry.getTime(), content);
+                }
+
+                pending.add(pendingEntry);
+                pendingBytes += pendingEntry.size;
+                while (!pending.isEmpty() && (pending.size() > MAX_PENDING_ENTRIES || pendingBytes > MAX_PENDING_BYTES || pending.peek().isDone())) {
+                    PendingEntry head = pending.poll();
+                    write(output, head, directories);
+                    pendingBytes -= head.size;
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                write(output, pending.poll(), directories);
+            }
+        } finally {
+            for (PendingEntry entry : pending) {
+                if (entry.task != null) {
+                    entry.task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an entry to the output jar, after the directories containing it.
+     *
+     * @param output      the output jar
+     * @param entry       the entry to write
+     * @param directories the directories already written
+     * @throws IOException if the entry couldn't be written
+     */
+    private void write(@NotNull JarOutputStream output, @NotNull PendingEntry entry, @NotNull Set<String> directories) throws IOException {
+        byte[] content = entry.getContent();
+
+        for (int index = entry.name.indexOf('/'); index != -1; index = entry.name.indexOf('/', index + 1)) {
+            String directory = entry.name.substring(0, index + 1);
+            if (directories.add(directory)) {
+                JarEntry directoryEntry = new JarEntry(directory);
+                directoryEntry.setTime(entry.time);
+                output.putNextEntry(directoryEntry);
+                output.closeEntry();
+            }
+        }
+
+        JarEntry jarEntry = new JarEntry(entry.name);
+        jarEntry.setTime(entry.time);
+        output.putNextEntry(jarEntry);
+        output.write(content);
+        output.closeEntry();
+    }
+
+    /**
+     * Relocates the name of an entry, keeping the prefix of multi-release jars.
+     *
+     * @param name the name of the entry
+     * @return the relocated name
+     */
+    @NotNull
+    private String relocateEntryName(@NotNull String name) {
+        String prefix = "";
+        if (name.startsWith(VERSIONS)) {
+            int index = name.indexOf('/', VERSIONS.length());
+            if (index != -1) {
+                prefix = name.substring(0, index + 1);
+                name = name.substring(index + 1);
+            }
+        }
+        String relocated = rules.relocatePath(name);
+        return prefix + (relocated != null ? relocated : name);
+    }
+
+    /**
+     * Removes the digests of the signed entries from a manifest, since signatures are dropped.
+     *
+     * @param content the manifest
+     * @return the processed manifest
+     * @throws IOException if the manifest couldn't be read
+     */
+    private static byte @NotNull [] processManifest(byte @NotNull [] content) throws IOException {
+        Manifest in = new Manifest(new ByteArrayInputStream(content));
+        Manifest out = new Manifest();
+        out.getMainAttributes().putAll(in.getMainAttributes());
+        for (Map.Entry<String, Attributes> entry : in.getEntries().entrySet()) {
+            Attributes attributes = new Attributes();
+            for (Map.Entry<Object, Object> attribute : entry.getValue().entrySet()) {
+                if (!attribute.getKey().toString().endsWith("-Digest")) {
+                    attributes.put(attribute.getKey(), attribute.getValue());
+                }
+            }
+            out.getEntries().put(entry.getKey(), attributes);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length);
+        out.write(buffer);
+        return buffer.toByteArray();
+    }
+
+    private static boolean isSignatureFile(@NotNull String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1) {
+            return false;
+        }
+        return name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC");
+    }
+
+    private static byte @NotNull [] readAll(@NotNull InputStream input) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] bytes = new byte[8192];
+        int read;
+        while ((read = input.read(bytes)) != -1) {
+            buffer.write(bytes, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * An entry waiting to be written, whose content may still be being relocated.
+     */
+    private static final class PendingEntry {
+        private final String name;
+        private final long time;
+        private final long size;
+        private final byte[] content;
+        private final Future<byte[]> task;
+
+        private PendingEntry(@NotNull String name, long time, byte @NotNull [] content) {
+            this.name = name;
+            this.time = time;
+            this.size = content.length;
+            this.content = content;
+            this.task = null;
+        }
+
+        private PendingEntry(@NotNull String name, long time, long size, @NotNull Future<byte[]> task) {
+            this.name = name;
+            this.time = time;
+            this.size = size;
+            this.content = null;
+            this.task = task;
+        }
+
+        private boolean isDone() {
+            return task == null || task.isDone();
+        }
+
+        private byte @NotNull [] getContent() throws IOException {
+            if (task == null) {
+                return content;
+            }
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while relocating " + name);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+}
@@ -4,9 +4,13 @@ import com.alessiodp.libby.Util;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import static com.alessiodp.libby.Util.replaceWithDots;
@@ -135,6 +139,54 @@ public class Relocation {
         return result;
     }
 
+    /**
+     * Computes a hash of the provided relocations which is stable across restarts, so that
+     * it can identify the jars relocated with them. Includes and excludes are compared as sets,
+     * while the order of the relocations matters since it can change the relocated jar.
+     *
+     * @param relocations the relocations
+     * @return the lower-case hexadecimal hash of the relocations
+     */
+    @NotNull
+    public static String hash(@NotNull Collection<Relocation> relocations) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        StringBuilder canonical = new StringBuilder();
+        for (Relocation relocation : requireNonNull(relocations, "relocations")) {
+            appendCanonical(canonical, Collections.singletonList(relocation.pattern));
+            appendCanonical(canonical, Collections.singletonList(relocation.relocatedPattern));
+            appendCanonical(canonical, new TreeSet<>(relocation.includes));
+            appendCanonical(canonical, new TreeSet<>(relocation.excludes));
+        }
+        byte[] digest = md.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+
+        // 64 bits are plenty to tell apart the relocations of an artifact
+        StringBuilder hash = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            hash.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Appends the provided values to a canonical representation, prefixing them with their
+     * count and their lengths so that different values can't have the same representation.
+     *
+     * @param builder the canonical representation
+     * @param values  the values to append
+     */
+    private static void appendCanonical(@NotNull StringBuilder builder, @NotNull Collection<String> values) {
+        builder.append(values.size()).append(';');
+        for (String value : values) {
+            builder.append(value.length()).append(':').append(value);
+        }
+    }
+
     /**
      * Creates a new relocation builder.
      *
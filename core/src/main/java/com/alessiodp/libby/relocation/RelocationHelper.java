@@ -1,118 +1,49 @@
 package com.alessiodp.libby.relocation;
 
-import com.alessiodp.libby.Library;
 import com.alessiodp.libby.LibraryManager;
-import com.alessiodp.libby.Repositories;
-import com.alessiodp.libby.classloader.IsolatedClassLoader;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
 
-import static com.alessiodp.libby.Util.replaceWithDots;
 import static java.util.Objects.requireNonNull;
 
 /**
- * A reflection-based helper for relocating library jars. It automatically
- * downloads and invokes Luck's Jar Relocator to perform jar relocations.
+ * A helper for relocating library jars.
+ * <p>
+ * Jars are relocated by a built-in engine which reads them only once, relocating their
+ * classes in parallel by rewriting the class names in their constant pools, without
+ * downloading Luck's Jar Relocator or its dependencies. The output follows the semantics
+ * of Luck's Jar Relocator, except for two cases it leaves untouched and which are relocated:
+ * <ul>
+ *     <li>class files in multi-release directories ({@code META-INF/versions/<version>/});</li>
+ *     <li>package names in module descriptors ({@code module-info.class}).</li>
+ * </ul>
  *
  * @see <a href="https://github.com/lucko/jar-relocator">Luck's Jar Relocator</a>
  */
 public class RelocationHelper {
     /**
-     * me.lucko.jarrelocator.JarRelocator class name for reflections
+     * Creates a new relocation helper.
      */
-    private static final String JAR_RELOCATOR_CLASS = replaceWithDots("me{}lucko{}jarrelocator{}JarRelocator");
-
-    /**
-     * me.lucko.jarrelocator.Relocation class name for reflections
-     */
-    private static final String RELOCATION_CLASS = replaceWithDots("me{}lucko{}jarrelocator{}Relocation");
-
-    /**
-     * Reflected constructor for creating new jar relocator instances
-     */
-    private final Constructor<?> jarRelocatorConstructor;
-
-    /**
-     * Reflected method for running a jar relocator
-     */
-    private final Method jarRelocatorRunMethod;
-
-    /**
-     * Reflected constructor for creating relocation instances
-     */
-    private final Constructor<?> relocationConstructor;
+    public RelocationHelper() {
+    }
 
     /**
-     * Creates a new relocation helper using the provided library manager to
-     * download the dependencies required for runtime relocation.
+     * Creates a new relocation helper.
      *
-     * @param libraryManager the library manager used to download dependencies
+     * @param libraryManager the library manager, not used anymore since no dependencies are required for relocation
+     * @deprecated use {@link #RelocationHelper()}
      */
+    @Deprecated
     public RelocationHelper(@NotNull LibraryManager libraryManager) {
         requireNonNull(libraryManager, "libraryManager");
-
-        IsolatedClassLoader classLoader = new IsolatedClassLoader();
-
-        // ObjectWeb ASM Commons
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("org{}ow2{}asm")
-                   .artifactId("asm-commons")
-                   .version("9.7")
-                   .checksumFromBase64("OJvCR5WOBJ/JoECNOYySxtNwwYA1EgOV1Muh2dkwS3o=")
-                   .fallbackRepository(Repositories.MAVEN_CENTRAL)
-                   .build()
-        ));
-
-        // ObjectWeb ASM
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("org{}ow2{}asm")
-                   .artifactId("asm")
-                   .version("9.7")
-                   .checksumFromBase64("rfRtXjSUC98Ujs3Sap7o7qlElqcgNP9xQQZrPupcTp0=")
-                   .fallbackRepository(Repositories.MAVEN_CENTRAL)
-                   .build()
-        ));
-
-        // Luck's Jar Relocator
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("com{}github{}whereareiam")
-                   .artifactId("jar-relocator")
-                   .version("1.8")
-                   .checksumFromBase64("OWtt1tBTCRl2NHYqgfHwnGvesf6Vacup0e1kVehJuG4=")
-                   .fallbackRepository(Repositories.JITPACK)
-                   .build()
-        ));
-
-        try {
-            Class<?> jarRelocatorClass = classLoader.loadClass(JAR_RELOCATOR_CLASS);
-            Class<?> relocationClass = classLoader.loadClass(RELOCATION_CLASS);
-
-            // me.lucko.jarrelocator.JarRelocator(File, File, Collection)
-            jarRelocatorConstructor = jarRelocatorClass.getConstructor(File.class, File.class, Collection.class);
-
-            // me.lucko.jarrelocator.JarRelocator#run()
-            jarRelocatorRunMethod = jarRelocatorClass.getMethod("run");
-
-            // me.lucko.jarrelocator.Relocation(String, String, Collection, Collection)
-            relocationConstructor = relocationClass.getConstructor(String.class, String.class, Collection.class, Collection.class);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
-        }
     }
 
     /**
-     * Invokes the jar relocator to process the input jar and generate an
-     * output jar with the provided relocation rules applied.
+     * Processes the input jar and generates an output jar with the provided relocation rules applied.
      *
      * @param in          input jar
      * @param out         output jar
@@ -124,19 +55,9 @@ public class RelocationHelper {
         requireNonNull(relocations, "relocations");
 
         try {
-            List<Object> rules = new LinkedList<>();
-            for (Relocation relocation : relocations) {
-                rules.add(relocationConstructor.newInstance(
-                    relocation.getPattern(),
-                    relocation.getRelocatedPattern(),
-                    relocation.getIncludes(),
-                    relocation.getExcludes()
-                ));
-            }
-
-            jarRelocatorRunMethod.invoke(jarRelocatorConstructor.newInstance(in.toFile(), out.toFile(), rules));
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
+            new JarRelocator(relocations).relocate(in, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 }
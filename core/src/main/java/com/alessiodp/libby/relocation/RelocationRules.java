@@ -0,0 +1,445 @@
+package com.alessiodp.libby.relocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of relocations compiled for fast matching. The patterns are stored in a prefix
+ * trie, so that finding the relocation of a name takes a single walk over its characters
+ * regardless of the number of relocations, while includes and excludes are pre-split
+ * into path segments.
+ * <p>
+ * Names are matched like Luck's Jar Relocator does: relocations are tried in order and
+ * the first one whose pattern is a prefix of the name, and whose includes and excludes
+ * accept it, is applied.
+ */
+final class RelocationRules {
+    private final Rule[] rules;
+    private final Node root = new Node();
+
+    RelocationRules(@NotNull Collection<Relocation> relocations) {
+        rules = new Rule[relocations.size()];
+        int index = 0;
+        for (Relocation relocation : relocations) {
+            Rule rule = new Rule(index, relocation);
+            rules[index++] = rule;
+
+            Node node = root;
+            for (int i = 0; i < rule.pathPattern.length(); i++) {
+                node = node.children.computeIfAbsent(rule.pathPattern.charAt(i), c -> new Node());
+            }
+            node.rules.add(rule);
+        }
+    }
+
+    /**
+     * Checks whether there are no relocations.
+     *
+     * @return true if nothing is relocated
+     */
+    boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Relocates an internal class name, an array descriptor or a file path, like {@code org/example/Foo}.
+     *
+     * @param name the name to relocate
+     * @return the relocated name or null if it isn't relocated
+     */
+    @Nullable
+    String relocatePath(@NotNull String name) {
+        return relocate(name, false);
+    }
+
+    /**
+     * Relocates a string constant, which is relocated if it's a class name
+     * in binary form, like {@code org.example.Foo}, or a path.
+     *
+     * @param value the string to relocate
+     * @return the relocated string or null if it isn't relocated
+     */
+    @Nullable
+    String relocateValue(@NotNull String value) {
+        return relocate(value, true);
+    }
+
+    /**
+     * Relocates the class names in a field or method descriptor or in a generic signature.
+     *
+     * @param descriptor the descriptor or signature to relocate
+     * @return the relocated descriptor or null if it isn't relocated or is malformed
+     */
+    @Nullable
+    String relocateDescriptor(@NotNull String descriptor) {
+        if (descriptor.indexOf('L') == -1) {
+            return null;
+        }
+
+        StringBuilder out = new StringBuilder(descriptor.length() + 16);
+        try {
+            int i = 0;
+            if (descriptor.charAt(0) == '<') {
+                i = copyTypeParameters(descriptor, out);
+            }
+            while (i < descriptor.length()) {
+                char c = descriptor.charAt(i);
+                if (c == '(' || c == ')' || c == '^') {
+                    out.append(c);
+                    i++;
+                } else {
+                    i = copyType(descriptor, i, out);
+                }
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // Not a descriptor nor a signature, leave it unchanged
+            return null;
+        }
+
+        String relocated = out.toString();
+        return relocated.equals(descriptor) ? null : relocated;
+    }
+
+    /**
+     * Copies the formal type parameters at the start of a signature, relocating their bounds.
+     *
+     * @param signature the signature
+     * @param out       the output
+     * @return the index after the type parameters
+     */
+    private int copyTypeParameters(@NotNull String signature, @NotNull StringBuilder out) {
+        out.append('<');
+        int i = 1;
+        while (signature.charAt(i) != '>') {
+            int colon = signature.indexOf(':', i);
+            if (colon == -1) {
+                throw new IllegalArgumentException();
+            }
+            out.append(signature, i, colon);
+            i = colon;
+            while (signature.charAt(i) == ':') {
+                out.append(':');
+                i++;
+                // The class bound may be missing
+                if (signature.charAt(i) != ':' && signature.charAt(i) != '>') {
+                    i = copyType(signature, i, out);
+                }
+            }
+        }
+        out.append('>');
+        return i + 1;
+    }
+
+    /**
+     * Copies a type of a descriptor or a signature, relocating its class names.
+     *
+     * @param descriptor the descriptor or signature
+     * @param i          the index of the type
+     * @param out        the output
+     * @return the index after the type
+     */
+    private int copyType(@NotNull String descriptor, int i, @NotNull StringBuilder out) {
+        char c = descriptor.charAt(i);
+        switch (c) {
+            case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 'V':
+                out.append(c);
+                return i + 1;
+            case '[':
+                out.append(c);
+                return copyType(descriptor, i + 1, out);
+            case 'T': {
+                int end = descriptor.indexOf(';', i);
+                if (end == -1) {
+                    throw new IllegalArgumentException();
+                }
+                out.append(descriptor, i, end + 1);
+                return end + 1;
+            }
+            case 'L': {
+                int end = endOfName(descriptor, i + 1);
+                String name = descriptor.substring(i + 1, end);
+                String relocated = relocate(name, false);
+                out.append('L').append(relocated != null ? relocated : name);
+                i = end;
+                while (true) {
+                    c = descriptor.charAt(i);
+                    if (c == ';') {
+                        out.append(c);
+                        return i + 1;
+                    } else if (c == '<') {
+                        i = copyTypeArguments(descriptor, i, out);
+                    } else if (c == '.') {
+                        // Simple name of an inner class, not affected by relocations
+                        end = endOfName(descriptor, i + 1);
+                        out.append(descriptor, i, end);
+                        i = end;
+                    } else {
+                        throw new IllegalArgumentException();
+                    }
+                }
+            }
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Copies the type arguments of a class type in a signature, relocating their class names.
+     *
+     * @param signature the signature
+     * @param i         the index of the opening {@code <}
+     * @param out       the output
+     * @return the index after the closing {@code >}
+     */
+    private int copyTypeArguments(@NotNull String signature, int i, @NotNull StringBuilder out) {
+        out.append('<');
+        i++;
+        while (signature.charAt(i) != '>') {
+            char c = signature.charAt(i);
+            if (c == '*') {
+                out.append(c);
+                i++;
+            } else {
+                if (c == '+' || c == '-') {
+                    out.append(c);
+                    i++;
+                }
+                i = copyType(signature, i, out);
+            }
+        }
+        out.append('>');
+        return i + 1;
+    }
+
+    private static int endOfName(@NotNull String descriptor, int i) {
+        while (true) {
+            char c = descriptor.charAt(i);
+            if (c == ';' || c == '<' || c == '.') {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Relocates a name like the remapper of Luck's Jar Relocator.
+     *
+     * @param name    the name to relocate
+     * @param isValue whether the name is a string constant, which may also be a class name in binary form
+     * @return the relocated name or null if it isn't relocated
+     */
+    @Nullable
+    private String relocate(@NotNull String name, boolean isValue) {
+        if (name.isEmpty() || rules.length == 0) {
+            return null;
+        }
+
+        // Names may be descriptors of (arrays of) a class, like [Lorg/example/Foo;
+        int start = 0;
+        while (start < name.length() && name.charAt(start) == '[') {
+            start++;
+        }
+        String prefix = "";
+        String suffix = "";
+        if (start + 2 < name.length() && name.charAt(start) == 'L' && name.charAt(name.length() - 1) == ';') {
+            prefix = name.substring(0, start + 1);
+            suffix = ";";
+            name = name.substring(start + 1, name.length() - 1);
+        }
+
+        Match path = match(name);
+        Match binary = isValue && name.indexOf('/') == -1 && name.indexOf('.') != -1 ? match(name.replace('.', '/')) : null;
+        if (binary != null && (path == null || binary.rule.index <= path.rule.index)) {
+            return prefix + binary.rule.relocateClass(name) + suffix;
+        }
+        if (path != null) {
+            return prefix + path.rule.relocatePath(name, path.offset) + suffix;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first relocation which can relocate the provided path.
+     *
+     * @param path the path
+     * @return the match or null if the path isn't relocated
+     */
+    @Nullable
+    private Match match(@NotNull String path) {
+        Match match = match(path, 0, null);
+        // Paths starting with a slash are relocated too
+        if (path.length() > 1 && path.charAt(0) == '/') {
+            match = match(path, 1, match);
+        }
+        return match;
+    }
+
+    @Nullable
+    private Match match(@NotNull String path, int offset, @Nullable Match best) {
+        String checked = null;
+        Node node = root;
+        int i = offset;
+        while (true) {
+            for (Rule rule : node.rules) {
+                if (best != null && best.rule.index <= rule.index) {
+                    break;
+                }
+                if (checked == null) {
+                    checked = path.endsWith(".class") ? path.substring(0, path.length() - ".class".length()) : path;
+                }
+                if (rule.accepts(checked)) {
+                    best = new Match(rule, offset);
+                    break;
+                }
+            }
+
+            if (i == path.length()) {
+                return best;
+            }
+            node = node.children.get(path.charAt(i++));
+            if (node == null) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * A node of the prefix trie, holding the relocations whose pattern ends here, in order.
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final List<Rule> rules = new ArrayList<>(1);
+    }
+
+    private static final class Match {
+        private final Rule rule;
+        private final int offset;
+
+        private Match(@NotNull Rule rule, int offset) {
+            this.rule = rule;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A compiled relocation.
+     */
+    private static final class Rule {
+        private final int index;
+        private final String pattern;
+        private final String pathPattern;
+        private final String relocatedPattern;
+        private final String relocatedPathPattern;
+        private final List<String[]> includes = new ArrayList<>();
+        private final List<String[]> excludes = new ArrayList<>();
+
+        private Rule(int index, @NotNull Relocation relocation) {
+            this.index = index;
+            this.pattern = relocation.getPattern().replace('/', '.');
+            this.pathPattern = relocation.getPattern().replace('.', '/');
+            this.relocatedPattern = relocation.getRelocatedPattern().replace('/', '.');
+            this.relocatedPathPattern = relocation.getRelocatedPattern().replace('.', '/');
+            compile(relocation.getIncludes(), includes);
+            compile(relocation.getExcludes(), excludes);
+        }
+
+        private static void compile(@NotNull Collection<String> patterns, @NotNull List<String[]> compiled) {
+            for (String pattern : patterns) {
+                String path = pattern.replace('.', '/');
+                compiled.add(path.split("/", -1));
+                // Including the content of a package includes the package itself
+                if (path.endsWith("/*")) {
+                    compiled.add(path.substring(0, path.lastIndexOf('/')).split("/", -1));
+                }
+            }
+        }
+
+        private boolean accepts(@NotNull String path) {
+            if (!includes.isEmpty() && !matchesAny(includes, path)) {
+                return false;
+            }
+            return excludes.isEmpty() || !matchesAny(excludes, path);
+        }
+
+        @NotNull
+        private String relocatePath(@NotNull String path, int offset) {
+            return path.substring(0, offset) + relocatedPathPattern + path.substring(offset + pathPattern.length());
+        }
+
+        @NotNull
+        private String relocateClass(@NotNull String name) {
+            return relocatedPattern + name.substring(pattern.length());
+        }
+
+        private static boolean matchesAny(@NotNull List<String[]> patterns, @NotNull String path) {
+            String[] segments = path.split("/", -1);
+            for (String[] pattern : patterns) {
+                if (matchSegments(pattern, 0, segments, 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Matches path segments against Ant-style pattern segments, where {@code **}
+         * matches any number of segments and {@code *} and {@code ?} match characters.
+         */
+        private static boolean matchSegments(@NotNull String[] pattern, int p, @NotNull String[] path, int s) {
+            while (p < pattern.length) {
+                if (pattern[p].equals("**")) {
+                    // Skip consecutive "**"
+                    while (p + 1 < pattern.length && pattern[p + 1].equals("**")) {
+                        p++;
+                    }
+                    if (p + 1 == pattern.length) {
+                        return true;
+                    }
+                    for (int i = s; i < path.length; i++) {
+                        if (matchSegments(pattern, p + 1, path, i)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (s == path.length || !matchSegment(pattern[p], path[s])) {
+                    return false;
+                }
+                p++;
+                s++;
+            }
+            return s == path.length;
+        }
+
+        private static boolean matchSegment(@NotNull String pattern, @NotNull String segment) {
+            int p = 0;
+            int s = 0;
+            int star = -1;
+            int backtrack = 0;
+            while (s < segment.length()) {
+                if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == segment.charAt(s))) {
+                    p++;
+                    s++;
+                } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                    star = p++;
+                    backtrack = s;
+                } else if (star != -1) {
+                    p = star + 1;
+                    s = ++backtrack;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '*') {
+                p++;
+            }
+            return p == pattern.length();
+        }
+    }
+}
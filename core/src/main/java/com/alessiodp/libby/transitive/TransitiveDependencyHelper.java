@@ -184,10 +184,8 @@ public class TransitiveDependencyHelper {
                         repository = repository + '/';
                     }
 
-                    // TODO Uncomment the line below once LibraryManager#resolveLibrary stops resolving snapshots
-                    //      for every repository before trying direct URLs
                     // Make sure the repository is added as fallback if the dependency isn't found at the constructed URL
-                    // libraryBuilder.fallbackRepository(repository);
+                    libraryBuilder.fallbackRepository(repository);
 
                     // For snapshots, getVersion() returns version-timestamp-buildNumber instead of version-SNAPSHOT
                     String version = (String) artifactGetVersionMethod.invoke(artifact);
@@ -0,0 +1,77 @@
+package com.alessiodp.libby;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLoadingTest {
+    private final Library first = LibraryManagerMock.library("first").build();
+    private final Library second = LibraryManagerMock.library("second").build();
+
+    private LibraryManagerMock libraryManager;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StubTransport transport = new StubTransport();
+        transport.serve(first);
+        transport.serve(second);
+        libraryManager = new LibraryManagerMock(transport);
+    }
+
+    @Test
+    public void downloadOnExecutor() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        Executor executor = command -> {
+            tasks.incrementAndGet();
+            new Thread(command).start();
+        };
+
+        Path file = libraryManager.downloadLibraryAsync(first, executor).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, tasks.get());
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+        assertTrue(libraryManager.getLoaded().isEmpty());
+    }
+
+    @Test
+    public void loadOnAsyncExecutor() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        libraryManager.setAsyncExecutor(command -> {
+            tasks.incrementAndGet();
+            command.run();
+        });
+
+        libraryManager.loadLibrariesAsync(second, first).get(10, TimeUnit.SECONDS);
+        libraryManager.loadLibraryAsync(first).get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, tasks.get());
+        assertEquals(Arrays.asList(libraryManager.getLoadedPath(second), libraryManager.getLoadedPath(first), libraryManager.getLoadedPath(first)), libraryManager.getLoaded());
+    }
+
+    @Test
+    public void failureCompletesExceptionally() {
+        CompletableFuture<Void> future = libraryManager.loadLibraryAsync(LibraryManagerMock.library("missing").build());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RuntimeException);
+        assertTrue(libraryManager.getLoaded().isEmpty());
+    }
+
+    @Test
+    public void defaultExecutorThreadsAreDaemons() throws Exception {
+        CompletableFuture<Boolean> daemon = new CompletableFuture<>();
+        libraryManager.getAsyncExecutor().execute(() -> daemon.complete(Thread.currentThread().isDaemon()));
+        assertTrue(daemon.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -1,8 +1,10 @@
 package com.alessiodp.libby;
 
+import com.alessiodp.libby.cache.UpdatePolicy;
 import com.alessiodp.libby.configuration.Configuration;
 import com.alessiodp.libby.configuration.ConfigurationException;
 import com.alessiodp.libby.configuration.ConfigurationFetcher;
+import com.alessiodp.libby.download.DownloadLimiter;
 import com.alessiodp.libby.relocation.Relocation;
 import com.alessiodp.libby.transitive.ExcludedDependency;
 import org.junit.jupiter.api.AfterEach;
@@ -12,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -53,6 +56,13 @@ public class ConfigurationFetcherTest {
         assertTrue(repositories.contains("repo1"));
         assertTrue(repositories.contains("repo2"));
 
+        DownloadLimiter downloadLimiter = config.getDownloadLimiter();
+        assertNotNull(downloadLimiter);
+        assertEquals(4, downloadLimiter.getMaxConnectionsPerHost());
+        assertEquals(2, downloadLimiter.getMaxConnections("repo.example.com"));
+        assertEquals(4, downloadLimiter.getMaxConnections("other.example.com"));
+        assertEquals(1048576, downloadLimiter.getMaxBandwidth());
+
         Set<Relocation> globalRelocations = config.getGlobalRelocations();
         assertEquals(1, globalRelocations.size());
         Relocation globalRelocation = new Relocation("fake{}library{}1", "relocated{}fake{}library{}1");
@@ -66,6 +76,14 @@ public class ConfigurationFetcherTest {
                 && !l.hasClassifier()
                 && l.isIsolatedLoad()
                 && l.getLoaderId() != null && l.getLoaderId().equals("isolatedLoader1")
+                && l.getPriority() == 10
+                && l.isLazyLoad()
+                && compareCollections(
+                        l.getLazyPackages(),
+                        replaceWithDots("fake{}library{}1")
+                   )
+                && !l.isDeferred()
+                && l.getUpdatePolicy() == null
                 && l.resolveTransitiveDependencies()
                 && compareCollections(
                         l.getExcludedTransitiveDependencies(),
@@ -91,6 +109,10 @@ public class ConfigurationFetcherTest {
                 && l.getVersion().equals("1.0.0")
                 && l.hasClassifier()
                 && "aClassifier".equals(l.getClassifier())
+                && l.getPriority() == 0
+                && !l.isLazyLoad()
+                && l.isDeferred()
+                && UpdatePolicy.interval(Duration.ofMinutes(60)).equals(l.getUpdatePolicy())
                 && l.getRepositories().isEmpty()
                 && l.getExcludedTransitiveDependencies().isEmpty()
                 && compareCollections(
@@ -128,6 +150,14 @@ public class ConfigurationFetcherTest {
         // Invalid checksum
         ex = assertThrows(ConfigurationException.class, () -> parseAndRead("{\"libraries\":[{\"groupId\":\"\",\"artifactId\":\"\",\"version\":\"\",\"checksumFromBase64\":\"invalid-checksum\"}]}"));
         assertTrue(ex.getMessage().contains("valid base64"));
+
+        // Download limits
+        ex = assertThrows(ConfigurationException.class, () -> parseAndRead("{\"download\":{\"maxBandwidth\":-1}}"));
+        assertTrue(ex.getMessage().contains("download limits"));
+
+        // Invalid priority
+        ex = assertThrows(ConfigurationException.class, () -> parseAndRead("{\"libraries\":[{\"groupId\":\"\",\"artifactId\":\"\",\"version\":\"\",\"priority\":\"high\"}]}"));
+        assertTrue(ex.getMessage().contains("priority property"));
     }
 
     private void parseAndRead(String json) {
@@ -74,6 +74,22 @@ public class DownloadAndLoadTest {
         assertCorrectlyLoaded(libraryManager.getGlobalIsolatedClassLoader(), STRING_UTILS_CLASS);
     }
 
+    @Test
+    public void concurrentLoad() throws Exception {
+        libraryManager.setLoadingParallelism(4);
+        libraryManager.loadLibraries(APACHE_COMMONS_LANG3, APACHE_COMMONS_LANG3_ISOLATED);
+
+        assertNotLoadedInGlobal();
+
+        List<String> loaded = libraryManager.getLoaded();
+        assertEquals(1, loaded.size());
+        loaded.forEach(s -> assertCorrectFile(Paths.get(s), APACHE_COMMONS_LANG3.getChecksum()));
+
+        IsolatedClassLoader isolated = libraryManager.getIsolatedClassLoaderById(LIBRARY_ID);
+        assertNotNull(isolated);
+        assertCorrectlyLoaded(isolated, STRING_UTILS_CLASS);
+    }
+
     private void assertNotLoadedInGlobal() {
         assertThrows(ClassNotFoundException.class, () -> libraryManager.getGlobalIsolatedClassLoader().loadClass(STRING_UTILS_CLASS));
     }
@@ -3,7 +3,11 @@ package com.alessiodp.libby;
 import com.alessiodp.libby.classloader.IsolatedClassLoader;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,4 +20,26 @@ public class IsolatedClassLoaderTest {
         assertThrows(ClassNotFoundException.class, () -> isolatedClassLoader.loadClass("com.alessiodp.libby.Library"));
         assertDoesNotThrow(() -> isolatedClassLoader.loadClass(LinkedList.class.getName()));
     }
+
+    @Test
+    public void lazyPath() throws Exception {
+        IsolatedClassLoader isolatedClassLoader = new IsolatedClassLoader();
+        Path classes = Paths.get(Library.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        AtomicInteger calls = new AtomicInteger();
+        isolatedClassLoader.addLazyPath(Collections.singletonList("com.alessiodp.libby.classloader"), () -> {
+            calls.incrementAndGet();
+            return classes;
+        });
+
+        assertThrows(ClassNotFoundException.class, () -> isolatedClassLoader.loadClass("com.alessiodp.libby.Library"));
+        assertEquals(0, calls.get());
+
+        Class<?> clazz = isolatedClassLoader.loadClass(IsolatedClassLoader.class.getName());
+        assertSame(isolatedClassLoader, clazz.getClassLoader());
+        assertEquals(1, calls.get());
+
+        // Once added, the path is used for the other packages too
+        assertDoesNotThrow(() -> isolatedClassLoader.loadClass("com.alessiodp.libby.Library"));
+        assertEquals(1, calls.get());
+    }
 }
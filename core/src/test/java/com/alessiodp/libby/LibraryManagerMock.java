@@ -22,6 +22,25 @@ public class LibraryManagerMock extends LibraryManager {
         super(new JDKLogAdapter(Logger.getLogger("LibraryManagerMock")), generateDownloadFolder(), "libs");
     }
 
+    /**
+     * Creates a library manager downloading from the {@link StubTransport#REPOSITORY stub repository}.
+     */
+    public LibraryManagerMock(StubTransport transport) throws IOException {
+        this();
+        setTransport(transport);
+        addRepository(StubTransport.REPOSITORY);
+    }
+
+    /**
+     * Creates a builder of the {@code com.example:<artifactId>:1.0} library.
+     */
+    public static Library.Builder library(String artifactId) {
+        return Library.builder()
+                .groupId("com{}example")
+                .artifactId(artifactId)
+                .version("1.0");
+    }
+
     public boolean isLoaded(File file) {
         return loadedPaths.contains(file.getAbsoluteFile().toString());
     }
@@ -38,6 +57,13 @@ public class LibraryManagerMock extends LibraryManager {
         return super.saveDirectory;
     }
 
+    /**
+     * Gets the path of a library in the save directory, as recorded in {@link #getLoaded()}.
+     */
+    public String getLoadedPath(Library library) {
+        return saveDirectory.resolve(library.getPath()).toAbsolutePath().toString();
+    }
+
     @Override
     protected void addToClasspath(@NotNull Path file) {
         loadedPaths.add(file.toAbsolutePath().toString());
@@ -0,0 +1,124 @@
+package com.alessiodp.libby;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadingPriorityTest {
+    private static final String REPOSITORY = StubTransport.REPOSITORY;
+
+    private final Library first = LibraryManagerMock.library("first").build();
+    private final Library second = LibraryManagerMock.library("second").priority(10).build();
+    private final Library third = LibraryManagerMock.library("third").priority(5).build();
+
+    private LibraryManagerMock libraryManager;
+    private StubTransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        transport = new StubTransport();
+        transport.serve(first);
+        transport.serve(second);
+        transport.serve(third);
+        libraryManager = new LibraryManagerMock(transport);
+    }
+
+    @Test
+    public void sequentialKeepsDeclaredOrder() {
+        libraryManager.setLoadingParallelism(1);
+        libraryManager.loadLibraries(first, second, third);
+        assertEquals(Arrays.asList(libraryManager.getLoadedPath(first), libraryManager.getLoadedPath(second), libraryManager.getLoadedPath(third)), libraryManager.getLoaded());
+    }
+
+    @Test
+    public void parallelKeepsDeclaredOrder() {
+        libraryManager.setLoadingParallelism(4);
+        libraryManager.loadLibraries(first, second, third);
+        assertEquals(Arrays.asList(libraryManager.getLoadedPath(first), libraryManager.getLoadedPath(second), libraryManager.getLoadedPath(third)), libraryManager.getLoaded());
+    }
+
+    @Test
+    public void prefetchByPriority() {
+        // A single thread downloads the libraries one at a time, by descending priority
+        libraryManager.prefetchLibraries(Runnable::run, first, second, third).commit();
+        assertEquals(Arrays.asList(REPOSITORY + second.getPath(), REPOSITORY + third.getPath(), REPOSITORY + first.getPath()), transport.getRequests());
+        assertEquals(Arrays.asList(libraryManager.getLoadedPath(first), libraryManager.getLoadedPath(second), libraryManager.getLoadedPath(third)), libraryManager.getLoaded());
+    }
+
+    @Test
+    public void deferredThrottled() throws Exception {
+        Library essential = LibraryManagerMock.library("essential").build();
+        Library optional = LibraryManagerMock.library("optional").deferred(true).build();
+        Library later = LibraryManagerMock.library("later").deferred(true).build();
+        transport.serve(REPOSITORY + essential.getPath(), "essential".getBytes(StandardCharsets.UTF_8), Duration.ofSeconds(4));
+        transport.serve(REPOSITORY + optional.getPath(), new byte[128 * 1024]);
+        transport.serve(REPOSITORY + later.getPath(), new byte[128 * 1024]);
+
+        CompletableFuture<Void> foreground = loadInForeground(essential);
+
+        // 128 KiB at 64 KiB/s while the essential library is loading
+        long start = System.nanoTime();
+        libraryManager.loadLibraries(optional);
+        libraryManager.getDeferredLoading().get(10, TimeUnit.SECONDS);
+        assertTrue(elapsedMillis(start) >= 1500, "Deferred download not throttled: " + elapsedMillis(start) + " ms");
+        assertFalse(foreground.isDone());
+
+        // Once the foreground load has finished, deferred downloads use the whole bandwidth
+        foreground.get(10, TimeUnit.SECONDS);
+        start = System.nanoTime();
+        libraryManager.loadLibraries(later);
+        libraryManager.getDeferredLoading().get(10, TimeUnit.SECONDS);
+        assertTrue(elapsedMillis(start) < 1000, "Deferred download throttled: " + elapsedMillis(start) + " ms");
+        assertEquals(Arrays.asList(libraryManager.getLoadedPath(optional), libraryManager.getLoadedPath(essential), libraryManager.getLoadedPath(later)), libraryManager.getLoaded());
+    }
+
+    @Test
+    public void awaitedDeferredNotThrottled() throws Exception {
+        Library essential = LibraryManagerMock.library("essential").build();
+        Library optional = LibraryManagerMock.library("shared").deferred(true).build();
+        Library shared = LibraryManagerMock.library("shared").build();
+        transport.serve(REPOSITORY + essential.getPath(), "essential".getBytes(StandardCharsets.UTF_8), Duration.ofSeconds(4));
+        transport.serve(REPOSITORY + shared.getPath(), new byte[256 * 1024]);
+
+        CompletableFuture<Void> foreground = loadInForeground(essential);
+        libraryManager.loadLibraries(optional);
+        awaitRequest(REPOSITORY + shared.getPath());
+
+        // The throttled download would take 4 seconds, it goes at full speed once a foreground load needs it
+        long start = System.nanoTime();
+        libraryManager.loadLibraries(shared);
+        assertTrue(elapsedMillis(start) < 2000, "Awaited deferred download throttled: " + elapsedMillis(start) + " ms");
+        assertFalse(foreground.isDone());
+
+        libraryManager.getDeferredLoading().get(10, TimeUnit.SECONDS);
+        foreground.get(10, TimeUnit.SECONDS);
+        assertEquals(1, transport.getRequests().stream().filter((REPOSITORY + shared.getPath())::equals).count());
+    }
+
+    /**
+     * Loads a library in another thread, returning once its download has started.
+     */
+    private CompletableFuture<Void> loadInForeground(Library library) throws InterruptedException {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> libraryManager.loadLibraries(library));
+        awaitRequest(REPOSITORY + library.getPath());
+        return future;
+    }
+
+    private void awaitRequest(String url) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!transport.getRequests().contains(url) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,84 @@
+package com.alessiodp.libby;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RaceDownloadTest {
+    private static final String SLOW_REPOSITORY = "https://slow.example.com/releases/";
+    private static final String FAST_REPOSITORY = "https://fast.example.com/releases/";
+
+    private final Library library = Library.builder()
+            .groupId("com{}example")
+            .artifactId("example")
+            .version("1.0")
+            .build();
+
+    private LibraryManagerMock libraryManager;
+    private StubTransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        libraryManager = new LibraryManagerMock();
+        transport = new StubTransport();
+        libraryManager.setTransport(transport);
+        libraryManager.setDownloadStrategy(DownloadStrategy.RACE);
+        libraryManager.setHedgeDelay(Duration.ofMillis(50));
+        libraryManager.addRepository(SLOW_REPOSITORY);
+        libraryManager.addRepository(FAST_REPOSITORY);
+    }
+
+    @Test
+    public void slowMirrorLoses() throws Exception {
+        byte[] slow = "slow".getBytes(StandardCharsets.UTF_8);
+        byte[] fast = "fast".getBytes(StandardCharsets.UTF_8);
+        transport.serve(SLOW_REPOSITORY + library.getPath(), slow, Duration.ofSeconds(30));
+        transport.serve(FAST_REPOSITORY + library.getPath(), fast);
+
+        Path file = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> libraryManager.downloadLibrary(library));
+
+        assertArrayEquals(fast, Files.readAllBytes(file));
+        assertEquals(Collections.singletonList(SLOW_REPOSITORY + library.getPath()), transport.getAborted());
+        assertEquals(Collections.singletonList(file.getFileName().toString()), listJars(file.getParent()));
+    }
+
+    @Test
+    public void invalidDownloadLoses() throws Exception {
+        byte[] valid = "valid".getBytes(StandardCharsets.UTF_8);
+        Library verified = Library.builder()
+                .groupId("com{}example")
+                .artifactId("verified")
+                .version("1.0")
+                .checksum(MessageDigest.getInstance("SHA-256").digest(valid))
+                .build();
+        // The fast mirror serves a corrupted jar, the slow one wins
+        transport.serve(SLOW_REPOSITORY + verified.getPath(), valid, Duration.ofMillis(500));
+        transport.serve(FAST_REPOSITORY + verified.getPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+
+        Path file = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> libraryManager.downloadLibrary(verified));
+
+        assertArrayEquals(valid, Files.readAllBytes(file));
+        assertEquals(Collections.emptyList(), transport.getAborted());
+        assertEquals(Collections.singletonList(file.getFileName().toString()), listJars(file.getParent()));
+    }
+
+    private static List<String> listJars(Path directory) throws Exception {
+        // Partial downloads are deleted, only the downloaded jar and its metadata are left
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> !name.endsWith(".properties") && !name.endsWith(".lock"))
+                    .collect(Collectors.toList());
+        }
+    }
+}
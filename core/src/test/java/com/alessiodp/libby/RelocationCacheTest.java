@@ -0,0 +1,121 @@
+package com.alessiodp.libby;
+
+import com.alessiodp.libby.download.ArtifactMetadata;
+import com.alessiodp.libby.relocation.Relocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RelocationCacheTest {
+    private static final Collection<Relocation> RELOCATIONS = Collections.singletonList(new Relocation("com{}example", "libs{}com{}example"));
+    private static final Collection<Relocation> OTHER_RELOCATIONS = Collections.singletonList(new Relocation("com{}example", "other{}com{}example"));
+
+    private LibraryManagerMock libraryManager;
+    private Path in;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        libraryManager = new LibraryManagerMock();
+        Files.createDirectories(libraryManager.getSaveDirectory());
+        in = libraryManager.getSaveDirectory().resolve("example.jar");
+        createJar(in, "first");
+    }
+
+    @Test
+    public void unchangedReused() throws Exception {
+        Path relocated = libraryManager.relocate(in, output(RELOCATIONS), RELOCATIONS);
+        assertEquals("first", readResource(relocated, "libs/com/example/version.txt"));
+
+        // Mark the relocated jar, a new relocation would replace it
+        FileTime time = FileTime.fromMillis(1_600_000_000_000L);
+        Files.setLastModifiedTime(relocated, time);
+
+        assertEquals(relocated, libraryManager.relocate(in, output(RELOCATIONS), RELOCATIONS));
+        assertEquals(time, Files.getLastModifiedTime(relocated));
+    }
+
+    @Test
+    public void changedRulesRelocatedAgain() throws Exception {
+        Path relocated = libraryManager.relocate(in, output(RELOCATIONS), RELOCATIONS);
+        Path otherRelocated = libraryManager.relocate(in, output(OTHER_RELOCATIONS), OTHER_RELOCATIONS);
+
+        assertNotEquals(relocated, otherRelocated);
+        assertEquals("first", readResource(otherRelocated, "other/com/example/version.txt"));
+        // The jar relocated from the same input with other rules may still be in use
+        assertTrue(Files.exists(relocated));
+        assertEquals("first", readResource(relocated, "libs/com/example/version.txt"));
+    }
+
+    @Test
+    public void relocatedPathKeyedByRules() {
+        Library.Builder builder = Library.builder().groupId("com{}example").artifactId("example").version("1.0");
+        RELOCATIONS.forEach(builder::relocate);
+        Library library = builder.build();
+        OTHER_RELOCATIONS.forEach(builder::relocate);
+
+        assertEquals(library.getPath() + "-relocated-" + Relocation.hash(RELOCATIONS) + ".jar", library.getRelocatedPath());
+        assertNotEquals(library.getRelocatedPath(), builder.build().getRelocatedPath());
+    }
+
+    @Test
+    public void changedInputRelocatedAgain() throws Exception {
+        Path relocated = libraryManager.relocate(in, output(RELOCATIONS), RELOCATIONS);
+        Path otherRelocated = libraryManager.relocate(in, output(OTHER_RELOCATIONS), OTHER_RELOCATIONS);
+        String firstSource = ArtifactMetadata.read(relocated).getSourceSha256();
+
+        // A new version of the input jar is downloaded
+        ArtifactMetadata.delete(in);
+        createJar(in, "second");
+
+        assertEquals(relocated, libraryManager.relocate(in, output(RELOCATIONS), RELOCATIONS));
+        assertEquals("second", readResource(relocated, "libs/com/example/version.txt"));
+        assertNotEquals(firstSource, ArtifactMetadata.read(relocated).getSourceSha256());
+
+        // The jars relocated from the previous version are deleted
+        assertFalse(Files.exists(otherRelocated));
+        assertFalse(Files.exists(ArtifactMetadata.getFile(otherRelocated)));
+    }
+
+    private String output(Collection<Relocation> relocations) {
+        return in.getFileName() + "-relocated-" + Relocation.hash(relocations) + ".jar";
+    }
+
+    private static void createJar(Path file, String version) throws IOException {
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(file))) {
+            output.putNextEntry(new JarEntry("com/example/version.txt"));
+            output.write(version.getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+    }
+
+    private static String readResource(Path jar, String name) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            ZipEntry entry = zip.getEntry(name);
+            assertNotNull(entry, name + " not found in " + jar);
+            try (InputStream input = zip.getInputStream(entry)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] bytes = new byte[8192];
+                int read;
+                while ((read = input.read(bytes)) != -1) {
+                    buffer.write(bytes, 0, read);
+                }
+                return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.alessiodp.libby;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotResolutionTest {
+    private static final String FAST = "https://fast.example.com/repo/";
+    private static final String SLOW = "https://slow.example.com/repo/";
+    private static final String PARTIAL_PATH = "com/example/example/1.0-SNAPSHOT/";
+    private static final String OLD_BUILD = PARTIAL_PATH + "example-1.0-20220616.220000-11.jar";
+    private static final String NEW_BUILD = PARTIAL_PATH + "example-1.0-20220617.013635-12.jar";
+
+    private static final Library SNAPSHOT = Library.builder()
+            .groupId("com{}example")
+            .artifactId("example")
+            .version("1.0-SNAPSHOT")
+            .repository(FAST)
+            .repository(SLOW)
+            .build();
+
+    private LibraryManagerMock libraryManager;
+    private StubTransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        libraryManager = new LibraryManagerMock();
+        transport = new StubTransport();
+        libraryManager.setTransport(transport);
+    }
+
+    @Test
+    public void newestBuildWins() {
+        libraryManager.setHedgeDelay(Duration.ofSeconds(5));
+        transport.serve(FAST + PARTIAL_PATH + "maven-metadata.xml", metadata("20220616.220000", 11));
+        transport.serve(SLOW + PARTIAL_PATH + "maven-metadata.xml", metadata("20220617.013635", 12), Duration.ofMillis(200));
+
+        assertEquals(Arrays.asList(SLOW + NEW_BUILD, FAST + OLD_BUILD), new ArrayList<>(libraryManager.resolveLibrary(SNAPSHOT)));
+    }
+
+    @Test
+    public void slowRepositoryCancelled() {
+        libraryManager.setHedgeDelay(Duration.ofMillis(100));
+        transport.serve(FAST + PARTIAL_PATH + "maven-metadata.xml", metadata("20220616.220000", 11));
+        transport.serve(SLOW + PARTIAL_PATH + "maven-metadata.xml", metadata("20220617.013635", 12), Duration.ofSeconds(30));
+
+        long start = System.nanoTime();
+        assertEquals(Collections.singletonList(FAST + OLD_BUILD), new ArrayList<>(libraryManager.resolveLibrary(SNAPSHOT)));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos(), "The slow repository was waited for");
+    }
+
+    @Test
+    public void directUrlFallback() throws Exception {
+        Library library = Library.builder()
+                .groupId("com{}example")
+                .artifactId("example")
+                .version("1.0-SNAPSHOT")
+                .url("https://direct.example.com/example-1.0-SNAPSHOT.jar")
+                .repository(FAST)
+                .build();
+        byte[] jar = "new build".getBytes(StandardCharsets.UTF_8);
+        transport.serve(FAST + PARTIAL_PATH + "maven-metadata.xml", metadata("20220617.013635", 12));
+        transport.serve(FAST + NEW_BUILD, jar);
+
+        Path file = libraryManager.downloadLibrary(library);
+        assertArrayEquals(jar, Files.readAllBytes(file));
+        assertTrue(transport.getRequests().contains("https://direct.example.com/example-1.0-SNAPSHOT.jar"));
+    }
+
+    private static byte[] metadata(String timestamp, int buildNumber) {
+        return ("<metadata><versioning><snapshot>" +
+                "<timestamp>" + timestamp + "</timestamp><buildNumber>" + buildNumber + "</buildNumber>" +
+                "</snapshot></versioning></metadata>").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+package com.alessiodp.libby;
+
+import com.alessiodp.libby.download.Transport;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@link Transport} serving registered files from memory, so that tests don't need the network.
+ * Unknown URLs are reported as not found.
+ */
+public class StubTransport implements Transport {
+    /**
+     * The repository of {@link LibraryManagerMock#LibraryManagerMock(StubTransport)} and of {@link #serve(Library)}.
+     */
+    public static final String REPOSITORY = "https://repo.example.com/releases/";
+
+    private final Map<String, Served> served = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> aborted = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Serves the jar of a library from {@link #REPOSITORY}, using its artifact id as content.
+     */
+    public void serve(Library library) {
+        serve(REPOSITORY + library.getPath(), library.getArtifactId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void serve(String url, byte[] body) {
+        serve(url, body, Duration.ZERO);
+    }
+
+    /**
+     * Serves a file whose body starts being sent after the provided delay, unless the response is aborted.
+     */
+    public void serve(String url, byte[] body, Duration delay) {
+        served.put(url, new Served(body, delay));
+    }
+
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public List<String> getAborted() {
+        synchronized (aborted) {
+            return new ArrayList<>(aborted);
+        }
+    }
+
+    /**
+     * Creates a valid jar with a single entry holding the provided content.
+     */
+    public static byte[] jar(String content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(buffer)) {
+            output.putNextEntry(new ZipEntry("content.txt"));
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+        return buffer.toByteArray();
+    }
+
+    @NotNull
+    @Override
+    public Response get(@NotNull String url, @NotNull Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException {
+        requests.add(url);
+        Served file = served.get(url);
+        if (file == null) {
+            throw new FileNotFoundException(url);
+        }
+        return new StubResponse(url, file);
+    }
+
+    private static final class Served {
+        private final byte[] body;
+        private final Duration delay;
+
+        private Served(byte[] body, Duration delay) {
+            this.body = body;
+            this.delay = delay;
+        }
+    }
+
+    private final class StubResponse implements Response {
+        private final String url;
+        private final Served file;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private volatile boolean abort;
+
+        private StubResponse(String url, Served file) {
+            this.url = url;
+            this.file = file;
+        }
+
+        @NotNull
+        @Override
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NotNull String name) {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return file.body.length;
+        }
+
+        @NotNull
+        @Override
+        public InputStream getBody() {
+            return new FilterInputStream(new ByteArrayInputStream(file.body)) {
+                private boolean waited;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte @NotNull [] b, int off, int len) throws IOException {
+                    if (!waited) {
+                        waited = true;
+                        try {
+                            closed.await(file.delay.toNanos(), TimeUnit.NANOSECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(url);
+                        }
+                    }
+                    if (abort || closed.getCount() == 0) {
+                        throw new IOException("Connection closed: " + url);
+                    }
+                    return super.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        @Override
+        public void abort() {
+            abort = true;
+            aborted.add(url);
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.RepositoryResolutionMode;
+import com.alessiodp.libby.StubTransport;
+import com.alessiodp.libby.download.ArtifactMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockfileTest {
+    private static final String REPOSITORY = StubTransport.REPOSITORY;
+    private static final Collection<String> REPOSITORIES = Collections.singletonList(REPOSITORY);
+
+    @Test
+    public void dependenciesResolvedFirst() throws Exception {
+        Path file = Files.createTempDirectory("libby-lockfile").resolve("libby.lock");
+        Lockfile lockfile = new Lockfile(file);
+        lockfile.lock(entry("a", Collections.singletonList("b")));
+        lockfile.lock(entry("b", Collections.singletonList("c")));
+        lockfile.lock(entry("c", Collections.emptyList()));
+        lockfile.save();
+
+        List<Lockfile.Entry> resolved = new Lockfile(file).resolve("a");
+        assertNotNull(resolved);
+        assertEquals(Arrays.asList("c", "b", "a"), resolved.stream().map(Lockfile.Entry::getFingerprint).collect(Collectors.toList()));
+        assertEquals("com.example:c:1.0", resolved.get(0).getLibrary());
+        assertEquals("com.example", resolved.get(0).toLibrary().getGroupId());
+    }
+
+    @Test
+    public void missingDependencyNotResolved() {
+        Lockfile lockfile = new Lockfile(Paths.get("missing", "libby.lock"));
+        lockfile.lock(entry("a", Collections.singletonList("b")));
+
+        assertNull(lockfile.resolve("a"));
+        assertNull(lockfile.resolve("b"));
+    }
+
+    @Test
+    public void fingerprintChanges() {
+        Library library = library("1.0");
+        String fingerprint = Lockfile.fingerprint(library, REPOSITORIES, RepositoryResolutionMode.DEFAULT);
+
+        assertEquals(fingerprint, Lockfile.fingerprint(library("1.0"), REPOSITORIES, RepositoryResolutionMode.DEFAULT));
+        assertNotEquals(fingerprint, Lockfile.fingerprint(library("2.0"), REPOSITORIES, RepositoryResolutionMode.DEFAULT));
+        assertNotEquals(fingerprint, Lockfile.fingerprint(library, Collections.singletonList("https://other.example.com/"), RepositoryResolutionMode.DEFAULT));
+        assertNotEquals(fingerprint, Lockfile.fingerprint(library, REPOSITORIES, RepositoryResolutionMode.GLOBAL_FIRST));
+        Library relocated = LibraryManagerMock.library("example")
+                .relocate("com{}example", "libs{}com{}example")
+                .build();
+        assertNotEquals(fingerprint, Lockfile.fingerprint(relocated, REPOSITORIES, RepositoryResolutionMode.DEFAULT));
+    }
+
+    @Test
+    public void mismatchingJarRejected() throws Exception {
+        Library library = library("1.0");
+        byte[] jar = StubTransport.jar("original");
+        StubTransport transport = new StubTransport();
+        transport.serve(REPOSITORY + library.getPath(), jar);
+
+        LibraryManagerMock libraryManager = new LibraryManagerMock(transport);
+        libraryManager.enableLockfile();
+
+        libraryManager.loadLibrary(library);
+        Path file = libraryManager.getSaveDirectory().resolve(library.getPath());
+        String fingerprint = Lockfile.fingerprint(library, REPOSITORIES, RepositoryResolutionMode.DEFAULT);
+        List<Lockfile.Entry> locked = new Lockfile(libraryManager.getLockfile().getFile()).resolve(fingerprint);
+        assertNotNull(locked);
+        assertEquals(ArtifactMetadata.read(file).getSha256(), locked.get(0).getSha256());
+
+        // Replace the jar with another valid jar, which doesn't match the pinned checksum
+        ArtifactMetadata.delete(file);
+        Files.write(file, StubTransport.jar("replaced"));
+
+        libraryManager.loadLibrary(library);
+        assertArrayEquals(jar, Files.readAllBytes(file));
+        assertEquals(Arrays.asList(REPOSITORY + library.getPath(), REPOSITORY + library.getPath()), transport.getRequests());
+    }
+
+    private static Lockfile.Entry entry(String fingerprint, List<String> dependencies) {
+        return new Lockfile.Entry(fingerprint, "com.example:" + fingerprint + ":1.0", "com/example/" + fingerprint + ".jar", null, null, false, null, dependencies);
+    }
+
+    private static Library library(String version) {
+        return LibraryManagerMock.library("example").version(version).build();
+    }
+}
@@ -0,0 +1,212 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.download.DownloadPolicy;
+import com.alessiodp.libby.download.Transport;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataCacheTest {
+    private static final String REPOSITORY = "https://repo.example.com/snapshots/";
+    private static final String PARTIAL_PATH = "com/example/example/1.0-SNAPSHOT/";
+    private static final String METADATA = REPOSITORY + PARTIAL_PATH + "maven-metadata.xml";
+    private static final String BUILD = REPOSITORY + PARTIAL_PATH + "example-1.0-20220617.013635-12.jar";
+    private static final String ETAG = "\"metadata\"";
+
+    private final Library snapshot = Library.builder()
+            .groupId("com{}example")
+            .artifactId("example")
+            .version("1.0-SNAPSHOT")
+            .build();
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean unreachable;
+    private LibraryManagerMock libraryManager;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        libraryManager = new LibraryManagerMock();
+        libraryManager.addRepository(REPOSITORY);
+        // Serves the metadata, answering 304 Not Modified to conditional requests
+        libraryManager.setTransport((url, headers, connectTimeout, readTimeout) -> {
+            String ifNoneMatch = headers.get("If-None-Match");
+            requests.add(url + (ifNoneMatch != null ? " If-None-Match: " + ifNoneMatch : ""));
+            if (unreachable) {
+                throw new ConnectException("Connection refused: " + url);
+            }
+            return new MetadataResponse(url, ETAG.equals(ifNoneMatch) ? 304 : 200);
+        });
+    }
+
+    @Test
+    public void updatePolicies() {
+        Instant now = Instant.now();
+        Instant lastWeek = now.minus(7, ChronoUnit.DAYS);
+
+        assertTrue(UpdatePolicy.ALWAYS.isUpdateRequired(now));
+        assertFalse(UpdatePolicy.NEVER.isUpdateRequired(lastWeek));
+        assertFalse(UpdatePolicy.DAILY.isUpdateRequired(now));
+        assertTrue(UpdatePolicy.DAILY.isUpdateRequired(lastWeek));
+        assertFalse(UpdatePolicy.interval(Duration.ofMinutes(60)).isUpdateRequired(now.minus(30, ChronoUnit.MINUTES)));
+        assertTrue(UpdatePolicy.interval(Duration.ofMinutes(60)).isUpdateRequired(now.minus(90, ChronoUnit.MINUTES)));
+    }
+
+    @Test
+    public void parseUpdatePolicies() {
+        assertSame(UpdatePolicy.ALWAYS, UpdatePolicy.parse("always"));
+        assertSame(UpdatePolicy.DAILY, UpdatePolicy.parse(" Daily "));
+        assertSame(UpdatePolicy.NEVER, UpdatePolicy.parse("NEVER"));
+        assertEquals(UpdatePolicy.interval(Duration.ofMinutes(90)), UpdatePolicy.parse("interval:90"));
+        assertEquals("interval:90", UpdatePolicy.parse("interval:90").toString());
+
+        assertThrows(IllegalArgumentException.class, () -> UpdatePolicy.parse("hourly"));
+        assertThrows(IllegalArgumentException.class, () -> UpdatePolicy.parse("interval:"));
+        assertThrows(IllegalArgumentException.class, () -> UpdatePolicy.parse("interval:-1"));
+    }
+
+    @Test
+    public void cacheFiles() throws Exception {
+        Path directory = Files.createTempDirectory("libby-metadata");
+        MetadataCache cache = new MetadataCache(directory);
+
+        // Metadata files mirror their URL
+        assertEquals(directory.resolve("repo.example.com/snapshots/" + PARTIAL_PATH + "maven-metadata.xml"), cache.getFile(METADATA));
+        assertEquals(directory.resolve("repo.example.com_8080/maven-metadata.xml"), cache.getFile("https://repo.example.com:8080/maven-metadata.xml"));
+        assertNull(cache.getFile("https://repo.example.com/snapshots/"));
+        assertNull(cache.getFile("https://repo.example.com/../../maven-metadata.xml"));
+
+        assertNull(cache.read(METADATA));
+        assertFalse(cache.isUpToDate(METADATA, UpdatePolicy.NEVER));
+
+        byte[] content = "<metadata/>".getBytes(StandardCharsets.UTF_8);
+        cache.store(METADATA, content, ETAG, null);
+        assertArrayEquals(content, cache.read(METADATA));
+        assertEquals(ETAG, cache.getValidators(METADATA).getETag());
+        assertTrue(cache.isUpToDate(METADATA, UpdatePolicy.DAILY));
+        assertFalse(cache.isUpToDate(METADATA, UpdatePolicy.ALWAYS));
+
+        // Checked for updates a week ago
+        Files.setLastModifiedTime(cache.getFile(METADATA), FileTime.from(Instant.now().minus(7, ChronoUnit.DAYS)));
+        assertFalse(cache.isUpToDate(METADATA, UpdatePolicy.DAILY));
+        cache.markUpdated(METADATA);
+        assertTrue(cache.isUpToDate(METADATA, UpdatePolicy.DAILY));
+
+        // Metadata without validators
+        cache.store(METADATA, content, null, null);
+        assertNull(cache.getValidators(METADATA));
+    }
+
+    @Test
+    public void cachedUntilUpdateRequired() {
+        libraryManager.setSnapshotUpdatePolicy(UpdatePolicy.DAILY);
+
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+        assertEquals(Collections.singletonList(METADATA), requests);
+    }
+
+    @Test
+    public void conditionalUpdate() {
+        // By default, the metadata is revalidated on every load
+        assertSame(UpdatePolicy.ALWAYS, libraryManager.getSnapshotUpdatePolicy());
+
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+        assertEquals(Arrays.asList(METADATA, METADATA + " If-None-Match: " + ETAG), requests);
+    }
+
+    @Test
+    public void libraryPolicyOverridesRepository() {
+        Library always = Library.builder()
+                .groupId("com{}example")
+                .artifactId("example")
+                .version("1.0-SNAPSHOT")
+                .updatePolicy(UpdatePolicy.ALWAYS)
+                .build();
+        libraryManager.setRepositoryUpdatePolicy(REPOSITORY, UpdatePolicy.NEVER);
+
+        assertSame(UpdatePolicy.ALWAYS, libraryManager.getUpdatePolicy(REPOSITORY, always));
+        assertSame(UpdatePolicy.NEVER, libraryManager.getUpdatePolicy(REPOSITORY, snapshot));
+        assertSame(libraryManager.getSnapshotUpdatePolicy(), libraryManager.getUpdatePolicy("https://other.example.com/", snapshot));
+    }
+
+    @Test
+    public void staleMetadataUsedWhenUnreachable() {
+        libraryManager.setRepositoryUpdatePolicy(REPOSITORY, UpdatePolicy.ALWAYS);
+        libraryManager.setDownloadPolicy(DownloadPolicy.builder().maxRetries(0).build());
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+
+        unreachable = true;
+        assertEquals(Collections.singletonList(BUILD), new ArrayList<>(libraryManager.resolveLibrary(snapshot)));
+        assertEquals(2, requests.size());
+    }
+
+    private static final class MetadataResponse implements Transport.Response {
+        private final String url;
+        private final int statusCode;
+
+        private MetadataResponse(String url, int statusCode) {
+            this.url = url;
+            this.statusCode = statusCode;
+        }
+
+        @NotNull
+        @Override
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NotNull String name) {
+            return "ETag".equalsIgnoreCase(name) ? ETAG : null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return statusCode == 200 ? metadata().length : 0;
+        }
+
+        @NotNull
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(statusCode == 200 ? metadata() : new byte[0]);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static byte[] metadata() {
+            return ("<metadata><versioning><snapshot>" +
+                    "<timestamp>20220617.013635</timestamp><buildNumber>12</buildNumber>" +
+                    "</snapshot></versioning></metadata>").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NegativeCacheTest {
+    private static final String URL = "https://repo.example.com/releases/com/example/example/1.0/example-1.0.jar";
+
+    @Test
+    public void missExpires() throws Exception {
+        NegativeCache cache = new NegativeCache(Duration.ofMillis(200));
+        assertFalse(cache.isMissing(URL));
+
+        cache.recordMiss(URL);
+        assertTrue(cache.isMissing(URL));
+
+        Thread.sleep(250);
+        assertFalse(cache.isMissing(URL));
+    }
+
+    @Test
+    public void persisted() throws Exception {
+        Path file = Files.createTempDirectory("libby-negative").resolve("misses.properties");
+        String expiring = URL + ".sha256";
+
+        new NegativeCache(Duration.ofHours(1), file).recordMiss(URL);
+        NegativeCache shortLived = new NegativeCache(Duration.ofMillis(100), file);
+        shortLived.recordMiss(expiring);
+        Thread.sleep(150);
+
+        // Expired misses aren't loaded
+        NegativeCache reloaded = new NegativeCache(Duration.ofHours(1), file);
+        assertTrue(reloaded.isMissing(URL));
+        assertFalse(reloaded.isMissing(expiring));
+
+        reloaded.clear();
+        assertFalse(new NegativeCache(Duration.ofHours(1), file).isMissing(URL));
+    }
+
+    @Test
+    public void missingUrlNotRequestedAgain() throws Exception {
+        String repository = "https://repo.example.com/releases/";
+        String fallback = "https://fallback.example.com/releases/";
+        Library library = Library.builder()
+                .groupId("com{}example")
+                .artifactId("example")
+                .version("1.0")
+                .build();
+        StubTransport transport = new StubTransport();
+        transport.serve(fallback + library.getPath(), "jar".getBytes(StandardCharsets.UTF_8));
+
+        LibraryManagerMock first = new LibraryManagerMock();
+        LibraryManagerMock second = new LibraryManagerMock();
+        NegativeCache cache = new NegativeCache(Duration.ofHours(1));
+        for (LibraryManagerMock libraryManager : Arrays.asList(first, second)) {
+            libraryManager.setTransport(transport);
+            libraryManager.setNegativeCache(cache);
+            libraryManager.setRepositoryAffinity(null);
+            libraryManager.addRepository(repository);
+            libraryManager.addRepository(fallback);
+        }
+
+        first.downloadLibrary(library);
+        second.downloadLibrary(library);
+
+        assertTrue(cache.isMissing(repository + library.getPath()));
+        assertEquals(Arrays.asList(
+                repository + library.getPath(),
+                fallback + library.getPath(),
+                fallback + library.getPath()
+        ), transport.getRequests());
+    }
+}
@@ -0,0 +1,75 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryAffinityTest {
+    private static final String FIRST = "https://first.example.com/releases/";
+    private static final String SECOND = "https://second.example.com/releases/";
+
+    @Test
+    public void persisted() throws Exception {
+        Path file = Files.createTempDirectory("libby-affinity").resolve("affinity.properties");
+        Library library = library("1.0");
+        Library newVersion = library("2.0");
+
+        RepositoryAffinity affinity = new RepositoryAffinity(file);
+        assertNull(affinity.getRepository(library));
+        affinity.setRepository(library, SECOND);
+        assertTrue(Files.exists(file));
+
+        // Every version of the artifact is looked up in the same repository
+        RepositoryAffinity reloaded = new RepositoryAffinity(file);
+        assertEquals(SECOND, reloaded.getRepository(library));
+        assertEquals(SECOND, reloaded.getRepository(newVersion));
+        assertNull(reloaded.getRepository(LibraryManagerMock.library("other").build()));
+    }
+
+    @Test
+    public void corruptedIndexRebuilt() throws Exception {
+        Path file = Files.createTempFile("libby-affinity", ".properties");
+        Files.write(file, "com.example\\:example=\\uZZZZ".getBytes(StandardCharsets.ISO_8859_1));
+
+        RepositoryAffinity affinity = new RepositoryAffinity(file);
+        assertNull(affinity.getRepository(library("1.0")));
+        affinity.setRepository(library("1.0"), FIRST);
+        assertEquals(FIRST, new RepositoryAffinity(file).getRepository(library("1.0")));
+    }
+
+    @Test
+    public void servingRepositoryTriedFirst() throws Exception {
+        Library library = library("1.0");
+        Library newVersion = library("2.0");
+        StubTransport transport = new StubTransport();
+        transport.serve(SECOND + library.getPath(), StubTransport.jar("1.0"));
+        transport.serve(SECOND + newVersion.getPath(), StubTransport.jar("2.0"));
+
+        LibraryManagerMock libraryManager = new LibraryManagerMock();
+        libraryManager.setTransport(transport);
+        libraryManager.addRepository(FIRST);
+        libraryManager.addRepository(SECOND);
+
+        libraryManager.downloadLibrary(library);
+        assertEquals(SECOND, libraryManager.getRepositoryAffinity().getRepository(library));
+        libraryManager.downloadLibrary(newVersion);
+
+        assertEquals(Arrays.asList(
+                FIRST + library.getPath(),
+                SECOND + library.getPath(),
+                SECOND + newVersion.getPath()
+        ), transport.getRequests());
+    }
+
+    private static Library library(String version) {
+        return LibraryManagerMock.library("example").version(version).build();
+    }
+}
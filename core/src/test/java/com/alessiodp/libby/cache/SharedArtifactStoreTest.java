@@ -0,0 +1,125 @@
+package com.alessiodp.libby.cache;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedArtifactStoreTest {
+    private static final String REPOSITORY = StubTransport.REPOSITORY;
+
+    private SharedArtifactStore store;
+    private byte[] jar;
+    private byte[] checksum;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        store = new SharedArtifactStore(Files.createTempDirectory("libby-store"));
+        jar = StubTransport.jar("example");
+        checksum = MessageDigest.getInstance("SHA-256").digest(jar);
+    }
+
+    @Test
+    public void storedByChecksumAndCoordinates() throws Exception {
+        Path downloaded = Files.createTempFile("libby", ".jar");
+        Files.write(downloaded, jar);
+        Library library = library("1.0", null);
+        assertNull(store.find(library));
+
+        store.store(library, downloaded, checksum);
+
+        Path stored = store.find(library);
+        assertNotNull(stored);
+        assertArrayEquals(jar, Files.readAllBytes(stored));
+        assertEquals(stored, store.find(library("1.0", checksum)));
+        // Other versions aren't indexed, an artifact with another checksum isn't stored
+        assertNull(store.find(library("2.0", null)));
+        assertNull(store.find(library("1.0", new byte[32])));
+    }
+
+    @Test
+    public void snapshotsNotIndexed() throws Exception {
+        Path downloaded = Files.createTempFile("libby", ".jar");
+        Files.write(downloaded, jar);
+        Library snapshot = library("1.0-SNAPSHOT", null);
+
+        store.store(snapshot, downloaded, checksum);
+
+        assertNull(store.find(snapshot));
+        assertNotNull(store.find(library("1.0-SNAPSHOT", checksum)));
+    }
+
+    @Test
+    public void link() throws Exception {
+        Path source = Files.createTempFile("libby", ".jar");
+        Files.write(source, jar);
+        Path target = Files.createTempDirectory("libby").resolve("com").resolve("example.jar");
+        Files.createDirectories(target.getParent());
+        Files.write(target, new byte[] {1, 2, 3});
+
+        store.link(source, target);
+
+        assertArrayEquals(jar, Files.readAllBytes(target));
+        try (Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void downloadedOnceAcrossManagers() throws Exception {
+        Library library = library("1.0", null);
+        StubTransport transport = new StubTransport();
+        transport.serve(REPOSITORY + library.getPath(), jar);
+        LibraryManagerMock first = libraryManager(transport);
+        LibraryManagerMock second = libraryManager(transport);
+
+        Path firstFile = first.downloadLibrary(library);
+        Path secondFile = second.downloadLibrary(library);
+
+        assertNotEquals(firstFile, secondFile);
+        assertArrayEquals(jar, Files.readAllBytes(secondFile));
+        assertEquals(Collections.singletonList(REPOSITORY + library.getPath()), transport.getRequests());
+    }
+
+    @Test
+    public void corruptedArtifactReplaced() throws Exception {
+        Library library = library("1.0", checksum);
+        StubTransport transport = new StubTransport();
+        transport.serve(REPOSITORY + library.getPath(), jar);
+
+        Path corrupted = Files.createTempFile("libby", ".jar");
+        Files.write(corrupted, StubTransport.jar("corrupted"));
+        store.store(library, corrupted, checksum);
+
+        Path file = libraryManager(transport).downloadLibrary(library);
+
+        assertArrayEquals(jar, Files.readAllBytes(file));
+        assertEquals(Collections.singletonList(REPOSITORY + library.getPath()), transport.getRequests());
+        // The store has been repaired with the downloaded artifact
+        assertArrayEquals(jar, Files.readAllBytes(store.find(library)));
+    }
+
+    private LibraryManagerMock libraryManager(StubTransport transport) throws IOException {
+        LibraryManagerMock libraryManager = new LibraryManagerMock(transport);
+        libraryManager.setSharedStore(store);
+        return libraryManager;
+    }
+
+    private static Library library(String version, byte[] checksum) {
+        Library.Builder builder = LibraryManagerMock.library("example").version(version);
+        if (checksum != null) {
+            builder.checksum(checksum);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.alessiodp.libby.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArtifactMetadataTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        Path artifact = Files.createTempDirectory("libby-metadata").resolve("example-1.0.jar");
+        assertNull(ArtifactMetadata.read(artifact));
+
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        metadata.setUrl("https://repo.example.com/releases/example-1.0.jar");
+        metadata.setETag("\"etag\"");
+        metadata.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+        metadata.setSha256("c2hhMjU2");
+        metadata.setSourceSha256("c291cmNl");
+        metadata.setFileSize(1024);
+        metadata.setFileTime(1_600_000_000_000L);
+        metadata.write(artifact);
+
+        // The metadata is a sidecar file next to the artifact
+        assertEquals(artifact.resolveSibling("example-1.0.jar" + ArtifactMetadata.EXTENSION), ArtifactMetadata.getFile(artifact));
+        assertTrue(Files.isRegularFile(ArtifactMetadata.getFile(artifact)));
+
+        ArtifactMetadata read = ArtifactMetadata.read(artifact);
+        assertNotNull(read);
+        assertEquals("https://repo.example.com/releases/example-1.0.jar", read.getUrl());
+        assertEquals("\"etag\"", read.getETag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", read.getLastModified());
+        assertEquals("c2hhMjU2", read.getSha256());
+        assertEquals("c291cmNl", read.getSourceSha256());
+        assertEquals(1024, read.getFileSize());
+        assertEquals(1_600_000_000_000L, read.getFileTime());
+
+        // Null values remove the properties
+        read.setETag(null);
+        read.setSourceSha256(null);
+        read.write(artifact);
+        ArtifactMetadata updated = ArtifactMetadata.read(artifact);
+        assertNotNull(updated);
+        assertNull(updated.getETag());
+        assertNull(updated.getSourceSha256());
+        assertEquals("c2hhMjU2", updated.getSha256());
+
+        ArtifactMetadata.delete(artifact);
+        assertNull(ArtifactMetadata.read(artifact));
+        // Deleting missing metadata does nothing
+        ArtifactMetadata.delete(artifact);
+    }
+
+    @Test
+    public void invalidValuesIgnored() throws Exception {
+        Path artifact = Files.createTempDirectory("libby-metadata").resolve("example-1.0.jar");
+        Files.write(ArtifactMetadata.getFile(artifact), "fileSize=large\nfileTime=\\uZZZZ".getBytes(StandardCharsets.ISO_8859_1));
+        assertNull(ArtifactMetadata.read(artifact));
+
+        Files.write(ArtifactMetadata.getFile(artifact), "fileSize=large".getBytes(StandardCharsets.ISO_8859_1));
+        ArtifactMetadata metadata = ArtifactMetadata.read(artifact);
+        assertNotNull(metadata);
+        assertEquals(-1, metadata.getFileSize());
+        assertEquals(-1, metadata.getFileTime());
+    }
+
+    @Test
+    public void rangeValidator() {
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        assertNull(metadata.getRangeValidator());
+
+        metadata.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", metadata.getRangeValidator());
+
+        // Weak ETags can't be used in If-Range
+        metadata.setETag("W/\"weak\"");
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", metadata.getRangeValidator());
+
+        metadata.setETag("\"strong\"");
+        assertEquals("\"strong\"", metadata.getRangeValidator());
+    }
+}
@@ -0,0 +1,169 @@
+package com.alessiodp.libby.download;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadLimiterTest {
+    private static final String URL = "https://repo.example.com/com/example/example/1.0/example-1.0.jar";
+
+    @Test
+    public void abortBlockedRead() throws Exception {
+        AtomicReference<BlockingResponse> blocking = new AtomicReference<>();
+        Transport limited = DownloadLimiter.builder()
+                .maxConnectionsPerHost(1)
+                .maxBandwidth(1024 * 1024)
+                .build()
+                .limit((url, headers, connectTimeout, readTimeout) -> {
+                    blocking.set(new BlockingResponse(url));
+                    return blocking.get();
+                });
+
+        Transport.Response response = limited.get(URL, Collections.emptyMap(), 1000, 1000);
+        CountDownLatch reading = blocking.get().reading;
+        InputStream body = response.getBody();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                body.read(new byte[16]);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        assertTrue(reading.await(5, TimeUnit.SECONDS), "The body isn't being read");
+
+        // close() would wait for the blocked read, abort() must not
+        assertTimeoutPreemptively(Duration.ofSeconds(5), response::abort);
+        reader.join(5000);
+        assertFalse(reader.isAlive(), "The blocked read hasn't been aborted");
+        assertTrue(failure.get() instanceof IOException);
+
+        // The slot has been released by abort(), closing the response doesn't release it twice
+        Transport.Response second = limited.get(URL, Collections.emptyMap(), 1000, 1000);
+        response.close();
+        assertSlotTaken(limited);
+        second.close();
+        limited.get(URL, Collections.emptyMap(), 1000, 1000).close();
+    }
+
+    @Test
+    public void connectionsPerHost() throws Exception {
+        Transport limited = DownloadLimiter.builder()
+                .maxConnectionsPerHost(1)
+                .build()
+                .limit((url, headers, connectTimeout, readTimeout) -> new BlockingResponse(url));
+
+        Transport.Response response = limited.get(URL, Collections.emptyMap(), 1000, 1000);
+        // Other hosts and local repositories aren't limited
+        limited.get("https://other.example.com/example.jar", Collections.emptyMap(), 1000, 1000).close();
+        limited.get("file:/tmp/example.jar", Collections.emptyMap(), 1000, 1000).close();
+        assertSlotTaken(limited);
+
+        response.close();
+        response.close();
+        limited.get(URL, Collections.emptyMap(), 1000, 1000).close();
+    }
+
+    private static void assertSlotTaken(Transport limited) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                limited.get(URL, Collections.emptyMap(), 1000, 1000).close();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        waiting.start();
+        waiting.join(200);
+        assertTrue(waiting.isAlive(), "The request didn't wait for a connection slot");
+
+        waiting.interrupt();
+        waiting.join(5000);
+        assertTrue(failure.get() instanceof InterruptedIOException);
+    }
+
+    /**
+     * A response whose body blocks until the response is aborted, like a stalled socket.
+     * Closing the response waits for the read to finish.
+     */
+    private static final class BlockingResponse implements Transport.Response {
+        private final CountDownLatch reading = new CountDownLatch(1);
+        private final String url;
+        private final CountDownLatch aborted = new CountDownLatch(1);
+        private final Object lock = new Object();
+
+        private BlockingResponse(String url) {
+            this.url = url;
+        }
+
+        @Override
+        @NotNull
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        @Nullable
+        public String getHeader(@NotNull String name) {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        @NotNull
+        public InputStream getBody() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return read(new byte[1], 0, 1);
+                }
+
+                @Override
+                public int read(byte @NotNull [] b, int off, int len) throws IOException {
+                    synchronized (lock) {
+                        reading.countDown();
+                        try {
+                            aborted.await();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        throw new IOException("Socket closed");
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                aborted.countDown();
+            }
+        }
+
+        @Override
+        public void abort() {
+            aborted.countDown();
+        }
+    }
+}
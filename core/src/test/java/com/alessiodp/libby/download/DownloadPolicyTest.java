@@ -0,0 +1,146 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadPolicyTest {
+    private static final String REPOSITORY = StubTransport.REPOSITORY;
+
+    @Test
+    public void retryableClassification() {
+        String url = REPOSITORY + "example.jar";
+        assertTrue(DownloadPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(DownloadPolicy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(DownloadPolicy.isRetryable(new ConnectException()));
+        assertTrue(DownloadPolicy.isRetryable(new EOFException()));
+        assertTrue(DownloadPolicy.isRetryable(new DownloadStalledException(url)));
+        assertTrue(DownloadPolicy.isRetryable(new HttpStatusException(url, 408)));
+        assertTrue(DownloadPolicy.isRetryable(new HttpStatusException(url, 429)));
+        assertTrue(DownloadPolicy.isRetryable(new HttpStatusException(url, 503)));
+
+        assertFalse(DownloadPolicy.isRetryable(new FileNotFoundException(url)));
+        assertFalse(DownloadPolicy.isRetryable(new UnknownHostException("repo.example.com")));
+        assertFalse(DownloadPolicy.isRetryable(new RepositoryUnavailableException(url)));
+        assertFalse(DownloadPolicy.isRetryable(new HttpStatusException(url, 401)));
+        assertFalse(DownloadPolicy.isRetryable(new HttpStatusException(url, 403)));
+        assertFalse(DownloadPolicy.isRetryable(new IOException("Unknown")));
+    }
+
+    @Test
+    public void retryDelay() {
+        DownloadPolicy policy = DownloadPolicy.builder()
+                .retryBackoff(Duration.ofMillis(100), Duration.ofMillis(1000))
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            // Jittered between half and the whole of the exponential delay
+            assertBetween(50, 100, policy.getRetryDelay(1));
+            assertBetween(100, 200, policy.getRetryDelay(2));
+            assertBetween(200, 400, policy.getRetryDelay(3));
+            // Capped to the maximum, even when the exponential delay overflows
+            assertBetween(500, 1000, policy.getRetryDelay(5));
+            assertBetween(500, 1000, policy.getRetryDelay(100));
+        }
+        assertThrows(IllegalArgumentException.class, () -> policy.getRetryDelay(0));
+    }
+
+    @Test
+    public void repositoryTimeouts() {
+        DownloadPolicy policy = DownloadPolicy.builder()
+                .connectTimeout(Duration.ofSeconds(1))
+                .readTimeout(Duration.ofSeconds(2))
+                .repositoryTimeouts("https://repo.example.com", Duration.ofSeconds(3), Duration.ofSeconds(4))
+                .repositoryTimeouts(REPOSITORY, Duration.ofSeconds(5), Duration.ofSeconds(6))
+                .build();
+
+        // The longest matching repository wins
+        assertEquals(Duration.ofSeconds(5), policy.getConnectTimeout(REPOSITORY + "example.jar"));
+        assertEquals(Duration.ofSeconds(6), policy.getReadTimeout(REPOSITORY + "example.jar"));
+        assertEquals(Duration.ofSeconds(3), policy.getConnectTimeout("https://repo.example.com/snapshots/example.jar"));
+        assertEquals(Duration.ofSeconds(4), policy.getReadTimeout("https://repo.example.com/snapshots/example.jar"));
+        assertEquals(Duration.ofSeconds(1), policy.getConnectTimeout("https://repo.example.community/example.jar"));
+        assertEquals(Duration.ofSeconds(2), policy.getReadTimeout("https://other.example.com/example.jar"));
+    }
+
+    @Test
+    public void invalidPolicy() {
+        assertThrows(IllegalArgumentException.class, () -> DownloadPolicy.builder().maxRetries(-1));
+        assertThrows(IllegalArgumentException.class, () -> DownloadPolicy.builder().connectTimeout(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> DownloadPolicy.builder().retryBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> DownloadPolicy.builder().minThroughput(-1, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> DownloadPolicy.builder().deferredBandwidth(-1));
+    }
+
+    @Test
+    public void transientFailuresRetried() throws Exception {
+        Library library = library();
+        String url = REPOSITORY + library.getPath();
+        StubTransport stub = new StubTransport();
+        stub.serve(url, "jar".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger failures = new AtomicInteger(2);
+        List<String> requests = new CopyOnWriteArrayList<>();
+
+        LibraryManagerMock libraryManager = libraryManager((requested, headers, connectTimeout, readTimeout) -> {
+            requests.add(requested);
+            if (failures.getAndDecrement() > 0) {
+                throw new HttpStatusException(requested, 503);
+            }
+            return stub.get(requested, headers, connectTimeout, readTimeout);
+        });
+
+        assertArrayEquals("jar".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(libraryManager.downloadLibrary(library)));
+        assertEquals(3, requests.stream().filter(url::equals).count());
+    }
+
+    @Test
+    public void permanentFailuresNotRetried() throws Exception {
+        Library library = library();
+        String url = REPOSITORY + library.getPath();
+        List<String> requests = new CopyOnWriteArrayList<>();
+
+        LibraryManagerMock libraryManager = libraryManager((requested, headers, connectTimeout, readTimeout) -> {
+            requests.add(requested);
+            throw new HttpStatusException(requested, 403);
+        });
+
+        assertThrows(RuntimeException.class, () -> libraryManager.downloadLibrary(library));
+        assertEquals(1, requests.stream().filter(url::equals).count());
+    }
+
+    private static LibraryManagerMock libraryManager(Transport transport) throws IOException {
+        LibraryManagerMock libraryManager = new LibraryManagerMock();
+        libraryManager.setTransport(transport);
+        libraryManager.setDownloadPolicy(DownloadPolicy.builder()
+                .maxRetries(2)
+                .retryBackoff(Duration.ofMillis(10), Duration.ofMillis(20))
+                .build());
+        libraryManager.addRepository(REPOSITORY);
+        return libraryManager;
+    }
+
+    private static Library library() {
+        return LibraryManagerMock.library("example").build();
+    }
+
+    private static void assertBetween(long min, long max, Duration delay) {
+        assertTrue(delay.toMillis() >= min && delay.toMillis() <= max, "Delay " + delay.toMillis() + " not in [" + min + ", " + max + "]");
+    }
+}
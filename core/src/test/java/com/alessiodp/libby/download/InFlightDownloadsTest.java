@@ -0,0 +1,94 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InFlightDownloadsTest {
+    private static final String REPOSITORY = "https://repo.example.com/releases/";
+
+    @Test
+    public void concurrentManagersDownloadOnce() throws Exception {
+        byte[] jar = "jar".getBytes(StandardCharsets.UTF_8);
+        Library library = Library.builder()
+                .groupId("com{}example")
+                .artifactId("example-" + UUID.randomUUID())
+                .version("1.0")
+                .checksum(MessageDigest.getInstance("SHA-256").digest(jar))
+                .repository(REPOSITORY)
+                .build();
+        String url = REPOSITORY + library.getPath();
+
+        // Both managers share the network, the download is slow enough for them to overlap
+        StubTransport transport = new StubTransport();
+        transport.serve(url, jar, Duration.ofMillis(500));
+        LibraryManagerMock first = new LibraryManagerMock();
+        LibraryManagerMock second = new LibraryManagerMock();
+        first.setTransport(transport);
+        second.setTransport(transport);
+
+        CompletableFuture<Path> firstFile = CompletableFuture.supplyAsync(() -> first.downloadLibrary(library));
+        CompletableFuture<Path> secondFile = CompletableFuture.supplyAsync(() -> second.downloadLibrary(library));
+
+        assertArrayEquals(jar, Files.readAllBytes(firstFile.get(10, TimeUnit.SECONDS)));
+        assertArrayEquals(jar, Files.readAllBytes(secondFile.get(10, TimeUnit.SECONDS)));
+        assertNotEquals(firstFile.get(), secondFile.get());
+        assertEquals(1, transport.getRequests().stream().filter(url::equals).count());
+        assertNull(System.getProperty(InFlightDownloads.getKey(library)));
+    }
+
+    @Test
+    public void stateRemovedOnceWaitersNotified() throws Exception {
+        String key = "libby.download.test-" + UUID.randomUUID();
+        String owner = InFlightDownloads.createToken();
+        Path file = Files.createTempFile("libby", ".jar");
+        try {
+            assertNull(InFlightDownloads.acquire(key, owner, Duration.ZERO));
+            assertFalse(InFlightDownloads.isAwaited(key));
+
+            CompletableFuture<Path> waiter = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return InFlightDownloads.acquire(key, InFlightDownloads.createToken(), Duration.ofSeconds(10));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            // Wait for the waiter to register
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!System.getProperty(key).endsWith(":1") && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(InFlightDownloads.isAwaited(key));
+
+            InFlightDownloads.complete(key, owner, file);
+            assertEquals(file.toAbsolutePath(), waiter.get(5, TimeUnit.SECONDS));
+            assertNull(System.getProperty(key));
+
+            // Without waiters, the state is removed right away
+            assertNull(InFlightDownloads.acquire(key, owner, Duration.ZERO));
+            InFlightDownloads.complete(key, owner, file);
+            assertNull(System.getProperty(key));
+
+            // Timed out waiters unregister themselves, a failed download is released
+            assertNull(InFlightDownloads.acquire(key, owner, Duration.ZERO));
+            assertNull(InFlightDownloads.acquire(key, InFlightDownloads.createToken(), Duration.ofMillis(100)));
+            assertTrue(System.getProperty(key).endsWith(":0"));
+            InFlightDownloads.release(key, owner);
+            assertNull(System.getProperty(key));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
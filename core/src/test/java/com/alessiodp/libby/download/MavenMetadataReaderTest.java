@@ -0,0 +1,81 @@
+package com.alessiodp.libby.download;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MavenMetadataReaderTest {
+    private static final String METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<metadata modelVersion=\"1.1.0\">\n" +
+            "  <groupId>com.example</groupId>\n" +
+            "  <artifactId>example</artifactId>\n" +
+            "  <version>1.0-SNAPSHOT</version>\n" +
+            "  <versioning>\n" +
+            "    <snapshot>\n" +
+            "      <timestamp>20220617.013635</timestamp>\n" +
+            "      <buildNumber>12</buildNumber>\n" +
+            "    </snapshot>\n" +
+            "    <lastUpdated>20220617013635</lastUpdated>\n" +
+            "    <snapshotVersions>\n" +
+            "      <snapshotVersion>\n" +
+            "        <extension>pom</extension>\n" +
+            "        <value>1.0-20220617.013635-12</value>\n" +
+            "        <updated>20220617013635</updated>\n" +
+            "      </snapshotVersion>\n" +
+            "      <snapshotVersion>\n" +
+            "        <classifier>sources</classifier>\n" +
+            "        <extension>jar</extension>\n" +
+            "        <value>1.0-20220616.220000-11</value>\n" +
+            "        <updated>20220616220000</updated>\n" +
+            "      </snapshotVersion>\n" +
+            "      <snapshotVersion>\n" +
+            "        <extension>jar</extension>\n" +
+            "        <value>1.0-20220617.013635-12</value>\n" +
+            "        <updated>20220617013635</updated>\n" +
+            "      </snapshotVersion>\n" +
+            "    </snapshotVersions>\n" +
+            "  </versioning>\n" +
+            "</metadata>\n";
+
+    private final MavenMetadataReader reader = new MavenMetadataReader();
+
+    @Test
+    public void snapshotVersions() throws XMLStreamException {
+        assertEquals("1.0-20220617.013635-12", read(METADATA, null, "jar"));
+        assertEquals("1.0-20220616.220000-11", read(METADATA, "sources", "jar"));
+        assertEquals("1.0-20220617.013635-12", read(METADATA, null, "pom"));
+    }
+
+    @Test
+    public void snapshot() throws XMLStreamException {
+        // Artifacts without a <snapshotVersion> entry use the timestamp and the build number
+        assertEquals("1.0-20220617.013635-12", read(METADATA, "javadoc", "jar"));
+    }
+
+    @Test
+    public void localCopy() throws XMLStreamException {
+        String metadata = "<metadata><versioning><snapshot><localCopy>true</localCopy></snapshot></versioning></metadata>";
+        assertEquals("1.0-SNAPSHOT", read(metadata, null, "jar"));
+    }
+
+    @Test
+    public void noSnapshot() throws XMLStreamException {
+        assertNull(read("<metadata><versioning><release>1.0</release></versioning></metadata>", null, "jar"));
+        assertNull(read("<project><versioning><snapshot><timestamp>20220617.013635</timestamp><buildNumber>12</buildNumber></snapshot></versioning></project>", null, "jar"));
+    }
+
+    @Test
+    public void malformed() {
+        assertThrows(XMLStreamException.class, () -> read("<metadata><versioning>", null, "jar"));
+    }
+
+    private String read(String metadata, String classifier, String extension) throws XMLStreamException {
+        InputStream in = new ByteArrayInputStream(metadata.getBytes(StandardCharsets.UTF_8));
+        return reader.readSnapshotVersion(in, "1.0-SNAPSHOT", classifier, extension);
+    }
+}
@@ -0,0 +1,190 @@
+package com.alessiodp.libby.download;
+
+import com.alessiodp.libby.Library;
+import com.alessiodp.libby.LibraryManagerMock;
+import com.alessiodp.libby.StubTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryHealthTest {
+    private static final String DOWN = "https://down.example.com/releases/";
+    private static final String UP = "https://up.example.com/releases/";
+
+    @Test
+    public void circuitTransitions() throws Exception {
+        RepositoryHealth health = new RepositoryHealth(2, Duration.ofMillis(200));
+        String url = DOWN + "com/example/example/1.0/example-1.0.jar";
+
+        assertFalse(health.recordFailure(url, new ConnectException()));
+        assertEquals(RepositoryHealth.State.CLOSED, health.getState(DOWN));
+        assertTrue(health.tryAcquire(url));
+
+        // The circuit opens after the threshold
+        assertTrue(health.recordFailure(url, new SocketTimeoutException()));
+        assertEquals(RepositoryHealth.State.OPEN, health.getState(DOWN));
+        assertFalse(health.tryAcquire(url));
+        assertEquals(Collections.singleton("https://down.example.com"), health.getSkippedRepositories());
+
+        // After the cool-down, a single request is let through
+        Thread.sleep(250);
+        assertTrue(health.tryAcquire(url));
+        assertEquals(RepositoryHealth.State.HALF_OPEN, health.getState(DOWN));
+        assertFalse(health.tryAcquire(url));
+
+        // A failure reopens the circuit right away
+        assertTrue(health.recordFailure(url, new ConnectException()));
+        assertEquals(RepositoryHealth.State.OPEN, health.getState(DOWN));
+
+        // A success closes it
+        Thread.sleep(250);
+        assertTrue(health.tryAcquire(url));
+        health.recordSuccess(url);
+        assertEquals(RepositoryHealth.State.CLOSED, health.getState(DOWN));
+        assertTrue(health.tryAcquire(url));
+    }
+
+    @Test
+    public void interruptedProbeReleased() throws Exception {
+        StubTransport stub = new StubTransport();
+        List<String> requests = new CopyOnWriteArrayList<>();
+        AtomicReference<String> mode = new AtomicReference<>("down");
+        Transport transport = (url, headers, connectTimeout, readTimeout) -> {
+            requests.add(url);
+            switch (mode.get()) {
+                case "down":
+                    throw new ConnectException("Connection refused: " + url);
+                case "cancelled":
+                    // The probe is cancelled while waiting for the repository
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Cancelled: " + url);
+                default:
+                    return stub.get(url, headers, connectTimeout, readTimeout);
+            }
+        };
+
+        LibraryManagerMock libraryManager = new LibraryManagerMock();
+        libraryManager.setTransport(transport);
+        libraryManager.setRepositoryHealth(new RepositoryHealth(1, Duration.ofMillis(200)));
+        libraryManager.setDownloadPolicy(DownloadPolicy.builder().maxRetries(0).build());
+        libraryManager.addRepository(DOWN);
+        Library library = library("example");
+        stub.serve(DOWN + library.getPath(), "example".getBytes(StandardCharsets.UTF_8));
+        RepositoryHealth health = libraryManager.getRepositoryHealth();
+
+        assertThrows(RuntimeException.class, () -> libraryManager.downloadLibrary(library));
+        assertEquals(RepositoryHealth.State.OPEN, health.getState(DOWN));
+
+        // After the cool-down, the probe is interrupted: the circuit is reopened instead of staying half-open
+        Thread.sleep(250);
+        mode.set("cancelled");
+        try {
+            assertThrows(RuntimeException.class, () -> libraryManager.downloadLibrary(library));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(RepositoryHealth.State.OPEN, health.getState(DOWN));
+        assertEquals(2, requests.size());
+
+        // After the next cool-down, the repository is tried again
+        Thread.sleep(250);
+        mode.set("up");
+        assertArrayEquals("example".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(libraryManager.downloadLibrary(library)));
+        assertEquals(RepositoryHealth.State.CLOSED, health.getState(DOWN));
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void releaseOnlyReopensProbe() throws Exception {
+        RepositoryHealth health = new RepositoryHealth(1, Duration.ofMillis(200));
+        String url = DOWN + "example.jar";
+
+        // Releasing a request to a closed circuit does nothing
+        health.release(url);
+        assertEquals(RepositoryHealth.State.CLOSED, health.getState(url));
+
+        assertTrue(health.recordFailure(url, new ConnectException()));
+        Thread.sleep(250);
+        assertTrue(health.tryAcquire(url));
+
+        // Only the thread performing the probe can release it
+        Thread other = new Thread(() -> health.release(url));
+        other.start();
+        other.join();
+        assertEquals(RepositoryHealth.State.HALF_OPEN, health.getState(url));
+
+        health.release(url);
+        assertEquals(RepositoryHealth.State.OPEN, health.getState(url));
+        assertFalse(health.tryAcquire(url));
+    }
+
+    @Test
+    public void onlyConnectionFailuresCount() {
+        RepositoryHealth health = new RepositoryHealth(2, Duration.ofHours(1));
+        String url = DOWN + "example.jar";
+
+        assertFalse(health.recordFailure(url, new ConnectException()));
+        // The repository answered, the consecutive failures are reset
+        assertFalse(health.recordFailure(url, new FileNotFoundException(url)));
+        assertFalse(health.recordFailure(url, new ConnectException()));
+        assertEquals(RepositoryHealth.State.CLOSED, health.getState(url));
+    }
+
+    @Test
+    public void localRepositoriesNotTracked() {
+        RepositoryHealth health = new RepositoryHealth(1, Duration.ofHours(1));
+        String url = "file:///tmp/repository/example.jar";
+
+        assertNull(RepositoryHealth.getOrigin(url));
+        assertFalse(health.recordFailure(url, new ConnectException()));
+        assertTrue(health.tryAcquire(url));
+        assertTrue(health.getStates().isEmpty());
+    }
+
+    @Test
+    public void openCircuitSkipped() throws Exception {
+        StubTransport stub = new StubTransport();
+        List<String> requests = new CopyOnWriteArrayList<>();
+        Transport transport = (url, headers, connectTimeout, readTimeout) -> {
+            requests.add(url);
+            if (url.startsWith(DOWN)) {
+                throw new ConnectException("Connection refused: " + url);
+            }
+            return stub.get(url, headers, connectTimeout, readTimeout);
+        };
+
+        LibraryManagerMock libraryManager = new LibraryManagerMock();
+        libraryManager.setTransport(transport);
+        libraryManager.setRepositoryHealth(new RepositoryHealth(1, Duration.ofHours(1)));
+        libraryManager.addRepository(DOWN);
+        libraryManager.addRepository(UP);
+
+        Library first = library("first");
+        Library second = library("second");
+        stub.serve(UP + first.getPath(), "first".getBytes(StandardCharsets.UTF_8));
+        stub.serve(UP + second.getPath(), "second".getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(libraryManager.downloadLibrary(first)));
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(libraryManager.downloadLibrary(second)));
+
+        // The unreachable repository is requested only once
+        assertEquals(1, requests.stream().filter(url -> url.startsWith(DOWN)).count());
+        assertEquals(RepositoryHealth.State.OPEN, libraryManager.getRepositoryHealth().getState(DOWN));
+    }
+
+    private static Library library(String artifactId) {
+        return LibraryManagerMock.library(artifactId).build();
+    }
+}
@@ -0,0 +1,199 @@
+package com.alessiodp.libby.relocation;
+
+import com.alessiodp.libby.relocation.fixture.Sample;
+import com.alessiodp.libby.relocation.fixture.Target;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JarRelocatorTest {
+    private static final String FIXTURE = "com/alessiodp/libby/relocation/fixture/";
+    private static final String RELOCATED = "relocated/fixture/";
+    private static final long TIME = 1_600_000_000_000L;
+    private static final List<Relocation> RELOCATIONS = Collections.singletonList(
+            new Relocation("com.alessiodp.libby.relocation.fixture", "relocated.fixture")
+    );
+
+    @Test
+    public void relocateClassFile() throws Exception {
+        ClassFileRelocator relocator = new ClassFileRelocator(new RelocationRules(RELOCATIONS));
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put("relocated.fixture.Sample", relocator.relocate(classFile(Sample.class)));
+        classes.put("relocated.fixture.Target", relocator.relocate(classFile(Target.class)));
+
+        // Loading the relocated classes verifies that the whole constant pool is consistent
+        Class<?> sample = new FixtureClassLoader(classes).loadClass("relocated.fixture.Sample");
+        // Class names
+        assertEquals("relocated.fixture.Target", sample.getDeclaredField("target").getType().getName());
+        // Descriptors
+        assertEquals("relocated.fixture.Target", sample.getMethod("getTarget").getReturnType().getName());
+        // String constants
+        Object instance = sample.getConstructor().newInstance();
+        assertEquals("relocated.fixture.Target", ((Supplier<?>) instance).get());
+        assertEquals("relocated.fixture.Target", sample.getMethod("getTarget").invoke(instance).getClass().getName());
+    }
+
+    @Test
+    public void unchangedClassFile() throws IOException {
+        ClassFileRelocator relocator = new ClassFileRelocator(new RelocationRules(Collections.singletonList(
+                new Relocation("org.example", "libs.org.example")
+        )));
+        byte[] classFile = classFile(Target.class);
+        assertSame(classFile, relocator.relocate(classFile));
+    }
+
+    @Test
+    public void malformedClassFile() {
+        ClassFileRelocator relocator = new ClassFileRelocator(new RelocationRules(RELOCATIONS));
+        assertThrows(IllegalArgumentException.class, () -> relocator.relocate(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 10}));
+    }
+
+    @Test
+    public void relocateJar() throws IOException {
+        Path dir = Files.createTempDirectory("libby-relocation");
+        Path in = dir.resolve("in.jar");
+        Path out = dir.resolve("out.jar");
+        createJar(in);
+
+        new JarRelocator(RELOCATIONS).relocate(in, out);
+
+        Map<String, byte[]> entries = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(out))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                names.add(entry.getName());
+                entries.put(entry.getName(), readAll(input));
+                assertEquals(TIME, entry.getTime(), "Timestamp of " + entry.getName());
+            }
+        }
+
+        // Entries keep their order, the parent directories are written before their first entry
+        assertEquals(Arrays.asList(
+                "META-INF/",
+                "META-INF/MANIFEST.MF",
+                "relocated/",
+                RELOCATED,
+                RELOCATED + "Sample.class",
+                RELOCATED + "Target.class",
+                RELOCATED + "sample.properties",
+                "META-INF/versions/",
+                "META-INF/versions/11/",
+                "META-INF/versions/11/relocated/",
+                "META-INF/versions/11/" + RELOCATED,
+                "META-INF/versions/11/" + RELOCATED + "Target.class"
+        ), names);
+
+        // Resources are moved but not rewritten
+        assertEquals("target=" + FIXTURE, new String(entries.get(RELOCATED + "sample.properties"), StandardCharsets.UTF_8));
+
+        // The digests of the dropped signatures are removed, the other attributes are kept
+        Manifest manifest = new Manifest(new ByteArrayInputStream(entries.get("META-INF/MANIFEST.MF")));
+        assertEquals("true", manifest.getMainAttributes().getValue("Multi-Release"));
+        Attributes attributes = manifest.getAttributes(FIXTURE + "Sample.class");
+        assertNotNull(attributes);
+        assertNull(attributes.getValue("SHA-256-Digest"));
+        assertEquals("kept", attributes.getValue("Custom"));
+    }
+
+    @Test
+    public void deterministicOutput() throws IOException {
+        Path dir = Files.createTempDirectory("libby-relocation");
+        Path in = dir.resolve("in.jar");
+        createJar(in);
+
+        JarRelocator relocator = new JarRelocator(RELOCATIONS);
+        relocator.relocate(in, dir.resolve("first.jar"));
+        relocator.relocate(in, dir.resolve("second.jar"));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("first.jar")), Files.readAllBytes(dir.resolve("second.jar")));
+    }
+
+    private static void createJar(Path file) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Multi-Release", "true");
+        Attributes signed = new Attributes();
+        signed.putValue("SHA-256-Digest", "c2lnbmVk");
+        signed.putValue("Custom", "kept");
+        manifest.getEntries().put(FIXTURE + "Sample.class", signed);
+        ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+        manifest.write(manifestContent);
+
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(file))) {
+            putEntry(output, "META-INF/MANIFEST.MF", manifestContent.toByteArray());
+            putEntry(output, "com/", null);
+            putEntry(output, FIXTURE + "Sample.class", classFile(Sample.class));
+            putEntry(output, FIXTURE + "Target.class", classFile(Target.class));
+            putEntry(output, FIXTURE + "sample.properties", ("target=" + FIXTURE).getBytes(StandardCharsets.UTF_8));
+            putEntry(output, "META-INF/SIGNER.SF", new byte[1]);
+            putEntry(output, "META-INF/SIGNER.RSA", new byte[1]);
+            putEntry(output, "META-INF/versions/11/" + FIXTURE + "Target.class", classFile(Target.class));
+        }
+    }
+
+    private static void putEntry(JarOutputStream output, String name, byte[] content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(TIME);
+        output.putNextEntry(entry);
+        if (content != null) {
+            output.write(content);
+        }
+        output.closeEntry();
+    }
+
+    private static byte[] classFile(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            assertNotNull(in, "Class file of " + clazz.getName() + " not found");
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] bytes = new byte[8192];
+        int read;
+        while ((read = in.read(bytes)) != -1) {
+            buffer.write(bytes, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static final class FixtureClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private FixtureClassLoader(Map<String, byte[]> classes) {
+            super(JarRelocatorTest.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] classFile = classes.get(name);
+            if (classFile == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.alessiodp.libby.relocation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RelocationRulesTest {
+    private final RelocationRules rules = new RelocationRules(Arrays.asList(
+            new Relocation("org.example.lib", "libs.org.example.lib", null, Collections.singletonList("org.example.lib.internal.*")),
+            new Relocation("org.example", "libs.org.example")
+    ));
+
+    @Test
+    public void paths() {
+        assertEquals("libs/org/example/lib/Foo", rules.relocatePath("org/example/lib/Foo"));
+        assertEquals("libs/org/example/lib/foo.properties", rules.relocatePath("org/example/lib/foo.properties"));
+        assertEquals("/libs/org/example/Foo", rules.relocatePath("/org/example/Foo"));
+        assertEquals("[[Llibs/org/example/Foo;", rules.relocatePath("[[Lorg/example/Foo;"));
+        assertNull(rules.relocatePath("com/example/Foo"));
+        assertNull(rules.relocatePath("java/lang/Object"));
+    }
+
+    @Test
+    public void excludes() {
+        // Excluded by the first relocation, relocated by the second one
+        assertEquals("libs/org/example/lib/internal/Foo", rules.relocatePath("org/example/lib/internal/Foo"));
+        assertEquals("libs/org/example/lib/internal", rules.relocatePath("org/example/lib/internal"));
+
+        RelocationRules excluding = new RelocationRules(Collections.singletonList(
+                new Relocation("org.example", "libs.org.example", Collections.singletonList("org.example.**"), Collections.singletonList("org.example.Keep*"))
+        ));
+        assertEquals("libs/org/example/Foo.class", excluding.relocatePath("org/example/Foo.class"));
+        assertNull(excluding.relocatePath("org/example/KeepMe.class"));
+        assertNull(excluding.relocatePath("org/examples/Foo"));
+    }
+
+    @Test
+    public void values() {
+        assertEquals("libs.org.example.lib.Foo", rules.relocateValue("org.example.lib.Foo"));
+        assertEquals("libs/org/example/Foo", rules.relocateValue("org/example/Foo"));
+        assertNull(rules.relocateValue("com.example.Foo"));
+        assertNull(rules.relocateValue("Hello world"));
+    }
+
+    @Test
+    public void descriptors() {
+        assertEquals("(ILlibs/org/example/Foo;[Ljava/lang/String;)Llibs/org/example/lib/Bar;",
+                rules.relocateDescriptor("(ILorg/example/Foo;[Ljava/lang/String;)Lorg/example/lib/Bar;"));
+        assertEquals("<L:Llibs/org/example/Foo;>Ljava/lang/Object;Ljava/util/List<+Llibs/org/example/Foo$Inner<TL;>.Nested<*>;>;",
+                rules.relocateDescriptor("<L:Lorg/example/Foo;>Ljava/lang/Object;Ljava/util/List<+Lorg/example/Foo$Inner<TL;>.Nested<*>;>;"));
+        assertEquals("<T::Ljava/lang/Comparable<TT;>;>(TT;)Llibs/org/example/Foo;^TE;",
+                rules.relocateDescriptor("<T::Ljava/lang/Comparable<TT;>;>(TT;)Lorg/example/Foo;^TE;"));
+        assertNull(rules.relocateDescriptor("(ILjava/lang/String;)V"));
+        assertNull(rules.relocateDescriptor("Lorg/example/Foo"));
+    }
+}
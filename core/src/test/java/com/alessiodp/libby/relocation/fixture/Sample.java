@@ -0,0 +1,22 @@
+package com.alessiodp.libby.relocation.fixture;
+
+import java.util.function.Supplier;
+
+/**
+ * A class relocated by the relocation tests, referencing {@link Target} in its
+ * constant pool as a class, in descriptors and as a string constant.
+ */
+public class Sample implements Supplier<String> {
+    public static final String TARGET_NAME = "com.alessiodp.libby.relocation.fixture.Target";
+
+    private final Target target = new Target();
+
+    public Target getTarget() {
+        return target;
+    }
+
+    @Override
+    public String get() {
+        return TARGET_NAME;
+    }
+}
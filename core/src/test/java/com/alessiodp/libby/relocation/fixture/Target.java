@@ -0,0 +1,4 @@
+package com.alessiodp.libby.relocation.fixture;
+
+public class Target {
+}